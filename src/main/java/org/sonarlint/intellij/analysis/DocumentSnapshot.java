@@ -0,0 +1,141 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentAdapter;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import java.util.Arrays;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Content of a document when it was analyzed, and the edits made to it since then.
+ * It allows to translate the offsets of issues found in the analyzed content to the current content of the document.
+ * Edits are recorded until {@link #release()} is called.
+ */
+@ThreadSafe
+public class DocumentSnapshot {
+  private final Document document;
+  private final long stamp;
+  private final CharSequence text;
+  private final DocumentListener listener = new DocumentAdapter() {
+    @Override
+    public void documentChanged(DocumentEvent e) {
+      record(e.getOffset(), e.getOldLength(), e.getNewLength());
+    }
+  };
+
+  // offset, old length and new length of each edit, in order
+  @GuardedBy("this")
+  private int[] edits = new int[3 * 4];
+  @GuardedBy("this")
+  private int editCount = 0;
+
+  DocumentSnapshot(Document document, long stamp, CharSequence text) {
+    this.document = document;
+    this.stamp = stamp;
+    this.text = text;
+  }
+
+  /**
+   * Should be called in the EDT, after the document was saved, when the analysis starts.
+   */
+  public static DocumentSnapshot take(Document document) {
+    DocumentSnapshot snapshot = new DocumentSnapshot(document, document.getModificationStamp(), document.getImmutableCharSequence());
+    document.addDocumentListener(snapshot.listener);
+    return snapshot;
+  }
+
+  public void release() {
+    document.removeDocumentListener(listener);
+  }
+
+  /**
+   * Content of the document that was analyzed.
+   */
+  public CharSequence getText() {
+    return text;
+  }
+
+  public Document getDocument() {
+    return document;
+  }
+
+  /**
+   * Whether the document wasn't modified since it was analyzed.
+   */
+  public synchronized boolean isCurrent() {
+    return editCount == 0 && document.getModificationStamp() == stamp;
+  }
+
+  /**
+   * Translates the start offset of a range in the analyzed content to the current content.
+   * If the text at the offset was replaced, the range starts at the beginning of the replacement.
+   */
+  public synchronized int translateStart(int offset) {
+    int result = offset;
+    for (int i = 0; i < editCount; i++) {
+      int editOffset = edits[3 * i];
+      int oldLength = edits[3 * i + 1];
+      int newLength = edits[3 * i + 2];
+      if (result >= editOffset + oldLength) {
+        result += newLength - oldLength;
+      } else if (result > editOffset) {
+        result = editOffset;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Translates the end offset of a range in the analyzed content to the current content.
+   * If the text at the offset was replaced, the range ends at the end of the replacement. Text inserted right after it
+   * is not included.
+   */
+  public synchronized int translateEnd(int offset) {
+    int result = offset;
+    for (int i = 0; i < editCount; i++) {
+      int editOffset = edits[3 * i];
+      int oldLength = edits[3 * i + 1];
+      int newLength = edits[3 * i + 2];
+      if (result <= editOffset) {
+        continue;
+      }
+      if (result >= editOffset + oldLength) {
+        result += newLength - oldLength;
+      } else {
+        result = editOffset + newLength;
+      }
+    }
+    return result;
+  }
+
+  synchronized void record(int offset, int oldLength, int newLength) {
+    if (3 * (editCount + 1) > edits.length) {
+      edits = Arrays.copyOf(edits, edits.length * 2);
+    }
+    edits[3 * editCount] = offset;
+    edits[3 * editCount + 1] = oldLength;
+    edits[3 * editCount + 2] = newLength;
+    editCount++;
+  }
+}
@@ -87,21 +87,25 @@ public class SonarLintAnalysisConfigurator {
     // Analyze
     long start = System.currentTimeMillis();
 
-    SonarLintFacade facade = core.getFacadeForAnalysis(module.getProject());
+    SonarLintFacade facade = core.getFacadeForAnalysis(module.getProject(), filesToAnalyze);
     if (facade == null) {
       console.info("Failed to create SonarLint engine for module '" + module.getName() + "'");
       return;
     }
 
-    String what;
-    if(filesToAnalyze.size() == 1) {
-      what = "'" + filesToAnalyze.iterator().next().getName() + "'";
-    } else {
-      what = Integer.toString(filesToAnalyze.size()) + " files";
+    try {
+      String what;
+      if (filesToAnalyze.size() == 1) {
+        what = "'" + filesToAnalyze.iterator().next().getName() + "'";
+      } else {
+        what = Integer.toString(filesToAnalyze.size()) + " files";
+      }
+      console.info("Analysing " + what + "...");
+      facade.startAnalysis(inputFiles, listener, pluginProps);
+      console.debug("Done in " + (System.currentTimeMillis() - start) + "ms\n");
+    } finally {
+      facade.release();
     }
-    console.info("Analysing " + what + "...");
-    facade.startAnalysis(inputFiles, listener, pluginProps);
-    console.debug("Done in " + (System.currentTimeMillis() - start) + "ms\n");
   }
 
   private static Charset getEncoding(Project p, @Nullable VirtualFile f) {
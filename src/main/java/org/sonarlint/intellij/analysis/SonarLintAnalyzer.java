@@ -23,13 +23,18 @@ import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.AbstractProjectComponent;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.messages.MessageBus;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
 import org.sonarlint.intellij.issue.IssueProcessor;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.ui.SonarLintConsole;
@@ -58,6 +63,7 @@ public class SonarLintAnalyzer extends AbstractProjectComponent {
       }
 
       @Override public void ended(SonarLintJob job) {
+        job.releaseSnapshots();
         taskFinished();
       }
     });
@@ -131,12 +137,14 @@ public class SonarLintAnalyzer extends AbstractProjectComponent {
           }
           // we save as late as possible, even if job was queued up for a while to get the most up-to-date results
           SonarLintUtils.saveFiles(job.files());
+          job.takeSnapshots();
           notifyStart(job);
           ProgressManager.getInstance().run(task);
         }
       });
     } else {
       SonarLintUtils.saveFiles(job.files());
+      job.takeSnapshots();
       notifyStart(job);
       ProgressManager.getInstance().run(task);
     }
@@ -162,6 +170,7 @@ public class SonarLintAnalyzer extends AbstractProjectComponent {
     private final Module m;
     private final Set<VirtualFile> files;
     private final long creationTime;
+    private final Map<VirtualFile, DocumentSnapshot> snapshots = new ConcurrentHashMap<>();
 
     SonarLintJob(Module m, Set<VirtualFile> files) {
       this.m = m;
@@ -175,6 +184,34 @@ public class SonarLintAnalyzer extends AbstractProjectComponent {
       return creationTime;
     }
 
+    /**
+     * Content of the files, as analyzed, which have a document. See {@link DocumentSnapshot}.
+     */
+    @CheckForNull
+    public DocumentSnapshot snapshot(VirtualFile file) {
+      return snapshots.get(file);
+    }
+
+    /**
+     * Should be called in the EDT, once the files were saved.
+     */
+    void takeSnapshots() {
+      FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
+      for (VirtualFile f : files) {
+        Document doc = fileDocumentManager.getCachedDocument(f);
+        if (doc != null) {
+          snapshots.put(f, DocumentSnapshot.take(doc));
+        }
+      }
+    }
+
+    void releaseSnapshots() {
+      for (DocumentSnapshot s : snapshots.values()) {
+        s.release();
+      }
+      snapshots.clear();
+    }
+
     public Module module() {
       return m;
     }
@@ -24,7 +24,7 @@ import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
-import org.sonarlint.intellij.editor.AccumulatorIssueListener;
+import org.sonarlint.intellij.editor.StreamingIssueListener;
 import org.sonarlint.intellij.issue.IssueProcessor;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.ui.SonarLintConsole;
@@ -71,6 +71,7 @@ public class SonarLintTask extends Task.Backgroundable {
     SonarLintStatus status = SonarLintStatus.get(p);
     SonarLintConsole console = SonarLintConsole.get(p);
     SonarLintAnalysisConfigurator configurator = p.getComponent(SonarLintAnalysisConfigurator.class);
+    IssueProcessor.Batch batch = null;
 
     try {
       if (indicator.isCanceled() || status.isCanceled()) {
@@ -84,7 +85,8 @@ public class SonarLintTask extends Task.Backgroundable {
         indicator.setText("Running SonarLint Analysis for '" + getFileName(job.files().iterator().next()) + "'");
       }
 
-      final AccumulatorIssueListener listener = new AccumulatorIssueListener();
+      batch = processor.startBatch(job);
+      StreamingIssueListener listener = new StreamingIssueListener(batch);
       LOGGER.info(indicator.getText());
 
       CancelMonitor monitor = new CancelMonitor(indicator, status, Thread.currentThread());
@@ -98,6 +100,7 @@ public class SonarLintTask extends Task.Backgroundable {
 
       //last chance to cancel (to avoid the possibility of having interrupt flag set)
       if (indicator.isCanceled() || status.isCanceled()) {
+        batch.cancel();
         return;
       }
 
@@ -105,10 +108,14 @@ public class SonarLintTask extends Task.Backgroundable {
 
       indicator.setIndeterminate(false);
       indicator.setFraction(.9);
-      indicator.setText("Creating SonarLint issues: " + listener.getIssues().size());
+      indicator.setText("Creating SonarLint issues: " + listener.getIssueCount());
 
-      processor.process(job, listener.getIssues());
+      listener.finish();
     } catch (RuntimeException e) {
+      if (batch != null) {
+        // don't leave the issues of the files handed over before the failure
+        batch.cancel();
+      }
       // if cancelled, ignore any errors since they were most likely caused by the interrupt
       if (!indicator.isCanceled() && !status.isCanceled()) {
         String msg = "Error running SonarLint analysis";
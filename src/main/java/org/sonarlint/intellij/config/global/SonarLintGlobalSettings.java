@@ -38,6 +38,9 @@ import org.sonarlint.intellij.util.SonarLintBundle;
 public final class SonarLintGlobalSettings implements PersistentStateComponent<SonarLintGlobalSettings>, ExportableApplicationComponent {
 
   private boolean autoTrigger = true;
+  private int engineIdleTimeout = 30;
+  private int issuesMemoryBudget = 16;
+  private boolean compactIssues = false;
   private List<SonarQubeServer> servers = new LinkedList<>();
 
   public static SonarLintGlobalSettings getInstance() {
@@ -91,6 +94,40 @@ public final class SonarLintGlobalSettings implements PersistentStateComponent<S
     this.autoTrigger = autoTrigger;
   }
 
+  /**
+   * Number of minutes without analysis after which the SonarLint engines are stopped to free memory. 0 means never.
+   */
+  public int getEngineIdleTimeout() {
+    return engineIdleTimeout;
+  }
+
+  public void setEngineIdleTimeout(int engineIdleTimeout) {
+    this.engineIdleTimeout = engineIdleTimeout;
+  }
+
+  /**
+   * Estimated memory, in MB, that the issues of each project can take. Issues of the files that were the least recently
+   * used in an editor are discarded when it's exceeded, except those of open files.
+   */
+  public int getIssuesMemoryBudget() {
+    return issuesMemoryBudget;
+  }
+
+  public void setIssuesMemoryBudget(int issuesMemoryBudget) {
+    this.issuesMemoryBudget = issuesMemoryBudget;
+  }
+
+  /**
+   * Whether the issues of closed files are kept in a compact form, for projects with a very large number of issues.
+   */
+  public boolean isCompactIssues() {
+    return compactIssues;
+  }
+
+  public void setCompactIssues(boolean compactIssues) {
+    this.compactIssues = compactIssues;
+  }
+
   public void setSonarQubeServers(List<SonarQubeServer> servers) {
     this.servers = servers;
   }
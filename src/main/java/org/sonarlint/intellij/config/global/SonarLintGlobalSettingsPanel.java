@@ -21,12 +21,18 @@ package org.sonarlint.intellij.config.global;
 
 import com.intellij.openapi.ui.VerticalFlowLayout;
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import javax.swing.BorderFactory;
 import javax.swing.JCheckBox;
 import javax.swing.JComponent;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 /**
  * SonarLint for IntelliJ IDEA
@@ -51,6 +57,9 @@ public class SonarLintGlobalSettingsPanel {
   private boolean isDirty;
   private JPanel rootPane;
   private JCheckBox autoTrigger;
+  private JSpinner engineIdleTimeout;
+  private JSpinner issuesMemoryBudget;
+  private JCheckBox compactIssues;
 
   public SonarLintGlobalSettingsPanel(SonarLintGlobalSettings model) {
     load(model);
@@ -74,9 +83,42 @@ public class SonarLintGlobalSettingsPanel {
       }
     });
 
+    engineIdleTimeout = new JSpinner(new SpinnerNumberModel(0, 0, 24 * 60, 5));
+    engineIdleTimeout.addChangeListener(new ChangeListener() {
+      @Override public void stateChanged(ChangeEvent e) {
+        isDirty = true;
+      }
+    });
+    JPanel idlePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+    idlePanel.add(new JLabel("Stop analysis engines after "));
+    idlePanel.add(engineIdleTimeout);
+    idlePanel.add(new JLabel(" minutes without analysis (0 to keep them running)"));
+
+    issuesMemoryBudget = new JSpinner(new SpinnerNumberModel(1, 1, 1024, 4));
+    issuesMemoryBudget.addChangeListener(new ChangeListener() {
+      @Override public void stateChanged(ChangeEvent e) {
+        isDirty = true;
+      }
+    });
+    JPanel memoryPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+    memoryPanel.add(new JLabel("Keep issues of closed files in up to "));
+    memoryPanel.add(issuesMemoryBudget);
+    memoryPanel.add(new JLabel(" MB of memory per project"));
+
+    compactIssues = new JCheckBox("Store issues of closed files in a compact form (for very large projects)");
+    compactIssues.setFocusable(false);
+    compactIssues.addActionListener(new ActionListener() {
+      @Override public void actionPerformed(ActionEvent e) {
+        isDirty = true;
+      }
+    });
+
     JPanel tickOptions = new JPanel(new VerticalFlowLayout());
     tickOptions.setBorder(BorderFactory.createEmptyBorder(0, 0, 4, 0));
     tickOptions.add(autoTrigger);
+    tickOptions.add(idlePanel);
+    tickOptions.add(memoryPanel);
+    tickOptions.add(compactIssues);
 
     return tickOptions;
   }
@@ -88,12 +130,18 @@ public class SonarLintGlobalSettingsPanel {
   public void load(SonarLintGlobalSettings model) {
     getComponent();
     autoTrigger.setSelected(model.isAutoTrigger());
+    engineIdleTimeout.setValue(model.getEngineIdleTimeout());
+    issuesMemoryBudget.setValue(model.getIssuesMemoryBudget());
+    compactIssues.setSelected(model.isCompactIssues());
     isDirty = false;
   }
 
   public void save(SonarLintGlobalSettings model) {
     getComponent();
     model.setAutoTrigger(autoTrigger.isSelected());
+    model.setEngineIdleTimeout((Integer) engineIdleTimeout.getValue());
+    model.setIssuesMemoryBudget((Integer) issuesMemoryBudget.getValue());
+    model.setCompactIssues(compactIssues.isSelected());
     isDirty = false;
   }
 }
@@ -20,7 +20,6 @@
 package org.sonarlint.intellij.core;
 
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.project.ProjectCoreUtil;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -40,11 +39,17 @@ public class ConnectedSonarLintFacade implements SonarLintFacade {
   private final ConnectedSonarLintEngine sonarlint;
   private final Project project;
   private final String moduleKey;
+  private ManagedEngine<?> held;
 
   public ConnectedSonarLintFacade(ConnectedSonarLintEngine engine, Project project, String moduleKey) {
+    this(engine, project, moduleKey, null);
+  }
+
+  ConnectedSonarLintFacade(ConnectedSonarLintEngine engine, Project project, String moduleKey, @Nullable ManagedEngine<?> held) {
     this.sonarlint = engine;
     this.project = project;
     this.moduleKey = moduleKey;
+    this.held = held;
   }
 
   @Nullable
@@ -74,18 +79,29 @@ public class ConnectedSonarLintFacade implements SonarLintFacade {
   }
 
   @Override
-  public synchronized void startAnalysis(List<ClientInputFile> inputFiles, IssueListener issueListener, Map<String, String> additionalProps) {
+  public void startAnalysis(List<ClientInputFile> inputFiles, IssueListener issueListener, Map<String, String> additionalProps) {
     SonarLintProjectSettings projectSettings = project.getComponent(SonarLintProjectSettings.class);
     SonarLintConsole console = project.getComponent(SonarLintConsole.class);
 
     Path baseDir = Paths.get(project.getBasePath());
-    Path workDir = baseDir.resolve(ProjectCoreUtil.DIRECTORY_BASED_PROJECT_DIR).resolve("sonarlint").toAbsolutePath();
     Map<String, String> props = new HashMap<>();
     props.putAll(additionalProps);
     props.putAll(projectSettings.getAdditionalProperties());
-    ConnectedAnalysisConfiguration config = new ConnectedAnalysisConfiguration(moduleKey, baseDir, workDir, inputFiles, props);
-    console.debug("Starting analysis with configuration:\n" + config.toString());
 
-    sonarlint.analyze(config, issueListener, new ProjectLogOutput(console, projectSettings));
+    try (WorkDirPool.Lease lease = WorkDirPool.get(project).lease()) {
+      Path workDir = lease.getDir();
+      ConnectedAnalysisConfiguration config = new ConnectedAnalysisConfiguration(moduleKey, baseDir, workDir, inputFiles, props);
+      console.debug("Starting analysis with configuration:\n" + config.toString());
+
+      sonarlint.analyze(config, issueListener, new ProjectLogOutput(console, projectSettings));
+    }
+  }
+
+  @Override
+  public synchronized void release() {
+    if (held != null) {
+      held.release(System.currentTimeMillis());
+      held = null;
+    }
   }
 }
@@ -0,0 +1,161 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
+
+/**
+ * Index of the analyzers embedded in SonarLint, by the language they cover.
+ * It allows the standalone engine to be created with only the plugins needed by the files being analyzed.
+ */
+@Immutable
+public class LanguagePlugins {
+  private static final Pattern PLUGIN_FILE_PATTERN = Pattern.compile("sonar-(.+)-plugin-.*\\.jar");
+  private static final Map<String, Set<String>> EXTENSIONS_PER_LANGUAGE = ImmutableMap.<String, Set<String>>of(
+    "java", ImmutableSet.of("java"),
+    "javascript", ImmutableSet.of("js"),
+    "php", ImmutableSet.of("php", "php3", "php4", "php5", "phtml", "inc"));
+
+  private final Map<String, URL> pluginPerLanguage;
+  private final List<URL> otherPlugins;
+
+  LanguagePlugins(Map<String, URL> pluginPerLanguage, List<URL> otherPlugins) {
+    this.pluginPerLanguage = ImmutableMap.copyOf(pluginPerLanguage);
+    this.otherPlugins = new ArrayList<>(otherPlugins);
+  }
+
+  /**
+   * Lists the plugins embedded in the given directory.
+   * Plugins for which the language can't be guessed from the file name are always loaded.
+   */
+  public static LanguagePlugins load(Path pluginsDir, LogOutput log) throws IOException {
+    return of(listPlugins(pluginsDir), log);
+  }
+
+  public static LanguagePlugins of(Collection<Path> plugins, LogOutput log) throws IOException {
+    Map<String, URL> perLanguage = new LinkedHashMap<>();
+    List<URL> others = new ArrayList<>();
+
+    for (Path path : plugins) {
+      String fileName = path.getFileName().toString();
+      log.log("Found plugin: " + fileName, LogOutput.Level.DEBUG);
+      String language = languageOfPlugin(fileName);
+      if (language != null) {
+        perLanguage.put(language, path.toUri().toURL());
+      } else {
+        others.add(path.toUri().toURL());
+      }
+    }
+    return new LanguagePlugins(perLanguage, others);
+  }
+
+  static List<Path> listPlugins(Path pluginsDir) throws IOException {
+    List<Path> plugins = new ArrayList<>();
+    try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(pluginsDir)) {
+      for (Path path : directoryStream) {
+        plugins.add(path);
+      }
+    }
+    return plugins;
+  }
+
+  public static Path findPluginsDir(ClassLoader classLoader) throws URISyntaxException {
+    URL pluginsDir = classLoader.getResource("plugins");
+
+    if (pluginsDir == null) {
+      throw new IllegalStateException("Couldn't find plugins");
+    }
+    return Paths.get(pluginsDir.toURI());
+  }
+
+  @CheckForNull
+  static String languageOfPlugin(String pluginFileName) {
+    Matcher m = PLUGIN_FILE_PATTERN.matcher(pluginFileName);
+    if (m.matches() && EXTENSIONS_PER_LANGUAGE.containsKey(m.group(1))) {
+      return m.group(1);
+    }
+    return null;
+  }
+
+  @CheckForNull
+  static String languageOfFile(String fileName) {
+    int dot = fileName.lastIndexOf('.');
+    if (dot < 0) {
+      return null;
+    }
+    String extension = fileName.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+    for (Map.Entry<String, Set<String>> e : EXTENSIONS_PER_LANGUAGE.entrySet()) {
+      if (e.getValue().contains(extension)) {
+        return e.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Languages, among the ones we have a plugin for, of the given files.
+   */
+  public Set<String> languagesOf(Collection<VirtualFile> files) {
+    Set<String> languages = new HashSet<>();
+    for (VirtualFile f : files) {
+      String language = languageOfFile(f.getName());
+      if (language != null && pluginPerLanguage.containsKey(language)) {
+        languages.add(language);
+      }
+    }
+    return languages;
+  }
+
+  public Set<String> languages() {
+    return pluginPerLanguage.keySet();
+  }
+
+  public URL[] pluginsFor(Set<String> languages) {
+    List<URL> urls = new ArrayList<>(otherPlugins);
+    for (Map.Entry<String, URL> e : pluginPerLanguage.entrySet()) {
+      if (languages.contains(e.getKey())) {
+        urls.add(e.getValue());
+      }
+    }
+    return urls.toArray(new URL[urls.size()]);
+  }
+}
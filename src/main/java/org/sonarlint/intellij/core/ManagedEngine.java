@@ -0,0 +1,143 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An engine handed out by {@link SonarLintServerManager}, with the number of analyses running on it and the time it was
+ * last used. Once retired, an engine is not handed out anymore, and it's stopped when the last analysis running on it ends.
+ * The decision to stop an idle engine is taken under the same lock as the registration of a user, so an engine is never
+ * stopped while it's held or right after it was handed out.
+ */
+@ThreadSafe
+class ManagedEngine<E> {
+  private final E engine;
+  private final Runnable stop;
+  @GuardedBy("this")
+  private int users;
+  @GuardedBy("this")
+  private long lastUse;
+  @GuardedBy("this")
+  private boolean retired;
+  @GuardedBy("this")
+  private boolean stopped;
+
+  /**
+   * @param stop stops the engine, called at most once, from the thread retiring or releasing the engine
+   */
+  ManagedEngine(E engine, Runnable stop, long now) {
+    this.engine = engine;
+    this.stop = stop;
+    this.lastUse = now;
+  }
+
+  E engine() {
+    return engine;
+  }
+
+  /**
+   * Registers an analysis running on the engine, which will then not be stopped until {@link #release(long)} is called.
+   * Returns false if the engine was retired, in which case it must not be used.
+   */
+  synchronized boolean acquire(long now) {
+    if (retired) {
+      return false;
+    }
+    users++;
+    lastUse = now;
+    return true;
+  }
+
+  /**
+   * The analysis ended: the idle time of the engine starts now. The last analysis of a retired engine stops it.
+   */
+  synchronized void release(long now) {
+    if (users <= 0) {
+      throw new IllegalStateException("Engine released more times than acquired");
+    }
+    users--;
+    lastUse = now;
+    if (retired && users == 0) {
+      stopOnce();
+    }
+  }
+
+  /**
+   * The engine is handed out for a short operation, not counted as a user, but its idle time restarts.
+   * Returns false if the engine was retired.
+   */
+  synchronized boolean touch(long now) {
+    if (retired) {
+      return false;
+    }
+    lastUse = now;
+    return true;
+  }
+
+  /**
+   * The engine won't be handed out anymore, and it's stopped as soon as no analysis runs on it.
+   */
+  synchronized void retire() {
+    if (retired) {
+      return;
+    }
+    retired = true;
+    if (users == 0) {
+      stopOnce();
+    }
+  }
+
+  /**
+   * Retires and stops the engine, even if analyses are running on it.
+   */
+  synchronized void retireNow() {
+    retired = true;
+    stopOnce();
+  }
+
+  /**
+   * Retires the engine if no analysis runs on it and it was not used since the given time.
+   */
+  synchronized boolean retireIfIdle(long limit) {
+    if (retired || users > 0 || lastUse >= limit) {
+      return false;
+    }
+    retire();
+    return true;
+  }
+
+  @GuardedBy("this")
+  private void stopOnce() {
+    if (!stopped) {
+      stopped = true;
+      stop.run();
+    }
+  }
+
+  synchronized int users() {
+    return users;
+  }
+
+  synchronized long lastUse() {
+    return lastUse;
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
+
+/**
+ * Keeps a copy of the embedded plugins under the SonarLint home, in a directory named after the hash of their content.
+ * An index remembers the size, modification date and hash of every embedded plugin, so that after an IDE restart
+ * the plugins don't need to be hashed or copied again, and the engine finds them at the same location, reusing
+ * what it extracted from them in previous sessions. Copies of plugins that are no longer embedded are deleted.
+ */
+public class PluginCache {
+  static final String INDEX_FILE = "index.properties";
+  private static final char SEPARATOR = ',';
+
+  private final Path cacheDir;
+  private final LogOutput log;
+
+  public PluginCache(Path cacheDir, LogOutput log) {
+    this.cacheDir = cacheDir;
+    this.log = log;
+  }
+
+  /**
+   * Returns the cached copies of the plugins found in the given directory, adding to the cache the ones that are missing.
+   * Only the plugins whose size or modification date changed since the last call are hashed again.
+   */
+  public List<Path> get(Path pluginsDir) throws IOException {
+    long start = System.currentTimeMillis();
+    Properties index = loadIndex();
+
+    int copied = 0;
+    Properties newIndex = new Properties();
+    List<Path> plugins = new ArrayList<>();
+    for (Path plugin : LanguagePlugins.listPlugins(pluginsDir)) {
+      String fileName = plugin.getFileName().toString();
+      String fingerprint = Files.size(plugin) + "" + SEPARATOR + Files.getLastModifiedTime(plugin).toMillis();
+      String hash = hashIfUnchanged(index.getProperty(fileName), fingerprint);
+      if (hash == null || !Files.exists(cachedPath(hash, fileName))) {
+        hash = com.google.common.io.Files.hash(plugin.toFile(), Hashing.sha1()).toString();
+        copy(plugin, cachedPath(hash, fileName));
+        copied++;
+      }
+      newIndex.setProperty(fileName, fingerprint + SEPARATOR + hash);
+      plugins.add(cachedPath(hash, fileName));
+    }
+
+    if (copied == 0 && newIndex.equals(index)) {
+      log.log(String.format("Plugins loaded from cache in %d ms", System.currentTimeMillis() - start), LogOutput.Level.DEBUG);
+      return plugins;
+    }
+    storeIndex(newIndex);
+    prune(newIndex);
+
+    log.log(String.format("Plugins prepared in %d ms (%d copied to cache)", System.currentTimeMillis() - start, copied), LogOutput.Level.DEBUG);
+    return plugins;
+  }
+
+  /**
+   * Deletes the directories of the hashes that are not in the index.
+   */
+  private void prune(Properties index) {
+    Set<String> used = new HashSet<>();
+    for (String fileName : index.stringPropertyNames()) {
+      String value = index.getProperty(fileName);
+      used.add(value.substring(value.lastIndexOf(SEPARATOR) + 1));
+    }
+    try (DirectoryStream<Path> dirs = Files.newDirectoryStream(cacheDir)) {
+      for (Path dir : dirs) {
+        if (Files.isDirectory(dir) && !used.contains(dir.getFileName().toString())) {
+          FileUtils.deleteQuietly(dir.toFile());
+        }
+      }
+    } catch (IOException e) {
+      log.log("Failed to clean plugin cache: " + e.getMessage(), LogOutput.Level.WARN);
+    }
+  }
+
+  @CheckForNull
+  private static String hashIfUnchanged(@Nullable String indexEntry, String fingerprint) {
+    if (indexEntry == null) {
+      return null;
+    }
+    int idx = indexEntry.lastIndexOf(SEPARATOR);
+    if (idx < 0 || !fingerprint.equals(indexEntry.substring(0, idx))) {
+      return null;
+    }
+    return indexEntry.substring(idx + 1);
+  }
+
+  private Path cachedPath(String hash, String fileName) {
+    return cacheDir.resolve(hash).resolve(fileName);
+  }
+
+  private static void copy(Path source, Path target) throws IOException {
+    Files.createDirectories(target.getParent());
+    Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    try {
+      Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private Properties loadIndex() {
+    Properties index = new Properties();
+    Path indexFile = cacheDir.resolve(INDEX_FILE);
+    if (Files.exists(indexFile)) {
+      try (InputStream in = Files.newInputStream(indexFile)) {
+        index.load(in);
+      } catch (IOException e) {
+        log.log("Failed to read plugin cache index: " + e.getMessage(), LogOutput.Level.WARN);
+        index.clear();
+      }
+    }
+    return index;
+  }
+
+  private void storeIndex(Properties index) throws IOException {
+    Files.createDirectories(cacheDir);
+    try (OutputStream out = Files.newOutputStream(cacheDir.resolve(INDEX_FILE))) {
+      index.store(out, null);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import org.sonarlint.intellij.issue.tracking.Trackable;
+
+/**
+ * An issue of a module on the SonarQube server, as downloaded by {@link ServerIssueDownloader}.
+ * The server computes line hashes differently, so these issues are tracked by line and message.
+ */
+@Immutable
+public class ServerIssue implements Trackable {
+  private final String key;
+  private final String ruleKey;
+  private final String path;
+  private final Integer line;
+  private final String message;
+  private final long creationDate;
+  private final String resolution;
+
+  public ServerIssue(String key, String ruleKey, String path, @Nullable Integer line, String message, long creationDate, @Nullable String resolution) {
+    this.key = key;
+    this.ruleKey = ruleKey;
+    this.path = path;
+    this.line = line;
+    this.message = message;
+    this.creationDate = creationDate;
+    this.resolution = resolution;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  @Override
+  public String getRuleKey() {
+    return ruleKey;
+  }
+
+  /**
+   * Path of the file, relative to the base directory of the module.
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * Line of the issue, starting at 0 like the lines of local issues. The server starts at 1.
+   */
+  @CheckForNull
+  @Override
+  public Integer getLine() {
+    return line != null ? (line - 1) : null;
+  }
+
+  @Override
+  public String getMessage() {
+    return message;
+  }
+
+  @CheckForNull
+  @Override
+  public Integer getLineHash() {
+    return null;
+  }
+
+  public long getCreationDate() {
+    return creationDate;
+  }
+
+  /**
+   * For example FIXED, FALSE-POSITIVE or WONTFIX. Null if the issue is not resolved.
+   */
+  @CheckForNull
+  public String getResolution() {
+    return resolution;
+  }
+
+  public boolean isResolved() {
+    return resolution != null && !resolution.isEmpty();
+  }
+}
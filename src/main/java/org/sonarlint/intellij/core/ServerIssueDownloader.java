@@ -0,0 +1,186 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.google.common.io.BaseEncoding;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.intellij.util.net.HttpConfigurable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarlint.intellij.config.global.SonarQubeServer;
+
+/**
+ * Downloads the issues of a module from the SonarQube web service {@code api/issues/search}, page by page.
+ * Closed issues are not downloaded. If the server is configured to use the proxy, connections are opened with the
+ * proxy settings of the IDE (see {@link HttpConfigurable}).
+ */
+public class ServerIssueDownloader {
+  static final int PAGE_SIZE = 500;
+  // the web service doesn't return more issues
+  static final int MAX_ISSUES = 10_000;
+  private static final int TIMEOUT_MS = 30_000;
+
+  private final String baseUrl;
+  private final String authorization;
+  private final boolean useProxy;
+
+  public ServerIssueDownloader(String baseUrl, @Nullable String login, @Nullable String password) {
+    this(baseUrl, login, password, false);
+  }
+
+  public ServerIssueDownloader(String baseUrl, @Nullable String login, @Nullable String password, boolean useProxy) {
+    this.useProxy = useProxy;
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    if (login != null) {
+      String credentials = login + ":" + (password == null ? "" : password);
+      this.authorization = "Basic " + BaseEncoding.base64().encode(credentials.getBytes(StandardCharsets.UTF_8));
+    } else {
+      this.authorization = null;
+    }
+  }
+
+  public static ServerIssueDownloader create(SonarQubeServer server) {
+    if (server.getToken() != null) {
+      return new ServerIssueDownloader(server.getHostUrl(), server.getToken(), null, server.enableProxy());
+    }
+    return new ServerIssueDownloader(server.getHostUrl(), server.getLogin(), server.getPassword(), server.enableProxy());
+  }
+
+  public List<ServerIssue> download(String moduleKey) throws IOException {
+    List<ServerIssue> issues = new ArrayList<>();
+    int page = 1;
+    while (true) {
+      JsonObject response = get("/api/issues/search?statuses=OPEN,CONFIRMED,REOPENED,RESOLVED&ps=" + PAGE_SIZE + "&p=" + page
+        + "&componentKeys=" + URLEncoder.encode(moduleKey, "UTF-8"));
+      parsePage(response, moduleKey, issues);
+      int total = total(response);
+      if (page * PAGE_SIZE >= Math.min(total, MAX_ISSUES)) {
+        return issues;
+      }
+      page++;
+    }
+  }
+
+  private JsonObject get(String path) throws IOException {
+    HttpURLConnection connection = open(baseUrl + path);
+    try {
+      connection.setConnectTimeout(TIMEOUT_MS);
+      connection.setReadTimeout(TIMEOUT_MS);
+      connection.setRequestProperty("Accept", "application/json");
+      if (authorization != null) {
+        connection.setRequestProperty("Authorization", authorization);
+      }
+      int code = connection.getResponseCode();
+      if (code != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Failed to get issues from " + baseUrl + " (HTTP " + code + ")");
+      }
+      try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+        return new JsonParser().parse(reader).getAsJsonObject();
+      } catch (JsonParseException | IllegalStateException e) {
+        throw new IOException("Invalid response from " + baseUrl, e);
+      }
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private HttpURLConnection open(String url) throws IOException {
+    if (useProxy) {
+      return HttpConfigurable.getInstance().openHttpConnection(url);
+    }
+    return (HttpURLConnection) new URL(url).openConnection();
+  }
+
+  private static int total(JsonObject response) {
+    JsonObject paging = response.getAsJsonObject("paging");
+    if (paging != null && paging.has("total")) {
+      return paging.get("total").getAsInt();
+    }
+    return response.has("total") ? response.get("total").getAsInt() : 0;
+  }
+
+  private static void parsePage(JsonObject response, String moduleKey, List<ServerIssue> issues) throws IOException {
+    Map<String, String> paths = new HashMap<>();
+    JsonArray components = response.getAsJsonArray("components");
+    if (components != null) {
+      for (JsonElement e : components) {
+        JsonObject component = e.getAsJsonObject();
+        String path = string(component, "path");
+        if (path != null) {
+          paths.put(string(component, "key"), path);
+        }
+      }
+    }
+
+    JsonArray array = response.getAsJsonArray("issues");
+    if (array == null) {
+      return;
+    }
+    for (JsonElement e : array) {
+      JsonObject issue = e.getAsJsonObject();
+      String component = string(issue, "component");
+      String path = paths.get(component);
+      if (path == null && component != null && component.startsWith(moduleKey + ":")) {
+        path = component.substring(moduleKey.length() + 1);
+      }
+      if (path == null) {
+        // issue on a module or a directory
+        continue;
+      }
+      Integer line = issue.has("line") ? issue.get("line").getAsInt() : null;
+      issues.add(new ServerIssue(string(issue, "key"), string(issue, "rule"), path, line, string(issue, "message"),
+        parseDate(string(issue, "creationDate")), string(issue, "resolution")));
+    }
+  }
+
+  @CheckForNull
+  private static String string(JsonObject object, String member) {
+    JsonElement e = object.get(member);
+    return e == null || e.isJsonNull() ? null : e.getAsString();
+  }
+
+  static long parseDate(@Nullable String date) throws IOException {
+    if (date == null) {
+      return 0;
+    }
+    try {
+      return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").parse(date).getTime();
+    } catch (ParseException e) {
+      throw new IOException("Invalid date: " + date, e);
+    }
+  }
+}
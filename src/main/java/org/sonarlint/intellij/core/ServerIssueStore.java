@@ -0,0 +1,144 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ApplicationComponent;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps the issues downloaded from the server, per server and module, in the SonarLint home directory.
+ * Issues of a module are read from disk when first needed, and indexed by file, so that looking up the issues of a file
+ * never needs the network.
+ */
+@ThreadSafe
+public class ServerIssueStore extends ApplicationComponent.Adapter {
+  private static final Logger LOGGER = Logger.getInstance(ServerIssueStore.class);
+  private static final Type LIST_TYPE = new TypeToken<List<ServerIssue>>() {
+  }.getType();
+
+  private final Path root;
+  private final Gson gson = new Gson();
+  private final ConcurrentMap<String, Map<String, List<ServerIssue>>> modules = new ConcurrentHashMap<>();
+
+  public ServerIssueStore() {
+    this(Paths.get(PathManager.getConfigPath()).resolve("sonarlint").resolve("server-issues"));
+  }
+
+  ServerIssueStore(Path root) {
+    this.root = root;
+  }
+
+  public static ServerIssueStore get() {
+    return ApplicationManager.getApplication().getComponent(ServerIssueStore.class);
+  }
+
+  /**
+   * Replaces the issues of the module.
+   */
+  public void save(String serverId, String moduleKey, List<ServerIssue> issues) throws IOException {
+    Files.createDirectories(root);
+    Path file = moduleFile(serverId, moduleKey);
+    Path tmp = Files.createTempFile(root, "issues", ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        gson.toJson(issues, LIST_TYPE, writer);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+    modules.put(id(serverId, moduleKey), index(issues));
+  }
+
+  /**
+   * Issues of a file, identified by its path relative to the base directory of the module.
+   */
+  public List<ServerIssue> getForFile(String serverId, String moduleKey, String path) {
+    String id = id(serverId, moduleKey);
+    Map<String, List<ServerIssue>> index = modules.get(id);
+    if (index == null) {
+      index = index(load(serverId, moduleKey));
+      Map<String, List<ServerIssue>> previous = modules.putIfAbsent(id, index);
+      if (previous != null) {
+        index = previous;
+      }
+    }
+    List<ServerIssue> issues = index.get(path);
+    return issues == null ? Collections.<ServerIssue>emptyList() : issues;
+  }
+
+  private List<ServerIssue> load(String serverId, String moduleKey) {
+    Path file = moduleFile(serverId, moduleKey);
+    if (!Files.exists(file)) {
+      return Collections.emptyList();
+    }
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      List<ServerIssue> issues = gson.fromJson(reader, LIST_TYPE);
+      return issues == null ? Collections.<ServerIssue>emptyList() : issues;
+    } catch (IOException | JsonParseException e) {
+      LOGGER.warn("Unable to read issues of module '" + moduleKey + "'", e);
+      return Collections.emptyList();
+    }
+  }
+
+  private static Map<String, List<ServerIssue>> index(List<ServerIssue> issues) {
+    Map<String, List<ServerIssue>> index = new HashMap<>();
+    for (ServerIssue issue : issues) {
+      List<ServerIssue> list = index.get(issue.getPath());
+      if (list == null) {
+        list = new ArrayList<>();
+        index.put(issue.getPath(), list);
+      }
+      list.add(issue);
+    }
+    return index;
+  }
+
+  private Path moduleFile(String serverId, String moduleKey) {
+    return root.resolve(Hashing.sha1().hashString(id(serverId, moduleKey), StandardCharsets.UTF_8).toString() + ".json");
+  }
+
+  private static String id(String serverId, String moduleKey) {
+    return serverId + "/" + moduleKey;
+  }
+}
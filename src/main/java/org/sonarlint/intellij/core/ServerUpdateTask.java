@@ -28,6 +28,8 @@ import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 import org.jetbrains.annotations.NotNull;
 import org.sonarlint.intellij.config.global.SonarQubeServer;
@@ -103,6 +105,19 @@ public class ServerUpdateTask {
   private void updateModule(ConnectedSonarLintEngine engine, ServerConfiguration serverConfiguration, String key) {
     engine.updateModule(serverConfiguration, key);
     log.log("Module '" + key + "' in server binding '" + server.getName() + "' updated", LogOutput.Level.INFO);
+    updateServerIssues(key);
+  }
+
+  private void updateServerIssues(String key) {
+    try {
+      List<ServerIssue> issues = ServerIssueDownloader.create(server).download(key);
+      ServerIssueStore.get().save(server.getName(), key, issues);
+      log.log(issues.size() + " issues of module '" + key + "' downloaded from server '" + server.getName() + "'", LogOutput.Level.INFO);
+    } catch (IOException e) {
+      // issues are not required to analyze files
+      LOGGER.info("Error downloading issues of module '" + key + "'", e);
+      log.log("Failed to download issues of module '" + key + "': " + e.getMessage(), LogOutput.Level.WARN);
+    }
   }
 
 }
@@ -31,4 +31,9 @@ public interface SonarLintFacade {
   @Nullable String getDescription(String ruleKey);
 
   @Nullable String getRuleName(String ruleKey);
+
+  /**
+   * Lets the engine be stopped once idle. To be called when a facade returned for an analysis is not used anymore.
+   */
+  void release();
 }
@@ -19,24 +19,37 @@
  */
 package org.sonarlint.intellij.core;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.intellij.concurrency.JobScheduler;
 import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.ApplicationComponent;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 import org.apache.http.annotation.ThreadSafe;
 import org.jetbrains.annotations.NotNull;
 import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
@@ -44,6 +57,7 @@ import org.sonarlint.intellij.config.global.SonarQubeServer;
 import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
 import org.sonarlint.intellij.ui.SonarLintConsole;
 import org.sonarlint.intellij.util.GlobalLogOutput;
+import org.sonarlint.intellij.util.SonarLintUtils;
 import org.sonarsource.sonarlint.core.ConnectedSonarLintEngineImpl;
 import org.sonarsource.sonarlint.core.StandaloneSonarLintEngineImpl;
 import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
@@ -54,55 +68,242 @@ import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneSonarLintE
 
 @ThreadSafe
 public class SonarLintServerManager implements ApplicationComponent {
-  private Map<String, ConnectedSonarLintEngine> engines;
-  private StandaloneSonarLintEngine standalone;
+  private static final Logger LOGGER = Logger.getInstance(SonarLintServerManager.class);
+  private static final long IDLE_CHECK_PERIOD_MINUTES = 1;
+  private final ConcurrentMap<String, ManagedEngine<ConnectedSonarLintEngine>> engines = new ConcurrentHashMap<>();
+  // engines being created, per server
+  private final ConcurrentMap<String, FutureTask<ManagedEngine<ConnectedSonarLintEngine>>> starting = new ConcurrentHashMap<>();
+  private final Object standaloneLock = new Object();
+  private final ExecutorService lifecycleExecutor;
+  private volatile StandaloneEngineHolder standalone;
+  private volatile Set<String> standaloneLanguages = Collections.emptySet();
+  private volatile LanguagePlugins languagePlugins;
+  private volatile Set<String> configuredStorageIds = Collections.emptySet();
   private GlobalLogOutput globalLogOutput;
   private SonarLintGlobalSettings settings;
-  private Set<String> configuredStorageIds;
+  private ScheduledFuture<?> idleCheck;
 
   public SonarLintServerManager(GlobalLogOutput globalLogOutput, SonarLintGlobalSettings settings) {
     this.globalLogOutput = globalLogOutput;
     this.settings = settings;
+    this.lifecycleExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+      .setNameFormat("sonarlint-engine-lifecycle-%d")
+      .setDaemon(true)
+      .build());
   }
 
   @Override
   public void initComponent() {
-    configuredStorageIds = new HashSet<>();
     reloadServerNames();
-    engines = new HashMap<>();
+    idleCheck = JobScheduler.getScheduler().scheduleWithFixedDelay(new Runnable() {
+      @Override public void run() {
+        // don't hold the shared scheduler thread while an engine is being created
+        lifecycleExecutor.execute(new Runnable() {
+          @Override public void run() {
+            stopIdleEngines();
+          }
+        });
+      }
+    }, IDLE_CHECK_PERIOD_MINUTES, IDLE_CHECK_PERIOD_MINUTES, TimeUnit.MINUTES);
   }
 
   /**
    * Immediately removes and asynchronously stops all {@link ConnectedSonarLintEngine} corresponding to server IDs that were removed.
+   * Analyses holding a removed engine complete before it stops. Nothing is blocked while the engines stop.
    */
-  public synchronized void reloadServers() {
+  public void reloadServers() {
     reloadServerNames();
-    Iterator<Map.Entry<String, ConnectedSonarLintEngine>> it = engines.entrySet().iterator();
 
-    while (it.hasNext()) {
-      Map.Entry<String, ConnectedSonarLintEngine> e = it.next();
-      if (!configuredStorageIds.contains(e.getKey())) {
-        stopInThread(e.getValue());
-        it.remove();
+    for (Map.Entry<String, ManagedEngine<ConnectedSonarLintEngine>> e : engines.entrySet()) {
+      if (!configuredStorageIds.contains(e.getKey()) && engines.remove(e.getKey(), e.getValue())) {
+        e.getValue().retire();
+      }
+    }
+  }
+
+  /**
+   * Returns the engine of the given server, creating it if needed.
+   * Only callers asking for an engine that is being created wait for it. If the previous engine of the server is still stopping,
+   * a replacement is created without waiting.
+   */
+  public ConnectedSonarLintEngine getConnectedEngine(String serverId) {
+    return connectedEngine(serverId, false).engine();
+  }
+
+  /**
+   * Returns the engine of the given server, creating it if needed. If it's held, it's not stopped until it's released.
+   * Otherwise, its idle time restarts.
+   */
+  ManagedEngine<ConnectedSonarLintEngine> connectedEngine(String serverId, boolean hold) {
+    while (true) {
+      ManagedEngine<ConnectedSonarLintEngine> managed = engines.get(serverId);
+      if (managed == null) {
+        managed = startEngine(serverId);
+      }
+      if (use(managed, hold)) {
+        return managed;
+      }
+      // retired concurrently, and about to be removed
+      engines.remove(serverId, managed);
+    }
+  }
+
+  /**
+   * Creates the engine of the server, without holding any lock: only the callers asking for the same server wait for it,
+   * and a single engine is created for them.
+   */
+  private ManagedEngine<ConnectedSonarLintEngine> startEngine(final String serverId) {
+    FutureTask<ManagedEngine<ConnectedSonarLintEngine>> task = new FutureTask<>(new Callable<ManagedEngine<ConnectedSonarLintEngine>>() {
+      @Override
+      public ManagedEngine<ConnectedSonarLintEngine> call() {
+        // it may have been created since it was looked up: it's put in the engines before its task is removed
+        ManagedEngine<ConnectedSonarLintEngine> created = engines.get(serverId);
+        return created != null ? created : manage(createEngine(serverId));
+      }
+    });
+    FutureTask<ManagedEngine<ConnectedSonarLintEngine>> existing = starting.putIfAbsent(serverId, task);
+    if (existing == null) {
+      try {
+        task.run();
+        ManagedEngine<ConnectedSonarLintEngine> managed = get(task);
+        if (engines.putIfAbsent(serverId, managed) == null) {
+          logEngineStatus();
+        }
+        return managed;
+      } finally {
+        starting.remove(serverId, task);
+      }
+    }
+    return get(existing);
+  }
+
+  private static <T> T get(FutureTask<T> task) {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the engine to start", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to start engine", e.getCause());
+    }
+  }
+
+  /**
+   * Returns the standalone engine with the plugins already loaded. If no language was ever requested, all plugins are loaded.
+   */
+  public StandaloneSonarLintEngine getStandaloneEngine() {
+    return standaloneEngine(defaultLanguages(), false).engine();
+  }
+
+  /**
+   * Returns a standalone engine with, at least, the plugins for the given languages.
+   * If a language is missing, the engine is rebuilt with the previously loaded languages plus the new ones.
+   * This is meant to be called from the analysis task, so that the rebuild happens in the background.
+   * While the engine is rebuilt, callers that don't need the new languages keep using the current engine.
+   * The replaced engine is stopped asynchronously, after the analyses holding it finish.
+   */
+  public StandaloneSonarLintEngine getStandaloneEngine(Set<String> requiredLanguages) {
+    return standaloneEngine(requiredLanguages, false).engine();
+  }
+
+  /**
+   * Same as {@link #getStandaloneEngine(Set)}. If the engine is held, it's not stopped until it's released.
+   * Otherwise, its idle time restarts.
+   */
+  ManagedEngine<StandaloneSonarLintEngine> standaloneEngine(Set<String> requiredLanguages, boolean hold) {
+    StandaloneEngineHolder current = standalone;
+    if (current != null && current.languages.containsAll(requiredLanguages) && use(current.managed, hold)) {
+      return current.managed;
+    }
+
+    synchronized (standaloneLock) {
+      // the current engine is only retired with this lock held, after being replaced
+      current = standalone;
+      if (current != null && current.languages.containsAll(requiredLanguages) && use(current.managed, hold)) {
+        return current.managed;
       }
+
+      Set<String> languages = new TreeSet<>(standaloneLanguages);
+      languages.addAll(requiredLanguages);
+      languages = Collections.unmodifiableSet(languages);
+      StandaloneEngineHolder replacement = new StandaloneEngineHolder(manage(createEngine(languages)), languages);
+      use(replacement.managed, hold);
+      standaloneLanguages = languages;
+      standalone = replacement;
+
+      if (current != null) {
+        current.managed.retire();
+      }
+      logEngineStatus();
+      return replacement.managed;
     }
   }
 
-  public synchronized ConnectedSonarLintEngine getConnectedEngine(String serverId) {
-    if (!engines.containsKey(serverId)) {
-      ConnectedSonarLintEngine engine = createEngine(serverId);
+  private Set<String> defaultLanguages() {
+    if (standalone == null && standaloneLanguages.isEmpty()) {
+      return getLanguagePlugins().languages();
+    }
+    return Collections.emptySet();
+  }
+
+  private boolean use(ManagedEngine<?> managed, boolean hold) {
+    return hold ? managed.acquire(now()) : managed.touch(now());
+  }
+
+  /**
+   * Stops the engines that were not used for longer than the idle timeout configured in the global settings, and on which
+   * no analysis is running. They will be transparently created again on the next request. The languages loaded in the
+   * standalone engine and the plugin cache are kept, so that a new standalone engine starts as fast as possible.
+   */
+  void stopIdleEngines() {
+    int timeout = settings.getEngineIdleTimeout();
+    if (timeout <= 0) {
+      return;
+    }
+    long limit = now() - TimeUnit.MINUTES.toMillis(timeout);
+    boolean stopped = false;
+
+    for (Map.Entry<String, ManagedEngine<ConnectedSonarLintEngine>> e : engines.entrySet()) {
+      if (e.getValue().retireIfIdle(limit)) {
+        engines.remove(e.getKey(), e.getValue());
+        globalLogOutput.log("Stopping idle engine for server '" + e.getKey() + "'", LogOutput.Level.INFO);
+        stopped = true;
+      }
+    }
+
+    synchronized (standaloneLock) {
+      if (standalone != null && standalone.managed.retireIfIdle(limit)) {
+        globalLogOutput.log("Stopping idle standalone engine", LogOutput.Level.INFO);
+        standalone = null;
+        stopped = true;
+      }
+    }
 
-      engines.put(serverId, engine);
+    if (stopped) {
+      logEngineStatus();
     }
+  }
 
-    return engines.get(serverId);
+  private void logEngineStatus() {
+    StandaloneEngineHolder current = standalone;
+    int resident = engines.size() + (current != null ? 1 : 0);
+    StringBuilder builder = new StringBuilder();
+    builder.append("Resident SonarLint engines: ").append(resident);
+    if (current != null) {
+      builder.append("\n  standalone ").append(current.languages).append(": ").append(usage(current.managed));
+    }
+    for (Map.Entry<String, ManagedEngine<ConnectedSonarLintEngine>> e : engines.entrySet()) {
+      builder.append("\n  server '").append(e.getKey()).append("': ").append(usage(e.getValue()));
+    }
+    globalLogOutput.log(builder.toString(), LogOutput.Level.INFO);
   }
 
-  public synchronized StandaloneSonarLintEngine getStandaloneEngine() {
-    if (standalone == null) {
-      standalone = createEngine();
+  private static String usage(ManagedEngine<?> managed) {
+    int users = managed.users();
+    if (users > 0) {
+      return users + " analysis(es) running";
     }
-    return standalone;
+    return "last used " + SonarLintUtils.age(managed.lastUse());
   }
 
   /**
@@ -110,7 +311,21 @@ public class SonarLintServerManager implements ApplicationComponent {
    * In case of a problem, it handles the displaying of errors (Logging, user notifications, ..) and throws an IllegalStateException.
    */
   @CheckForNull
-  public synchronized SonarLintFacade getFacadeForAnalysis(Project project) {
+  public SonarLintFacade getFacadeForAnalysis(Project project) {
+    return getFacade(project, null);
+  }
+
+  /**
+   * Same as {@link #getFacadeForAnalysis(Project)}, but makes sure that a standalone engine has the plugins needed
+   * to analyze the given files. The engine is held, so that it's not stopped, until {@link SonarLintFacade#release()} is called.
+   */
+  @CheckForNull
+  public SonarLintFacade getFacadeForAnalysis(Project project, Collection<VirtualFile> filesToAnalyze) {
+    return getFacade(project, filesToAnalyze);
+  }
+
+  private SonarLintFacade getFacade(Project project, @Nullable Collection<VirtualFile> filesToAnalyze) {
+    boolean hold = filesToAnalyze != null;
     SonarLintProjectSettings projectSettings = project.getComponent(SonarLintProjectSettings.class);
     SonarLintConsole console = project.getComponent(SonarLintConsole.class);
     if (projectSettings.isBindingEnabled()) {
@@ -119,39 +334,93 @@ public class SonarLintServerManager implements ApplicationComponent {
 
       if (projectKey != null && serverId != null) {
         console.info(String.format("Using configuration of '%s' in server '%s'", projectSettings.getProjectKey(), projectSettings.getServerId()));
-        return createConnectedFacade(project, serverId, projectKey);
+        return createConnectedFacade(project, serverId, projectKey, hold);
       } else {
         SonarLintProjectNotifications.get(project).notifyServerIdInvalid();
         throw new IllegalStateException("Project as an invalid binding");
       }
     }
 
-    return new StandaloneSonarLintFacade(project, getStandaloneEngine());
+    Set<String> languages;
+    if (filesToAnalyze == null || filesToAnalyze.isEmpty()) {
+      languages = defaultLanguages();
+    } else {
+      languages = getLanguagePlugins().languagesOf(filesToAnalyze);
+    }
+    ManagedEngine<StandaloneSonarLintEngine> managed = standaloneEngine(languages, hold);
+    return new StandaloneSonarLintFacade(project, managed.engine(), hold ? managed : null);
+  }
+
+  private ManagedEngine<ConnectedSonarLintEngine> manage(final ConnectedSonarLintEngine engine) {
+    return new ManagedEngine<>(engine, new Runnable() {
+      @Override
+      public void run() {
+        stopInBackground(engine);
+      }
+    }, now());
+  }
+
+  private ManagedEngine<StandaloneSonarLintEngine> manage(final StandaloneSonarLintEngine engine) {
+    return new ManagedEngine<>(engine, new Runnable() {
+      @Override
+      public void run() {
+        stopInBackground(engine);
+      }
+    }, now());
+  }
+
+  long now() {
+    return System.currentTimeMillis();
   }
 
-  private static void stopInThread(final ConnectedSonarLintEngine engine) {
-    new Thread("stop-sonarlint-engine") {
+  private void stopInBackground(final ConnectedSonarLintEngine engine) {
+    submitStop(new Runnable() {
       @Override
       public void run() {
         engine.stop(false);
       }
-    }.start();
+    });
   }
 
-  private SonarLintFacade createConnectedFacade(Project project, String serverId, String projectKey) {
+  private void stopInBackground(final StandaloneSonarLintEngine engine) {
+    submitStop(new Runnable() {
+      @Override
+      public void run() {
+        engine.stop();
+      }
+    });
+  }
+
+  private void submitStop(final Runnable stop) {
+    try {
+      lifecycleExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            stop.run();
+          } catch (Exception e) {
+            LOGGER.warn("Failed to stop SonarLint engine", e);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      LOGGER.warn("SonarLint is shutting down, engine will not be stopped", e);
+    }
+  }
+
+  private SonarLintFacade createConnectedFacade(Project project, String serverId, String projectKey, boolean hold) {
     if (!configuredStorageIds.contains(serverId)) {
       SonarLintProjectNotifications.get(project).notifyServerIdInvalid();
       throw new IllegalStateException("Invalid server name: " + serverId);
     }
 
-    ConnectedSonarLintEngine engine;
-    if (engines.containsKey(serverId)) {
-      engine = engines.get(serverId);
-    } else {
-      engine = createEngine(serverId);
-    }
+    ManagedEngine<ConnectedSonarLintEngine> managed = connectedEngine(serverId, hold);
+    ConnectedSonarLintEngine engine = managed.engine();
 
     if (engine.getState() != ConnectedSonarLintEngine.State.UPDATED) {
+      if (hold) {
+        managed.release(now());
+      }
       if (engine.getState() != ConnectedSonarLintEngine.State.NEED_UPDATE) {
         SonarLintProjectNotifications.get(project).notifyServerNotUpdated();
       } else if (engine.getState() != ConnectedSonarLintEngine.State.NEVER_UPDATED) {
@@ -162,14 +431,14 @@ public class SonarLintServerManager implements ApplicationComponent {
 
     // Check if module is not updated
     //TODO is it too heavy?
-    return new ConnectedSonarLintFacade(engine, project, projectKey);
+    return new ConnectedSonarLintFacade(engine, project, projectKey, hold ? managed : null);
   }
 
   private static Path getSonarLintHome() {
     return Paths.get(PathManager.getConfigPath()).resolve("sonarlint");
   }
 
-  private StandaloneSonarLintEngineImpl createEngine() {
+  StandaloneSonarLintEngine createEngine(Set<String> languages) {
     /*
      * Some components in the container use the context classloader to find resources. For example, the ServiceLoader uses it by default
      * to find services declared by some libs.
@@ -178,7 +447,7 @@ public class SonarLintServerManager implements ApplicationComponent {
     Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
 
     try {
-      URL[] plugins = loadPlugins();
+      URL[] plugins = getLanguagePlugins().pluginsFor(languages);
 
       StandaloneGlobalConfiguration globalConfiguration = StandaloneGlobalConfiguration.builder()
         .setLogOutput(globalLogOutput)
@@ -186,7 +455,15 @@ public class SonarLintServerManager implements ApplicationComponent {
         .addPlugins(plugins)
         .build();
 
-      return new StandaloneSonarLintEngineImpl(globalConfiguration);
+      Runtime runtime = Runtime.getRuntime();
+      long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+      long start = System.currentTimeMillis();
+      StandaloneSonarLintEngineImpl engine = new StandaloneSonarLintEngineImpl(globalConfiguration);
+      long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+
+      globalLogOutput.log(String.format("Standalone engine started in %d ms with %d plugins for languages %s (heap usage %+d MB)",
+        System.currentTimeMillis() - start, plugins.length, languages, (usedAfter - usedBefore) / (1024 * 1024)), LogOutput.Level.INFO);
+      return engine;
     } catch (Exception e) {
       throw new IllegalStateException(e);
     } finally {
@@ -194,7 +471,7 @@ public class SonarLintServerManager implements ApplicationComponent {
     }
   }
 
-  private ConnectedSonarLintEngine createEngine(String serverId) {
+  ConnectedSonarLintEngine createEngine(String serverId) {
     ConnectedGlobalConfiguration config = ConnectedGlobalConfiguration.builder()
       .setLogOutput(globalLogOutput)
       .setSonarLintUserHome(getSonarLintHome())
@@ -205,40 +482,60 @@ public class SonarLintServerManager implements ApplicationComponent {
     return new ConnectedSonarLintEngineImpl(config);
   }
 
-  private URL[] loadPlugins() throws IOException, URISyntaxException {
-    URL pluginsDir = this.getClass().getClassLoader().getResource("plugins");
-
-    if (pluginsDir == null) {
-      throw new IllegalStateException("Couldn't find plugins");
-    }
-
-    List<URL> pluginsUrls = new ArrayList<>();
-    try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(Paths.get(pluginsDir.toURI()))) {
-      for (Path path : directoryStream) {
-        globalLogOutput.log("Found plugin: " + path.getFileName().toString(), LogOutput.Level.DEBUG);
-        pluginsUrls.add(path.toUri().toURL());
+  private LanguagePlugins getLanguagePlugins() {
+    if (languagePlugins == null) {
+      synchronized (standaloneLock) {
+        if (languagePlugins == null) {
+          try {
+            PluginCache cache = new PluginCache(getSonarLintHome().resolve("plugins-cache"), globalLogOutput);
+            Path pluginsDir = LanguagePlugins.findPluginsDir(this.getClass().getClassLoader());
+            languagePlugins = LanguagePlugins.of(cache.get(pluginsDir), globalLogOutput);
+          } catch (IOException | URISyntaxException e) {
+            throw new IllegalStateException("Failed to load plugins", e);
+          }
+        }
       }
     }
-    return pluginsUrls.toArray(new URL[pluginsUrls.size()]);
+    return languagePlugins;
   }
 
   private void reloadServerNames() {
-    configuredStorageIds.clear();
+    Set<String> ids = new HashSet<>();
     for (SonarQubeServer s : settings.getSonarQubeServers()) {
-      configuredStorageIds.add(s.getName());
+      ids.add(s.getName());
     }
+    configuredStorageIds = Collections.unmodifiableSet(ids);
   }
 
+  /**
+   * Stops all engines in parallel, in the background: the IDE exit never waits for them. Lifecycle threads are daemons,
+   * so they never prevent the JVM from exiting.
+   */
   @Override
   public void disposeComponent() {
-    for (ConnectedSonarLintEngine e : engines.values()) {
-      e.stop(false);
+    if (idleCheck != null) {
+      idleCheck.cancel(false);
     }
-    engines.clear();
-    if (standalone != null) {
-      standalone.stop();
-      standalone = null;
+    int count = 0;
+
+    for (Map.Entry<String, ManagedEngine<ConnectedSonarLintEngine>> e : engines.entrySet()) {
+      if (engines.remove(e.getKey(), e.getValue())) {
+        e.getValue().retireNow();
+        count++;
+      }
     }
+    synchronized (standaloneLock) {
+      if (standalone != null) {
+        standalone.managed.retireNow();
+        standalone = null;
+        count++;
+      }
+      standaloneLanguages = Collections.emptySet();
+    }
+
+    // the stops already submitted still run
+    lifecycleExecutor.shutdown();
+    LOGGER.info(String.format("Stopping %d SonarLint engine(s) in the background", count));
   }
 
   @NotNull
@@ -246,4 +543,15 @@ public class SonarLintServerManager implements ApplicationComponent {
   public String getComponentName() {
     return "SonarLintServerManager";
   }
+
+  @Immutable
+  private static class StandaloneEngineHolder {
+    private final ManagedEngine<StandaloneSonarLintEngine> managed;
+    private final Set<String> languages;
+
+    StandaloneEngineHolder(ManagedEngine<StandaloneSonarLintEngine> managed, Set<String> languages) {
+      this.managed = managed;
+      this.languages = languages;
+    }
+  }
 }
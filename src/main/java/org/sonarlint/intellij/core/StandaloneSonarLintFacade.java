@@ -20,7 +20,6 @@
 package org.sonarlint.intellij.core;
 
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.project.ProjectCoreUtil;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -39,10 +38,16 @@ import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneSonarLintE
 public final class StandaloneSonarLintFacade implements SonarLintFacade {
   private StandaloneSonarLintEngine sonarlint;
   private Project project;
+  private ManagedEngine<?> held;
 
   public StandaloneSonarLintFacade(Project project, StandaloneSonarLintEngine engine) {
+    this(project, engine, null);
+  }
+
+  StandaloneSonarLintFacade(Project project, StandaloneSonarLintEngine engine, @Nullable ManagedEngine<?> held) {
     this.project = project;
     this.sonarlint = engine;
+    this.held = held;
   }
 
   @Nullable
@@ -72,18 +77,29 @@ public final class StandaloneSonarLintFacade implements SonarLintFacade {
   }
 
   @Override
-  public synchronized void startAnalysis(List<ClientInputFile> inputFiles, IssueListener issueListener, Map<String, String> additionalProps) {
+  public void startAnalysis(List<ClientInputFile> inputFiles, IssueListener issueListener, Map<String, String> additionalProps) {
     SonarLintProjectSettings projectSettings = project.getComponent(SonarLintProjectSettings.class);
     SonarLintConsole console = project.getComponent(SonarLintConsole.class);
 
     Path baseDir = Paths.get(project.getBasePath());
-    Path workDir = baseDir.resolve(ProjectCoreUtil.DIRECTORY_BASED_PROJECT_DIR).resolve("sonarlint").toAbsolutePath();
     Map<String, String> props = new HashMap<>();
     props.putAll(additionalProps);
     props.putAll(projectSettings.getAdditionalProperties());
-    StandaloneAnalysisConfiguration config = new StandaloneAnalysisConfiguration(baseDir, workDir, inputFiles, props);
-    console.debug("Starting analysis with configuration:\n" + config.toString());
 
-    sonarlint.analyze(config, issueListener, new ProjectLogOutput(console, projectSettings));
+    try (WorkDirPool.Lease lease = WorkDirPool.get(project).lease()) {
+      Path workDir = lease.getDir();
+      StandaloneAnalysisConfiguration config = new StandaloneAnalysisConfiguration(baseDir, workDir, inputFiles, props);
+      console.debug("Starting analysis with configuration:\n" + config.toString());
+
+      sonarlint.analyze(config, issueListener, new ProjectLogOutput(console, projectSettings));
+    }
+  }
+
+  @Override
+  public synchronized void release() {
+    if (held != null) {
+      held.release(System.currentTimeMillis());
+      held = null;
+    }
   }
 }
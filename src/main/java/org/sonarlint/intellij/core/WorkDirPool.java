@@ -0,0 +1,236 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectCoreUtil;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.commons.io.FileUtils;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+
+/**
+ * Leases a scratch directory to each analysis, so that concurrent analyses of a project never share the engine's work directory.
+ * Directories are numbered slots under {@code .idea/sonarlint/work}. The lowest free slot is always leased first, so that only a few
+ * slots exist in practice. A released slot is emptied in the background, and only {@link #POOL_SIZE} slots are kept on disk:
+ * the disk usage is bounded by what the running analyses write.
+ */
+@ThreadSafe
+public class WorkDirPool extends AbstractProjectComponent {
+  static final int POOL_SIZE = 4;
+  static final long USAGE_WARNING_BYTES = 256L * 1024 * 1024;
+
+  private final SonarLintConsole console;
+  private final Path root;
+  private final ExecutorService cleaner;
+  private final Set<Integer> usedSlots = new HashSet<>();
+  private volatile long diskUsage;
+
+  public WorkDirPool(Project project, SonarLintConsole console) {
+    this(project, console, Paths.get(project.getBasePath()).resolve(ProjectCoreUtil.DIRECTORY_BASED_PROJECT_DIR).resolve("sonarlint").resolve("work").toAbsolutePath(),
+      Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("sonarlint-workdir-cleaner-%d")
+        .setDaemon(true)
+        .build()));
+  }
+
+  WorkDirPool(Project project, SonarLintConsole console, Path root, ExecutorService cleaner) {
+    super(project);
+    this.console = console;
+    this.root = root;
+    this.cleaner = cleaner;
+  }
+
+  public static WorkDirPool get(Project project) {
+    return project.getComponent(WorkDirPool.class);
+  }
+
+  /**
+   * Removes what previous sessions left behind, for example after a crash.
+   */
+  @Override
+  public void initComponent() {
+    submit(new Runnable() {
+      @Override
+      public void run() {
+        cleanStale();
+      }
+    });
+  }
+
+  @Override
+  public void disposeComponent() {
+    cleaner.shutdown();
+  }
+
+  /**
+   * Leases an empty directory. It must be closed once the analysis finished.
+   */
+  public Lease lease() {
+    int slot = reserveSlot();
+    Path dir = root.resolve(Integer.toString(slot));
+    try {
+      Files.createDirectories(dir);
+    } catch (IOException e) {
+      releaseSlot(slot);
+      throw new IllegalStateException("Unable to create work directory: " + dir, e);
+    }
+    return new Lease(slot, dir);
+  }
+
+  /**
+   * Size in bytes of the work directories, as measured after the last cleanup.
+   */
+  public long getDiskUsage() {
+    return diskUsage;
+  }
+
+  private synchronized int reserveSlot() {
+    int slot = 0;
+    while (usedSlots.contains(slot)) {
+      slot++;
+    }
+    usedSlots.add(slot);
+    return slot;
+  }
+
+  private synchronized boolean reserveSlot(int slot) {
+    return usedSlots.add(slot);
+  }
+
+  private synchronized void releaseSlot(int slot) {
+    usedSlots.remove(slot);
+  }
+
+  private void release(final int slot, final Path dir) {
+    submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (slot < POOL_SIZE) {
+            FileUtils.cleanDirectory(dir.toFile());
+          } else {
+            FileUtils.deleteDirectory(dir.toFile());
+          }
+        } catch (IOException | IllegalArgumentException e) {
+          console.error("Unable to clean work directory " + dir, e);
+        } finally {
+          releaseSlot(slot);
+        }
+        updateDiskUsage();
+      }
+    });
+  }
+
+  private void cleanStale() {
+    File[] children = root.toFile().listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      Integer slot = slotOf(child.getName());
+      if (slot != null && !reserveSlot(slot)) {
+        // leased in the meantime
+        continue;
+      }
+      try {
+        FileUtils.forceDelete(child);
+      } catch (IOException e) {
+        console.error("Unable to delete stale work directory " + child, e);
+      } finally {
+        if (slot != null) {
+          releaseSlot(slot);
+        }
+      }
+    }
+    updateDiskUsage();
+  }
+
+  private void updateDiskUsage() {
+    File dir = root.toFile();
+    long usage;
+    try {
+      usage = dir.isDirectory() ? FileUtils.sizeOfDirectory(dir) : 0L;
+    } catch (IllegalArgumentException e) {
+      // a file was deleted while computing the size, it will be measured next time
+      return;
+    }
+    diskUsage = usage;
+    String msg = String.format("SonarLint work directory uses %d KB", usage / 1024);
+    if (usage > USAGE_WARNING_BYTES) {
+      console.info(msg);
+    } else {
+      console.debug(msg);
+    }
+  }
+
+  private void submit(Runnable task) {
+    try {
+      cleaner.execute(task);
+    } catch (RejectedExecutionException e) {
+      // project is being closed, leftovers will be removed when it is opened again
+    }
+  }
+
+  @CheckForNull
+  private static Integer slotOf(String fileName) {
+    try {
+      return Integer.valueOf(fileName);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  public final class Lease implements Closeable {
+    private final int slot;
+    private final Path dir;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    private Lease(int slot, Path dir) {
+      this.slot = slot;
+      this.dir = dir;
+    }
+
+    public Path getDir() {
+      return dir;
+    }
+
+    @Override
+    public void close() {
+      if (released.compareAndSet(false, true)) {
+        release(slot, dir);
+      }
+    }
+  }
+}
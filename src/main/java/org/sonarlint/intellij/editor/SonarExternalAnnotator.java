@@ -42,7 +42,6 @@ import org.sonarlint.intellij.config.SonarLintTextAttributes;
 import org.sonarlint.intellij.issue.IssuePointer;
 import org.sonarlint.intellij.issue.IssueStore;
 import org.sonarlint.intellij.util.SonarLintSeverity;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
 public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnotator.AnnotationContext, SonarExternalAnnotator.AnnotationContext> {
   private final boolean unitTest;
@@ -59,9 +58,15 @@ public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnot
   public void apply(@NotNull PsiFile file, AnnotationContext annotationResult, @NotNull AnnotationHolder holder) {
     Collection<IssuePointer> issues = annotationResult.store.getForFile(file.getVirtualFile());
     for (IssuePointer i : issues) {
-      // reject non-null ranges that are no longer valid. It probably means that they were deleted from the file.
-      if (i.range() == null || i.range().isValid()) {
-        addAnnotation(i, holder);
+      if (i.isFileLevel()) {
+        addAnnotation(i, file.getTextRange(), holder);
+        continue;
+      }
+      // read once: the issue can be detached concurrently
+      RangeMarker range = i.range();
+      // reject ranges that are no longer valid. It probably means that they were deleted from the file.
+      if (range != null && range.isValid()) {
+        addAnnotation(i, createTextRange(range), holder);
       }
     }
   }
@@ -84,25 +89,16 @@ public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnot
     return collectedInfo;
   }
 
-  private void addAnnotation(IssuePointer i, AnnotationHolder annotationHolder) {
-    Issue issue = i.issue();
-    TextRange textRange;
-
-    if (i.range() != null) {
-      textRange = createTextRange(i.range());
-    } else {
-      textRange = i.psiFile().getTextRange();
-    }
+  private void addAnnotation(IssuePointer i, TextRange textRange, AnnotationHolder annotationHolder) {
+    String msg = i.getMessage();
+    String htmlMsg = getHtmlMessage(i);
 
-    String msg = getMessage(issue);
-    String htmlMsg = getHtmlMessage(issue);
+    Annotation annotation = annotationHolder.createAnnotation(getSeverity(i.getSeverity()), textRange, msg, htmlMsg);
 
-    Annotation annotation = annotationHolder.createAnnotation(getSeverity(issue.getSeverity()), textRange, msg, htmlMsg);
-
-    if (i.range() == null) {
+    if (i.isFileLevel()) {
       annotation.setFileLevelAnnotation(true);
     } else {
-      annotation.setTextAttributes(getTextAttrsKey(issue.getSeverity()));
+      annotation.setTextAttributes(getTextAttrsKey(i.getSeverity()));
     }
 
     /**
@@ -113,7 +109,7 @@ public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnot
      * key ({@link SonarLintTextAttributes} to {@link Annotation#setTextAttributes}
      * - let {@link Annotation#getTextAttributes} decide it based on highlight type and severity.
      */
-    annotation.setHighlightType(getType(issue.getSeverity()));
+    annotation.setHighlightType(getType(i.getSeverity()));
   }
 
   private static TextAttributesKey getTextAttrsKey(@Nullable String severity) {
@@ -140,7 +136,7 @@ public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnot
    * {@link InspectionDescriptionLinkHandler}
    * {@link com.intellij.openapi.editor.colors.CodeInsightColors}
    */
-  private String getHtmlMessage(Issue issue) {
+  private String getHtmlMessage(IssuePointer issue) {
     @NonNls
     final String link = " <a "
       + "href=\"#sonarissue/" + issue.getRuleKey() + "\""
@@ -155,10 +151,6 @@ public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnot
       UIUtil.isUnderDarcula();
   }
 
-  private static String getMessage(Issue issue) {
-    return issue.getMessage();
-  }
-
   /**
    * Must be consistent with {@link #getSeverity}.
    * @see Annotation#getTextAttributes
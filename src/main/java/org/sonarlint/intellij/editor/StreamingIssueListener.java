@@ -0,0 +1,97 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.editor;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.sonarlint.intellij.issue.IssueProcessor;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+
+/**
+ * Groups the issues by file and hands each file over to the {@link IssueProcessor.Batch} as soon as the engine moves on to another file,
+ * so that files are highlighted while the analysis is still running.
+ * If issues of a file that was already handed over arrive later, the file is handed over again with all its issues.
+ */
+public class StreamingIssueListener implements IssueListener {
+  private final IssueProcessor.Batch batch;
+  private final Map<ClientInputFile, List<Issue>> delivered = new HashMap<>();
+  private ClientInputFile currentFile;
+  private List<Issue> current;
+  private int count = 0;
+
+  public StreamingIssueListener(IssueProcessor.Batch batch) {
+    this.batch = batch;
+  }
+
+  @Override
+  public synchronized void handle(Issue issue) {
+    count++;
+    ClientInputFile inputFile = issue.getInputFile();
+    if (inputFile == null || inputFile.getPath() == null) {
+      // ignore project level issues
+      return;
+    }
+
+    if (!inputFile.equals(currentFile)) {
+      flush();
+      currentFile = inputFile;
+      List<Issue> previous = delivered.get(inputFile);
+      current = previous != null ? new ArrayList<>(previous) : new ArrayList<Issue>();
+    }
+    current.add(issue);
+  }
+
+  /**
+   * Hands over the last file and waits for all files to be processed.
+   */
+  public synchronized void finish() {
+    flush();
+    batch.finish(count);
+  }
+
+  public synchronized int getIssueCount() {
+    return count;
+  }
+
+  private void flush() {
+    if (currentFile == null) {
+      return;
+    }
+    delivered.put(currentFile, current);
+    VirtualFile file = getVirtualFile(currentFile);
+    if (file != null) {
+      batch.submit(file, new ArrayList<>(current));
+    }
+    currentFile = null;
+    current = null;
+  }
+
+  @Nullable
+  private static VirtualFile getVirtualFile(ClientInputFile inputFile) {
+    Object clientObject = inputFile.getClientObject();
+    return clientObject instanceof VirtualFile ? (VirtualFile) clientObject : null;
+  }
+}
@@ -0,0 +1,154 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The issues of a detached file, kept in columns of primitive values instead of one {@link IssuePointer} object per issue,
+ * which takes less memory and leaves a few arrays per file instead of an object per issue to the garbage collector.
+ * Rule keys, rule names and severities are ids in a {@link StringDictionary} shared by all files, messages are indexes in
+ * a table of the distinct messages of the file.
+ * <p>
+ * It's an immutable list of views: each time an issue is read, a detached {@link IssuePointer} is created, equal to the
+ * issue from which it was stored. Changes made to a view are not kept.
+ */
+@Immutable
+class ColumnarIssues extends AbstractList<IssuePointer> implements RandomAccess {
+  // rough estimate of the memory taken by each issue, see IssueStore#ISSUE_SIZE
+  static final long ISSUE_SIZE = 60;
+  private static final byte FILE_LEVEL = 1;
+  private static final byte VALID_LOCATION = 2;
+
+  private final VirtualFile file;
+  private final StringDictionary dictionary;
+  private final long[] uids;
+  private final long[] creationDates;
+  private final int[] rules;
+  private final int[] ruleNames;
+  private final int[] severities;
+  private final int[] messages;
+  private final String[] messageTable;
+  private final int[] checksums;
+  private final int[] startOffsets;
+  private final int[] endOffsets;
+  private final int[] lines;
+  private final int[] columns;
+  private final byte[] flags;
+  // most issues don't exist on a server
+  private final String[] serverIssueKeys;
+
+  private ColumnarIssues(VirtualFile file, List<IssuePointer> issues, StringDictionary dictionary) {
+    int size = issues.size();
+    this.file = file;
+    this.dictionary = dictionary;
+    uids = new long[size];
+    creationDates = new long[size];
+    rules = new int[size];
+    ruleNames = new int[size];
+    severities = new int[size];
+    messages = new int[size];
+    checksums = new int[size];
+    startOffsets = new int[size];
+    endOffsets = new int[size];
+    lines = new int[size];
+    columns = new int[size];
+    flags = new byte[size];
+
+    Map<String, Integer> messageIds = new HashMap<>();
+    String[] serverKeys = null;
+    for (int i = 0; i < size; i++) {
+      IssuePointer issue = issues.get(i);
+      uids[i] = issue.uid();
+      creationDates[i] = issue.creationDate();
+      rules[i] = dictionary.id(issue.getRuleKey());
+      ruleNames[i] = dictionary.id(issue.getRuleName());
+      severities[i] = dictionary.id(issue.getSeverity());
+      messages[i] = messageId(messageIds, issue.getMessage());
+      checksums[i] = issue.checksum();
+      if (issue.isFileLevel()) {
+        flags[i] = FILE_LEVEL;
+      } else {
+        startOffsets[i] = issue.getStartOffset();
+        endOffsets[i] = issue.getEndOffset();
+        lines[i] = issue.getLine();
+        columns[i] = issue.getColumn();
+      }
+      if (issue.hasValidLocation()) {
+        flags[i] |= VALID_LOCATION;
+      }
+      if (issue.serverIssueKey() != null) {
+        if (serverKeys == null) {
+          serverKeys = new String[size];
+        }
+        serverKeys[i] = issue.serverIssueKey();
+      }
+    }
+    serverIssueKeys = serverKeys;
+    messageTable = new String[messageIds.size()];
+    for (Map.Entry<String, Integer> e : messageIds.entrySet()) {
+      messageTable[e.getValue()] = e.getKey();
+    }
+  }
+
+  /**
+   * Copies the issues, or returns null if some of them are attached to a document.
+   */
+  @CheckForNull
+  static ColumnarIssues of(VirtualFile file, List<IssuePointer> issues, StringDictionary dictionary) {
+    for (IssuePointer issue : issues) {
+      if (issue.isAttached()) {
+        return null;
+      }
+    }
+    return new ColumnarIssues(file, issues, dictionary);
+  }
+
+  private static int messageId(Map<String, Integer> messageIds, String message) {
+    if (message == null) {
+      return -1;
+    }
+    Integer id = messageIds.get(message);
+    if (id == null) {
+      id = messageIds.size();
+      messageIds.put(message, id);
+    }
+    return id;
+  }
+
+  @Override
+  public IssuePointer get(int i) {
+    return new IssuePointer(uids[i], file, (flags[i] & FILE_LEVEL) != 0, dictionary.get(rules[i]), dictionary.get(ruleNames[i]),
+      dictionary.get(severities[i]), messages[i] < 0 ? null : messageTable[messages[i]], checksums[i], startOffsets[i], endOffsets[i],
+      lines[i], columns[i], (flags[i] & VALID_LOCATION) != 0, creationDates[i], serverIssueKeys == null ? null : serverIssueKeys[i]);
+  }
+
+  @Override
+  public int size() {
+    return uids.length;
+  }
+}
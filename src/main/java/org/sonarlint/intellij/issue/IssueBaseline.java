@@ -0,0 +1,369 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectCoreUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sonarlint.intellij.issue.tracking.Trackable;
+
+/**
+ * Keeps the creation date of the issues of each file on disk, under {@code .idea/sonarlint/issues}, so that issues keep their age
+ * across sessions. Only what is needed to track the issues is kept: line, line hash, rule, hash of the message and creation date.
+ * The baseline of a file is read when it's first needed, and written in the background: saving the same file several times
+ * before it's written only writes the latest issues. Baselines can be read ahead in the background with {@link #preload(Collection)},
+ * so that loading them doesn't wait for the disk.
+ */
+@ThreadSafe
+public class IssueBaseline extends AbstractProjectComponent {
+  private static final Logger LOGGER = Logger.getInstance(IssueBaseline.class);
+  private static final int FORMAT_VERSION = 1;
+  private static final long FLUSH_TIMEOUT_MS = 2000;
+  private static final int MAX_PRELOADED = 1000;
+
+  private final Path root;
+  private final ExecutorService writer;
+  // baselines waiting to be written, per file path
+  @GuardedBy("pending")
+  private final Map<String, List<Entry>> pending = new HashMap<>();
+  // baselines read ahead, per file path. They are read by the single thread of the writer, after the writes already scheduled.
+  private final ConcurrentMap<String, Future<List<Entry>>> preloaded = CacheBuilder.newBuilder()
+    .maximumSize(MAX_PRELOADED)
+    .<String, Future<List<Entry>>>build()
+    .asMap();
+
+  public IssueBaseline(Project project) {
+    this(project, Paths.get(project.getBasePath()).resolve(ProjectCoreUtil.DIRECTORY_BASED_PROJECT_DIR).resolve("sonarlint").resolve("issues").toAbsolutePath(),
+      Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("sonarlint-issue-baseline-%d")
+        .setDaemon(true)
+        .build()));
+  }
+
+  IssueBaseline(Project project, Path root, ExecutorService writer) {
+    super(project);
+    this.root = root;
+    this.writer = writer;
+  }
+
+  /**
+   * Writes what is pending before the project is closed.
+   */
+  @Override
+  public void disposeComponent() {
+    writer.shutdown();
+    try {
+      if (!writer.awaitTermination(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        LOGGER.warn("SonarLint issue baseline was not fully written");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Reads the baselines of the files in the background, if they are not already, until they are loaded.
+   */
+  public void preload(Collection<VirtualFile> files) {
+    for (VirtualFile file : files) {
+      final String path = file.getPath();
+      FutureTask<List<Entry>> task = new FutureTask<>(new Callable<List<Entry>>() {
+        @Override
+        public List<Entry> call() {
+          return read(path);
+        }
+      });
+      if (preloaded.putIfAbsent(path, task) != null) {
+        continue;
+      }
+      try {
+        writer.execute(task);
+      } catch (RejectedExecutionException e) {
+        // project is being closed
+        preloaded.remove(path);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Latest baseline of the file, possibly not written yet. Empty if the file has no issues.
+   * If it was preloaded, waits until it's read. Otherwise it's read from the disk.
+   */
+  public List<Entry> load(VirtualFile file) {
+    String path = file.getPath();
+    synchronized (pending) {
+      List<Entry> entries = pending.get(path);
+      if (entries != null) {
+        return entries;
+      }
+    }
+
+    Future<List<Entry>> future = preloaded.remove(path);
+    if (future != null) {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        LOGGER.debug("Unable to preload SonarLint issue baseline of " + path, e);
+      }
+    }
+    return read(path);
+  }
+
+  private List<Entry> read(String path) {
+    Path baselineFile = baselineFile(path);
+    if (!Files.exists(baselineFile)) {
+      return Collections.emptyList();
+    }
+    try {
+      return read(baselineFile, path);
+    } catch (IOException e) {
+      LOGGER.debug("Unable to read SonarLint issue baseline of " + path, e);
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Schedules the baseline of the file to be replaced with the given issues. Nothing is kept if there are no issues.
+   */
+  public void save(VirtualFile file, Collection<IssuePointer> issues) {
+    List<Entry> entries = new ArrayList<>(issues.size());
+    for (IssuePointer i : issues) {
+      entries.add(Entry.of(i));
+    }
+    saveEntries(file, entries);
+  }
+
+  /**
+   * Same as {@link #save(VirtualFile, Collection)}, with the entries already read from the issues.
+   */
+  void saveEntries(VirtualFile file, List<Entry> entries) {
+    final String path = file.getPath();
+    synchronized (pending) {
+      if (pending.put(path, entries) != null) {
+        // a write is already scheduled, it will write the latest entries
+        return;
+      }
+    }
+    try {
+      writer.execute(new Runnable() {
+        @Override
+        public void run() {
+          write(path);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // project is being closed
+      synchronized (pending) {
+        pending.remove(path);
+      }
+    }
+  }
+
+  private void write(String path) {
+    List<Entry> entries;
+    synchronized (pending) {
+      entries = pending.get(path);
+    }
+    if (entries == null) {
+      return;
+    }
+
+    Path baselineFile = baselineFile(path);
+    try {
+      if (entries.isEmpty()) {
+        Files.deleteIfExists(baselineFile);
+      } else {
+        Files.createDirectories(root);
+        Path tmp = Files.createTempFile(root, "baseline", ".tmp");
+        try {
+          try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            write(out, path, entries);
+          }
+          Files.move(tmp, baselineFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+          Files.deleteIfExists(tmp);
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Unable to write SonarLint issue baseline of " + path, e);
+    } finally {
+      // what was read ahead before this write is outdated, while the reads scheduled after it are not done yet
+      Future<List<Entry>> read = preloaded.get(path);
+      if (read != null && read.isDone()) {
+        preloaded.remove(path, read);
+      }
+      synchronized (pending) {
+        // keep what was saved in the meantime, it will be written by the next task
+        if (pending.get(path) == entries) {
+          pending.remove(path);
+        }
+      }
+    }
+  }
+
+  private Path baselineFile(String path) {
+    return root.resolve(Hashing.sha1().hashString(path, StandardCharsets.UTF_8).toString());
+  }
+
+  private static void write(DataOutputStream out, String path, List<Entry> entries) throws IOException {
+    out.writeInt(FORMAT_VERSION);
+    out.writeUTF(path);
+    out.writeInt(entries.size());
+    for (Entry e : entries) {
+      writeNullable(out, e.line);
+      writeNullable(out, e.lineHash);
+      out.writeUTF(e.ruleKey);
+      out.writeInt(e.messageHash);
+      out.writeLong(e.creationDate);
+    }
+  }
+
+  private static List<Entry> read(Path baselineFile, String path) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(baselineFile)))) {
+      if (in.readInt() != FORMAT_VERSION || !path.equals(in.readUTF())) {
+        return Collections.emptyList();
+      }
+      int size = in.readInt();
+      List<Entry> entries = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        Integer line = readNullable(in);
+        Integer lineHash = readNullable(in);
+        String ruleKey = in.readUTF();
+        int messageHash = in.readInt();
+        long creationDate = in.readLong();
+        entries.add(new Entry(line, lineHash, ruleKey, messageHash, creationDate));
+      }
+      return entries;
+    }
+  }
+
+  private static void writeNullable(DataOutputStream out, @Nullable Integer value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeInt(value);
+    }
+  }
+
+  @CheckForNull
+  private static Integer readNullable(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readInt() : null;
+  }
+
+  /**
+   * What is kept of an issue. The message is tracked by its hash.
+   */
+  @Immutable
+  public static class Entry implements Trackable {
+    private final Integer line;
+    private final Integer lineHash;
+    private final String ruleKey;
+    private final int messageHash;
+    private final long creationDate;
+
+    Entry(@Nullable Integer line, @Nullable Integer lineHash, String ruleKey, int messageHash, long creationDate) {
+      this.line = line;
+      this.lineHash = lineHash;
+      this.ruleKey = ruleKey;
+      this.messageHash = messageHash;
+      this.creationDate = creationDate;
+    }
+
+    static Entry of(IssuePointer issue) {
+      return of(issue, issue.getLine(), issue.creationDate());
+    }
+
+    /**
+     * Entry of an issue with the line read when it was tracked.
+     */
+    static Entry of(TrackedIssue issue) {
+      return of(issue.issue(), issue.getLine(), issue.issue().creationDate());
+    }
+
+    private static Entry of(IssuePointer issue, @Nullable Integer line, long creationDate) {
+      String message = issue.getMessage();
+      String ruleKey = issue.getRuleKey();
+      return new Entry(line, issue.getLineHash(), ruleKey == null ? "" : ruleKey, message == null ? 0 : message.hashCode(), creationDate);
+    }
+
+    @CheckForNull
+    @Override
+    public Integer getLine() {
+      return line;
+    }
+
+    @Override
+    public String getMessage() {
+      return Integer.toString(messageHash);
+    }
+
+    @CheckForNull
+    @Override
+    public Integer getLineHash() {
+      return lineHash;
+    }
+
+    @Override
+    public String getRuleKey() {
+      return ruleKey;
+    }
+
+    public long getCreationDate() {
+      return creationDate;
+    }
+  }
+}
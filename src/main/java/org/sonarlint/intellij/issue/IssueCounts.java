@@ -0,0 +1,97 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.AtomicLongMap;
+import java.util.Collection;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Number of stored issues per severity, rule and module, updated incrementally by {@link IssueStore}
+ * so that they can be read without going through the issues.
+ */
+@ThreadSafe
+public class IssueCounts {
+  private final AtomicLongMap<String> perSeverity = AtomicLongMap.create();
+  private final AtomicLongMap<String> perRule = AtomicLongMap.create();
+  private final AtomicLongMap<String> perModule = AtomicLongMap.create();
+
+  void add(@Nullable String module, Collection<IssuePointer> issues) {
+    update(module, issues, 1);
+  }
+
+  void remove(@Nullable String module, Collection<IssuePointer> issues) {
+    update(module, issues, -1);
+  }
+
+  private void update(@Nullable String module, Collection<IssuePointer> issues, int sign) {
+    if (issues.isEmpty()) {
+      return;
+    }
+    for (IssuePointer i : issues) {
+      if (i.getSeverity() != null) {
+        perSeverity.addAndGet(i.getSeverity(), sign);
+      }
+      if (i.getRuleKey() != null) {
+        perRule.addAndGet(i.getRuleKey(), sign);
+      }
+    }
+    if (module != null) {
+      perModule.addAndGet(module, (long) sign * issues.size());
+    }
+  }
+
+  public long bySeverity(String severity) {
+    return perSeverity.get(severity);
+  }
+
+  public long byRule(String ruleKey) {
+    return perRule.get(ruleKey);
+  }
+
+  public long byModule(String moduleName) {
+    return perModule.get(moduleName);
+  }
+
+  public Map<String, Long> perSeverity() {
+    return nonZero(perSeverity);
+  }
+
+  public Map<String, Long> perRule() {
+    return nonZero(perRule);
+  }
+
+  public Map<String, Long> perModule() {
+    return nonZero(perModule);
+  }
+
+  private static <K> Map<K, Long> nonZero(AtomicLongMap<K> counts) {
+    ImmutableMap.Builder<K, Long> builder = ImmutableMap.builder();
+    for (Map.Entry<K, Long> e : counts.asMap().entrySet()) {
+      if (e.getValue() != 0) {
+        builder.put(e.getKey(), e.getValue());
+      }
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Changes of the issues of a file between two versions in {@link IssueStore}, as found by tracking.
+ * Removed issues and the keys of {@link #tracked()} are the previous issues, the others are the issues now stored.
+ * Issues are equal if they have the same {@link IssuePointer#uid()}.
+ */
+@Immutable
+public class IssueDelta {
+  private final VirtualFile file;
+  private final long previousVersion;
+  private final long version;
+  private final long storeVersion;
+  private final ImmutableList<IssuePointer> issues;
+  private final ImmutableList<IssuePointer> added;
+  private final ImmutableList<IssuePointer> removed;
+  private final ImmutableMap<IssuePointer, IssuePointer> tracked;
+  private final ImmutableMap<IssuePointer, IssuePointer> moved;
+
+  IssueDelta(VirtualFile file, long previousVersion, long version, long storeVersion, Collection<IssuePointer> issues,
+    Collection<IssuePointer> added, Collection<IssuePointer> removed, Map<IssuePointer, IssuePointer> tracked,
+    Map<IssuePointer, IssuePointer> moved) {
+    this.file = file;
+    this.previousVersion = previousVersion;
+    this.version = version;
+    this.storeVersion = storeVersion;
+    this.issues = ImmutableList.copyOf(issues);
+    this.added = ImmutableList.copyOf(added);
+    this.removed = ImmutableList.copyOf(removed);
+    this.tracked = ImmutableMap.copyOf(tracked);
+    this.moved = ImmutableMap.copyOf(moved);
+  }
+
+  /**
+   * Nothing changed in a file that is still without issues.
+   */
+  static IssueDelta none(VirtualFile file, long storeVersion) {
+    List<IssuePointer> noIssues = ImmutableList.of();
+    Map<IssuePointer, IssuePointer> noMatch = ImmutableMap.of();
+    return new IssueDelta(file, 0, 0, storeVersion, noIssues, noIssues, noIssues, noMatch, noMatch);
+  }
+
+  /**
+   * All the issues of the file were removed.
+   */
+  static IssueDelta removed(VirtualFile file, long previousVersion, long storeVersion, Collection<IssuePointer> removed) {
+    List<IssuePointer> noIssues = ImmutableList.of();
+    Map<IssuePointer, IssuePointer> noMatch = ImmutableMap.of();
+    return new IssueDelta(file, previousVersion, 0, storeVersion, noIssues, noIssues, removed, noMatch, noMatch);
+  }
+
+  public VirtualFile file() {
+    return file;
+  }
+
+  /**
+   * Version of the issues of the file to which this delta applies, see {@link IssueStore#getVersion(VirtualFile)}.
+   */
+  public long previousVersion() {
+    return previousVersion;
+  }
+
+  /**
+   * Version of the issues of the file once this delta is applied.
+   */
+  public long version() {
+    return version;
+  }
+
+  /**
+   * Version of the store once this delta is applied, see {@link IssueStore#getVersion()}.
+   */
+  public long storeVersion() {
+    return storeVersion;
+  }
+
+  /**
+   * All the issues of the file once this delta is applied.
+   */
+  public List<IssuePointer> issues() {
+    return issues;
+  }
+
+  public List<IssuePointer> added() {
+    return added;
+  }
+
+  public List<IssuePointer> removed() {
+    return removed;
+  }
+
+  /**
+   * Previous issues matched by new ones, which replace them. It includes the ones that look the same.
+   */
+  public Map<IssuePointer, IssuePointer> tracked() {
+    return tracked;
+  }
+
+  /**
+   * Subset of {@link #tracked()}, where the new issue has a different location, rule, severity or message.
+   */
+  public Map<IssuePointer, IssuePointer> moved() {
+    return moved;
+  }
+
+  /**
+   * Whether the displayed issues didn't change.
+   */
+  public boolean isEmpty() {
+    return added.isEmpty() && removed.isEmpty() && moved.isEmpty();
+  }
+}
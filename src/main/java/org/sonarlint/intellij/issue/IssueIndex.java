@@ -0,0 +1,112 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Files that have issues, per severity, rule and module, so that queries only go through the files that can match.
+ * Updated incrementally by {@link IssueStore}, like {@link IssueCounts}. Each file is kept with its number of issues,
+ * so that updates of a file can be applied in any order.
+ */
+@ThreadSafe
+class IssueIndex {
+  @GuardedBy("this")
+  private final Map<String, Map<VirtualFile, Integer>> perSeverity = new HashMap<>();
+  @GuardedBy("this")
+  private final Map<String, Map<VirtualFile, Integer>> perRule = new HashMap<>();
+  @GuardedBy("this")
+  private final Map<String, Map<VirtualFile, Integer>> perModule = new HashMap<>();
+
+  synchronized void add(VirtualFile file, @Nullable String module, Collection<IssuePointer> issues) {
+    update(file, module, issues, 1);
+  }
+
+  synchronized void remove(VirtualFile file, @Nullable String module, Collection<IssuePointer> issues) {
+    update(file, module, issues, -1);
+  }
+
+  synchronized Set<VirtualFile> filesWithSeverity(Collection<String> severities) {
+    return files(perSeverity, severities);
+  }
+
+  synchronized Set<VirtualFile> filesWithRule(Collection<String> ruleKeys) {
+    return files(perRule, ruleKeys);
+  }
+
+  synchronized Set<VirtualFile> filesInModule(Collection<String> moduleNames) {
+    return files(perModule, moduleNames);
+  }
+
+  @GuardedBy("this")
+  private void update(VirtualFile file, @Nullable String module, Collection<IssuePointer> issues, int sign) {
+    if (issues.isEmpty()) {
+      return;
+    }
+    for (IssuePointer i : issues) {
+      if (i.getSeverity() != null) {
+        add(perSeverity, i.getSeverity(), file, sign);
+      }
+      if (i.getRuleKey() != null) {
+        add(perRule, i.getRuleKey(), file, sign);
+      }
+    }
+    if (module != null) {
+      add(perModule, module, file, sign * issues.size());
+    }
+  }
+
+  private static void add(Map<String, Map<VirtualFile, Integer>> index, String key, VirtualFile file, int delta) {
+    Map<VirtualFile, Integer> files = index.get(key);
+    if (files == null) {
+      files = new HashMap<>();
+      index.put(key, files);
+    }
+    Integer count = files.get(file);
+    int newCount = (count == null ? 0 : count) + delta;
+    if (newCount == 0) {
+      files.remove(file);
+      if (files.isEmpty()) {
+        index.remove(key);
+      }
+    } else {
+      files.put(file, newCount);
+    }
+  }
+
+  private static Set<VirtualFile> files(Map<String, Map<VirtualFile, Integer>> index, Collection<String> keys) {
+    Set<VirtualFile> result = new HashSet<>();
+    for (String key : keys) {
+      Map<VirtualFile, Integer> files = index.get(key);
+      if (files != null) {
+        result.addAll(files.keySet());
+      }
+    }
+    return result;
+  }
+}
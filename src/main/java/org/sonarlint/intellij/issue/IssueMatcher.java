@@ -23,25 +23,32 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.AbstractProjectComponent;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDocumentManager;
-import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.PsiWhiteSpace;
+import java.util.Arrays;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+import org.sonarlint.intellij.analysis.DocumentSnapshot;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
 public class IssueMatcher extends AbstractProjectComponent {
   private final PsiManager psiManager;
   private final PsiDocumentManager docManager;
+  private final FileEditorManager editorManager;
 
-  public IssueMatcher(Project project, PsiManager psiManager, PsiDocumentManager docManager) {
+  public IssueMatcher(Project project, PsiManager psiManager, PsiDocumentManager docManager, FileEditorManager editorManager) {
     super(project);
     this.psiManager = psiManager;
     this.docManager = docManager;
+    this.editorManager = editorManager;
   }
 
   public PsiFile findFile(VirtualFile file) throws NoMatchException {
@@ -53,103 +60,303 @@ public class IssueMatcher extends AbstractProjectComponent {
   }
 
   /**
-   * Tries to match an SQ issue to an IntelliJ file, by either:
-   * - Attaching to the file with a dynamic {@link RangeMarker} (see {@link #createRangeIssue})
-   * - Create a file-level issue (see {@link #createFileIssue})
+   * Prepares the matching of the issues of a file.
+   * If the file is open, issues are attached to its document with {@link RangeMarker}s. Otherwise, the issues are created detached
+   * (see {@link IssuePointer#detach()}), from the content of the file, without loading a document or registering range markers.
    *
    * <b>Can only be called with read access</b>.
    */
-  public IssuePointer match(PsiFile file, Issue issue) throws NoMatchException {
+  public FileMatcher matcherFor(VirtualFile file) throws NoMatchException {
+    return matcherFor(file, null);
+  }
+
+  /**
+   * Same as {@link #matcherFor(VirtualFile)}, but if the document was modified since it was analyzed, the issue locations are
+   * resolved in the analyzed content and translated through the edits made since then.
+   *
+   * <b>Can only be called with read access</b>.
+   */
+  public FileMatcher matcherFor(VirtualFile file, @Nullable DocumentSnapshot snapshot) throws NoMatchException {
     ApplicationManager.getApplication().assertReadAccessAllowed();
 
-    Document doc = docManager.getDocument(file);
-    if (doc == null) {
-      throw new NoMatchException("No document found for file: " + file.getName());
+    if (editorManager.isFileOpen(file)) {
+      PsiFile psiFile = findFile(file);
+      Document doc = docManager.getDocument(psiFile);
+      if (doc == null) {
+        throw new NoMatchException("No document found for file: " + file.getName());
+      }
+      Text current = new DocumentText(doc);
+      if (isModified(snapshot, doc)) {
+        return new FileMatcher(file, psiFile, new LineIndex(snapshot.getText()), current, doc, doc, snapshot);
+      }
+      return new FileMatcher(file, psiFile, current, current, doc, doc, null);
     }
 
-    if (issue.getStartLine() != null) {
-      TextRange issueRange = getIssueTextRange(file, doc, issue);
-      return createRangeIssue(file, doc, issue, issueRange);
-    } else {
-      // no start line, so it's probably a file issue
-      return createFileIssue(file, issue);
+    Document cached = FileDocumentManager.getInstance().getCachedDocument(file);
+    CharSequence text = cached != null ? cached.getCharsSequence() : LoadTextUtil.loadText(file);
+    Text current = new LineIndex(text);
+    if (isModified(snapshot, cached)) {
+      return new FileMatcher(file, null, new LineIndex(snapshot.getText()), current, null, cached, snapshot);
     }
+    return new FileMatcher(file, null, current, current, null, cached, null);
   }
 
-  private static IssuePointer createRangeIssue(PsiFile file, Document doc, Issue issue, TextRange issueRange) {
-    RangeMarker range = doc.createRangeMarker(issueRange.getStartOffset(), issueRange.getEndOffset());
-    return new IssuePointer(issue, file, range);
+  private static boolean isModified(@Nullable DocumentSnapshot snapshot, @Nullable Document doc) {
+    return snapshot != null && doc != null && snapshot.getDocument() == doc && !snapshot.isCurrent();
   }
 
-  private static IssuePointer createFileIssue(PsiFile file, Issue issue) {
-    return new IssuePointer(issue, file);
-  }
+  /**
+   * Matches the issues of a file. Not thread safe.
+   */
+  public class FileMatcher {
+    private final VirtualFile file;
+    // analyzed content, in which the lines and offsets reported by the engine are resolved
+    private final Text text;
+    // current content, in which issues are created
+    private final Text current;
+    // edits made between both, if they differ
+    @Nullable
+    private final DocumentSnapshot snapshot;
+    // document in which range markers are created
+    @Nullable
+    private final Document doc;
+    // document, possibly of a closed file, to look for an existing PSI
+    @Nullable
+    private final Document psiDoc;
+    @Nullable
+    private PsiFile psiFile;
+
+    private FileMatcher(VirtualFile file, @Nullable PsiFile psiFile, Text text, Text current, @Nullable Document doc, @Nullable Document psiDoc,
+      @Nullable DocumentSnapshot snapshot) {
+      this.file = file;
+      this.psiFile = psiFile;
+      this.text = text;
+      this.current = current;
+      this.snapshot = snapshot;
+      this.doc = doc;
+      this.psiDoc = psiDoc;
+    }
 
-  private static TextRange getIssueTextRange(PsiFile file, Document doc, Issue issue) throws NoMatchException {
-    int ijStartLine = issue.getStartLine() - 1;
-    int ijEndLine = issue.getEndLine() - 1;
-    int lineCount = doc.getLineCount();
+    /**
+     * Tries to match an SQ issue to the file, by either:
+     * - Creating a range issue, attached to the document or detached (see {@link #createRangeIssue})
+     * - Create a file-level issue (see {@link #createFileIssue})
+     *
+     * <b>Can only be called with read access</b>.
+     */
+    public IssuePointer match(Issue issue) throws NoMatchException {
+      ApplicationManager.getApplication().assertReadAccessAllowed();
 
-    if (ijStartLine >= doc.getLineCount()) {
-      throw new NoMatchException("Start line number (" + ijStartLine + ") larger than lines in file: " + lineCount
-        + " " + issue.getRuleKey());
+      if (issue.getStartLine() != null) {
+        TextRange issueRange = getIssueTextRange(issue);
+        return createRangeIssue(issue, issueRange);
+      } else {
+        // no start line, so it's probably a file issue
+        return createFileIssue(issue);
+      }
     }
-    if (ijEndLine >= doc.getLineCount()) {
-      throw new NoMatchException("End line number (" + ijStartLine + ") larger than lines in file: " + lineCount
-        + " " + issue.getRuleKey());
+
+    private IssuePointer createRangeIssue(Issue issue, TextRange issueRange) {
+      int start = issueRange.getStartOffset();
+      int end = issueRange.getEndOffset();
+      if (snapshot != null) {
+        int length = current.getChars().length();
+        start = Math.min(snapshot.translateStart(start), length);
+        end = Math.min(Math.max(start, snapshot.translateEnd(end)), length);
+      }
+      if (doc != null) {
+        RangeMarker range = doc.createRangeMarker(start, end);
+        return new IssuePointer(issue, file, range);
+      }
+      int line = current.getLineNumber(start);
+      int column = start - current.getLineStartOffset(line);
+      int checksum = IssuePointer.checksum(current.getChars(), start, end);
+      return new IssuePointer(issue, file, start, end, line, column, checksum);
+    }
+
+    private IssuePointer createFileIssue(Issue issue) {
+      return new IssuePointer(issue, file);
     }
 
-    int rangeStart = findStartLineOffset(file, doc, ijStartLine, issue.getStartLineOffset());
-    int rangeEnd = findEndLineOffset(doc, ijEndLine, issue.getEndLineOffset());
+    private TextRange getIssueTextRange(Issue issue) throws NoMatchException {
+      int ijStartLine = issue.getStartLine() - 1;
+      int ijEndLine = issue.getEndLine() - 1;
+      int lineCount = text.getLineCount();
 
-    if (rangeEnd < rangeStart) {
-      throw new NoMatchException("Invalid Text Range");
+      if (ijStartLine >= lineCount) {
+        throw new NoMatchException("Start line number (" + ijStartLine + ") larger than lines in file: " + lineCount
+          + " " + issue.getRuleKey());
+      }
+      if (ijEndLine >= lineCount) {
+        throw new NoMatchException("End line number (" + ijStartLine + ") larger than lines in file: " + lineCount
+          + " " + issue.getRuleKey());
+      }
+
+      int rangeStart = findStartLineOffset(ijStartLine, issue.getStartLineOffset());
+      int rangeEnd = findEndLineOffset(ijEndLine, issue.getEndLineOffset());
+
+      if (rangeEnd < rangeStart) {
+        throw new NoMatchException("Invalid Text Range");
+      }
+      return new TextRange(rangeStart, rangeEnd);
+    }
+
+    private int findEndLineOffset(int ijLine, @Nullable Integer endOffset) {
+      int lineEnd = text.getLineEndOffset(ijLine);
+      int lineStart = text.getLineStartOffset(ijLine);
+      int lineLength = lineEnd - lineStart;
+
+      if (endOffset == null || endOffset > lineLength) {
+        return lineEnd;
+      }
+
+      return lineStart + endOffset;
+    }
+
+    private int findStartLineOffset(int ijLine, @Nullable Integer startOffset) {
+      int ijStartOffset = (startOffset == null) ? 0 : startOffset;
+      int lineStartOffset = text.getLineStartOffset(ijLine);
+      int rangeStart = lineStartOffset + ijStartOffset;
+
+      if (ijStartOffset != 0) {
+        // this is a precise issue location, accept it as it is
+        return rangeStart;
+      }
+
+      // probably not precise issue location. Try to skip the indentation.
+      int firstNonBlank = skipBlanks(text.getChars(), rangeStart, text.getLineEndOffset(ijLine));
+      if (firstNonBlank == rangeStart || firstNonBlank == text.getLineEndOffset(ijLine)) {
+        return rangeStart;
+      }
+
+      // the blanks could also be in a string literal or a comment. Only check it if the PSI is already there.
+      PsiFile psi = getCachedPsiFile();
+      int psiOffset = snapshot != null ? snapshot.translateStart(rangeStart) : rangeStart;
+      if (psi != null && !(psi.getViewProvider().findElementAt(psiOffset) instanceof PsiWhiteSpace)) {
+        return rangeStart;
+      }
+
+      return firstNonBlank;
     }
-    return new TextRange(rangeStart, rangeEnd);
-  }
 
-  private static int findEndLineOffset(Document doc, int ijLine, @Nullable Integer endOffset) {
-    int lineEnd = doc.getLineEndOffset(ijLine);
-    int lineStart = doc.getLineStartOffset(ijLine);
-    int lineLength = lineEnd - lineStart;
+    @CheckForNull
+    private PsiFile getCachedPsiFile() {
+      if (psiFile == null && psiDoc != null) {
+        psiFile = docManager.getCachedPsiFile(psiDoc);
+      }
+      return psiFile;
+    }
+  }
 
-    if (endOffset == null || endOffset > lineLength) {
-      return lineEnd;
+  /**
+   * Offset of the first character that is not a space or a tab in the given range, or the end of the range.
+   */
+  static int skipBlanks(CharSequence chars, int start, int end) {
+    int offset = start;
+    while (offset < end) {
+      char c = chars.charAt(offset);
+      if (c != ' ' && c != '\t' && c != '\f') {
+        break;
+      }
+      offset++;
     }
+    return offset;
+  }
+
+  private interface Text {
+    CharSequence getChars();
 
-    return lineStart + endOffset;
+    int getLineCount();
+
+    int getLineNumber(int offset);
+
+    int getLineStartOffset(int line);
+
+    int getLineEndOffset(int line);
   }
 
-  private static int findStartLineOffset(PsiFile file, Document doc, int ijLine, @Nullable Integer startOffset) {
-    int ijStartOffset = (startOffset == null) ? 0 : startOffset;
-    int lineStartOffset = doc.getLineStartOffset(ijLine);
-    int rangeStart = lineStartOffset + ijStartOffset;
+  private static class DocumentText implements Text {
+    private final Document doc;
 
-    if (ijStartOffset != 0) {
-      // this is a precise issue location, accept it as it is
-      return rangeStart;
+    DocumentText(Document doc) {
+      this.doc = doc;
     }
 
-    // probably not precise issue location. Try to match next element if it's whitespace.
-    PsiElement el = file.getViewProvider().findElementAt(rangeStart);
+    @Override
+    public CharSequence getChars() {
+      return doc.getCharsSequence();
+    }
 
-    if (!(el instanceof PsiWhiteSpace)) {
-      return rangeStart;
+    @Override
+    public int getLineCount() {
+      return doc.getLineCount();
     }
 
-    PsiElement next = el.getNextSibling();
-    if (next == null) {
-      return rangeStart;
+    @Override
+    public int getLineNumber(int offset) {
+      return doc.getLineNumber(offset);
     }
 
-    int nextRangeStart = next.getTextRange().getStartOffset();
+    @Override
+    public int getLineStartOffset(int line) {
+      return doc.getLineStartOffset(line);
+    }
 
-    // we got to another line, don't use it
-    if (doc.getLineNumber(nextRangeStart) != ijLine) {
-      return rangeStart;
+    @Override
+    public int getLineEndOffset(int line) {
+      return doc.getLineEndOffset(line);
     }
+  }
 
-    return nextRangeStart;
+  /**
+   * Lines of a text with line separators normalized to '\n', as loaded by {@link LoadTextUtil}, with the same semantics as {@link Document}.
+   */
+  static class LineIndex implements Text {
+    private final CharSequence chars;
+    private final int[] lineStarts;
+    private final int lineCount;
+
+    LineIndex(CharSequence chars) {
+      this.chars = chars;
+      int[] starts = new int[16];
+      int count = 1;
+      for (int i = 0; i < chars.length(); i++) {
+        if (chars.charAt(i) == '\n') {
+          if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+          }
+          starts[count++] = i + 1;
+        }
+      }
+      this.lineStarts = starts;
+      this.lineCount = count;
+    }
+
+    @Override
+    public CharSequence getChars() {
+      return chars;
+    }
+
+    @Override
+    public int getLineCount() {
+      return lineCount;
+    }
+
+    @Override
+    public int getLineNumber(int offset) {
+      int idx = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+      return idx >= 0 ? idx : (-idx - 2);
+    }
+
+    @Override
+    public int getLineStartOffset(int line) {
+      return lineStarts[line];
+    }
+
+    @Override
+    public int getLineEndOffset(int line) {
+      return line + 1 < lineCount ? (lineStarts[line + 1] - 1) : chars.length();
+    }
   }
 
   public static class NoMatchException extends Exception {
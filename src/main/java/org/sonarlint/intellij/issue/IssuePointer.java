@@ -19,94 +19,299 @@
  */
 package org.sonarlint.intellij.issue;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
-import com.intellij.openapi.util.TextRange;
-import com.intellij.psi.PsiFile;
+import com.intellij.openapi.vfs.VirtualFile;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.CheckForNull;
-import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
 import org.sonarlint.intellij.issue.tracking.Trackable;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
+/**
+ * Issue matched to a file. To keep the memory footprint low with many issues, only what is displayed and tracked is kept,
+ * not the {@link Issue} returned by the engine. Strings repeated across issues, like rule keys or messages, are interned.
+ * <p>
+ * While the file is open, the location is tracked with a {@link RangeMarker}. When the file is closed, the issue is detached:
+ * the marker is disposed and the location is kept as plain offsets, so that the document and PSI of the file can be released.
+ * It is attached again when the file is opened.
+ */
+@ThreadSafe
 public class IssuePointer implements Trackable {
   private static final AtomicLong UID_GEN = new AtomicLong();
+  private static final Interner<String> STRINGS = Interners.newWeakInterner();
   private final long uid;
-  private final RangeMarker range;
-  private final Issue issue;
-  private final PsiFile psiFile;
-  private long creationDate;
-  private final Integer checksum;
+  private final VirtualFile file;
+  private final boolean fileLevel;
+  private final String ruleKey;
+  private final String ruleName;
+  private final String severity;
+  private final String message;
+  private final int checksum;
+  private volatile RangeMarker range;
+  // location while detached
+  private int startOffset;
+  private int endOffset;
+  private int line;
+  private int column;
+  private boolean validLocation = true;
+  private volatile long creationDate;
+  private volatile String serverIssueKey;
 
-  public IssuePointer(Issue issue, PsiFile psiFile) {
-    this(issue, psiFile, null);
+  public IssuePointer(Issue issue, VirtualFile file) {
+    this(issue, file, null);
   }
 
-  public IssuePointer(Issue issue, PsiFile psiFile, @Nullable RangeMarker range) {
+  public IssuePointer(Issue issue, VirtualFile file, @Nullable RangeMarker range) {
     this.creationDate = System.currentTimeMillis();
     this.range = range;
-    this.issue = issue;
-    this.psiFile = psiFile;
+    this.file = file;
+    this.fileLevel = range == null;
+    this.ruleKey = intern(issue.getRuleKey());
+    this.ruleName = intern(issue.getRuleName());
+    this.severity = intern(issue.getSeverity());
+    this.message = intern(issue.getMessage());
     this.uid = UID_GEN.getAndIncrement();
     if (range != null) {
-      this.checksum = checksum(range.getDocument().getText(new TextRange(range.getStartOffset(), range.getEndOffset())));
+      this.checksum = checksum(range.getDocument().getCharsSequence(), range.getStartOffset(), range.getEndOffset());
     } else {
-      this.checksum = null;
+      this.checksum = 0;
     }
   }
 
+  /**
+   * Creates a detached issue, see {@link #detach()}.
+   */
+  IssuePointer(Issue issue, VirtualFile file, int startOffset, int endOffset, int line, int column, int checksum) {
+    this.creationDate = System.currentTimeMillis();
+    this.file = file;
+    this.fileLevel = false;
+    this.ruleKey = intern(issue.getRuleKey());
+    this.ruleName = intern(issue.getRuleName());
+    this.severity = intern(issue.getSeverity());
+    this.message = intern(issue.getMessage());
+    this.uid = UID_GEN.getAndIncrement();
+    this.checksum = checksum;
+    this.startOffset = startOffset;
+    this.endOffset = endOffset;
+    this.line = line;
+    this.column = column;
+  }
+
+  /**
+   * Creates a detached issue from the values of another one, with the same identity. See {@link ColumnarIssues}.
+   */
+  IssuePointer(long uid, VirtualFile file, boolean fileLevel, @Nullable String ruleKey, @Nullable String ruleName, @Nullable String severity,
+    @Nullable String message, int checksum, int startOffset, int endOffset, int line, int column, boolean validLocation, long creationDate,
+    @Nullable String serverIssueKey) {
+    this.uid = uid;
+    this.file = file;
+    this.fileLevel = fileLevel;
+    this.ruleKey = ruleKey;
+    this.ruleName = ruleName;
+    this.severity = severity;
+    this.message = message;
+    this.checksum = checksum;
+    this.startOffset = startOffset;
+    this.endOffset = endOffset;
+    this.line = line;
+    this.column = column;
+    this.validLocation = validLocation;
+    this.creationDate = creationDate;
+    this.serverIssueKey = serverIssueKey;
+  }
+
+  @CheckForNull
+  private static String intern(@Nullable String str) {
+    return str != null ? STRINGS.intern(str) : null;
+  }
+
   public static int checksum(String content) {
-    return content.replaceAll("[\\s]", "").hashCode();
+    return checksum(content, 0, content.length());
+  }
+
+  /**
+   * Hash of the given range, ignoring whitespaces. It has the same value as the {@link String#hashCode()} of the range after
+   * removing all characters matching the regex {@code \s}, but is computed without any allocation.
+   */
+  public static int checksum(CharSequence content, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      char c = content.charAt(i);
+      if (!isWhitespace(c)) {
+        h = 31 * h + c;
+      }
+    }
+    return h;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
   }
 
   public boolean isValid() {
-    if (!psiFile.isValid()) {
+    if (file != null && !file.isValid()) {
       return false;
     }
+    if (fileLevel) {
+      return true;
+    }
 
-    if (range != null) {
-      return range.isValid();
+    RangeMarker r = range;
+    if (r != null) {
+      return r.isValid();
+    }
+    synchronized (this) {
+      return validLocation;
+    }
+  }
+
+  /**
+   * Disposes the range marker, keeping its last location. Does nothing for file-level issues or if it is already detached.
+   */
+  public synchronized void detach() {
+    RangeMarker r = range;
+    if (r == null) {
+      return;
+    }
+    Document doc = r.getDocument();
+    validLocation = r.isValid();
+    startOffset = r.getStartOffset();
+    endOffset = r.getEndOffset();
+    line = doc.getLineNumber(startOffset);
+    column = startOffset - doc.getLineStartOffset(line);
+    range = null;
+    r.dispose();
+  }
+
+  /**
+   * Creates a range marker in the given document of the file at the location kept while detached, if the document still has
+   * the same text there (see {@link #checksum(CharSequence, int, int)}). Otherwise the file was changed while it was closed,
+   * and the location is marked invalid until the file is analyzed again.
+   */
+  public synchronized void attach(Document doc) {
+    if (fileLevel || range != null || !validLocation) {
+      return;
+    }
+    if (endOffset > doc.getTextLength() || checksum(doc.getCharsSequence(), startOffset, endOffset) != checksum) {
+      validLocation = false;
+      return;
     }
+    range = doc.createRangeMarker(startOffset, endOffset);
+  }
+
+  public boolean isAttached() {
+    return range != null;
+  }
 
-    return true;
+  /**
+   * Whether the location kept while detached is still valid.
+   */
+  synchronized boolean hasValidLocation() {
+    return validLocation;
+  }
+
+  int checksum() {
+    return checksum;
+  }
+
+  public boolean isFileLevel() {
+    return fileLevel;
   }
 
   @Override
   public Integer getLine() {
-    return range != null ? range.getDocument().getLineNumber(range.getStartOffset()) : null;
+    if (fileLevel) {
+      return null;
+    }
+    RangeMarker r = range;
+    if (r != null) {
+      return r.getDocument().getLineNumber(r.getStartOffset());
+    }
+    synchronized (this) {
+      return line;
+    }
+  }
+
+  /**
+   * Column of the start of the issue in its line, 0 for file-level issues.
+   */
+  public int getColumn() {
+    if (fileLevel) {
+      return 0;
+    }
+    RangeMarker r = range;
+    if (r != null) {
+      Document doc = r.getDocument();
+      return r.getStartOffset() - doc.getLineStartOffset(doc.getLineNumber(r.getStartOffset()));
+    }
+    synchronized (this) {
+      return column;
+    }
+  }
+
+  public int getStartOffset() {
+    RangeMarker r = range;
+    if (r != null) {
+      return r.getStartOffset();
+    }
+    synchronized (this) {
+      return startOffset;
+    }
+  }
+
+  public int getEndOffset() {
+    RangeMarker r = range;
+    if (r != null) {
+      return r.getEndOffset();
+    }
+    synchronized (this) {
+      return endOffset;
+    }
   }
 
   @Override
   public String getMessage() {
-    return issue.getMessage();
+    return message;
   }
 
   @Override
   public Integer getLineHash() {
-    return checksum;
+    return fileLevel ? null : checksum;
   }
 
   @Override
   public String getRuleKey() {
-    return issue.getRuleKey();
+    return ruleKey;
   }
 
-  public long uid() {
-    return uid;
+  @CheckForNull
+  public String getRuleName() {
+    return ruleName;
   }
 
-  @Nonnull
-  public Issue issue() {
-    return issue;
+  @CheckForNull
+  public String getSeverity() {
+    return severity;
   }
 
+  public long uid() {
+    return uid;
+  }
+
+  /**
+   * Range marker of the issue. Null for file-level issues and while the issue is detached.
+   */
   @CheckForNull
   public RangeMarker range() {
     return range;
   }
 
-  public PsiFile psiFile() {
-    return psiFile;
+  public VirtualFile file() {
+    return file;
   }
 
   public long creationDate() {
@@ -116,4 +321,30 @@ public class IssuePointer implements Trackable {
   public void setCreationDate(long creationDate) {
     this.creationDate = creationDate;
   }
+
+  /**
+   * Key of the same issue on the server, in connected mode, if it already exists there.
+   */
+  @CheckForNull
+  public String serverIssueKey() {
+    return serverIssueKey;
+  }
+
+  public void setServerIssueKey(@Nullable String serverIssueKey) {
+    this.serverIssueKey = serverIssueKey;
+  }
+
+  /**
+   * Issues are identified by their {@link #uid()}, so that the views of {@link ColumnarIssues} are equal to the issue
+   * from which they were created.
+   */
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof IssuePointer && ((IssuePointer) o).uid == uid;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (uid ^ (uid >>> 32));
+  }
 }
@@ -19,109 +19,429 @@
  */
 package org.sonarlint.intellij.issue;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
-import com.intellij.openapi.application.AccessToken;
-import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.AbstractProjectComponent;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.EmptyRunnable;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiFile;
-import com.intellij.util.messages.MessageBus;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.sonarlint.intellij.analysis.SonarLintAnalyzer;
-import org.sonarlint.intellij.messages.AnalysisResultsListener;
 import org.sonarlint.intellij.ui.SonarLintConsole;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
 public class IssueProcessor extends AbstractProjectComponent {
   private static final Logger LOGGER = Logger.getInstance(IssueProcessor.class);
+  private static final int MAX_THREADS = 4;
   private final IssueMatcher matcher;
+  private final IssueStore store;
+  private final ServerIssueTracker serverIssueTracker;
   private final DaemonCodeAnalyzer codeAnalyzer;
   private final SonarLintConsole console;
-  private final MessageBus messageBus;
+  private final ResultsPublisher publisher;
+  private final ExecutorService executor;
+  private final ReadActions readActions;
 
-  public IssueProcessor(Project project, IssueMatcher matcher, DaemonCodeAnalyzer codeAnalyzer) {
+  public IssueProcessor(Project project, IssueMatcher matcher, IssueStore store, ServerIssueTracker serverIssueTracker,
+    DaemonCodeAnalyzer codeAnalyzer, ResultsPublisher publisher) {
+    this(project, matcher, store, serverIssueTracker, codeAnalyzer, publisher, createExecutor(), new ApplicationReadActions());
+  }
+
+  IssueProcessor(Project project, IssueMatcher matcher, IssueStore store, ServerIssueTracker serverIssueTracker,
+    DaemonCodeAnalyzer codeAnalyzer, ResultsPublisher publisher, ExecutorService executor, ReadActions readActions) {
     super(project);
     this.matcher = matcher;
+    this.store = store;
+    this.serverIssueTracker = serverIssueTracker;
     this.codeAnalyzer = codeAnalyzer;
     this.console = SonarLintConsole.get(project);
-    this.messageBus = project.getMessageBus();
+    this.publisher = publisher;
+    this.executor = executor;
+    this.readActions = readActions;
+  }
+
+  private static ExecutorService createExecutor() {
+    int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactoryBuilder().setNameFormat("sonarlint-issue-matcher-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  @Override
+  public void disposeComponent() {
+    executor.shutdownNow();
   }
 
-  public void process(final SonarLintAnalyzer.SonarLintJob job, final Collection<Issue> issues) {
-    Map<VirtualFile, Collection<IssuePointer>> map;
-    long start = System.currentTimeMillis();
-    AccessToken token = ReadAction.start();
-    try {
-      map = transformIssues(issues, job.files());
-      messageBus.syncPublisher(AnalysisResultsListener.SONARLINT_ANALYSIS_DONE_TOPIC).analysisDone(map);
+  /**
+   * Starts a batch to which the issues of each file can be submitted as soon as they are known.
+   * The baselines of the files are read ahead while they are analyzed. See {@link Batch}.
+   */
+  public Batch startBatch(SonarLintAnalyzer.SonarLintJob job) {
+    store.preload(job.files());
+    return new Batch(job);
+  }
+
+  /**
+   * Matches the issues of a job, in parallel. Each file is handled in its own short read action, which yields to
+   * write actions (and is then restarted), so that the user can keep typing. The issues of each file are stored
+   * as soon as they are matched, and published asynchronously with {@link ResultsPublisher}.
+   * A file can be submitted again with more issues. Only its latest issues are published, never concurrently.
+   * If the batch is cancelled, the files it already stored get their previous issues back.
+   */
+  public class Batch {
+    private final SonarLintAnalyzer.SonarLintJob job;
+    private final long start = System.currentTimeMillis();
+    private final ConcurrentMap<VirtualFile, List<Issue>> pending = new ConcurrentHashMap<>();
+    private final ConcurrentMap<VirtualFile, Object> locks = new ConcurrentHashMap<>();
+    private final Set<VirtualFile> submitted = new HashSet<>();
+    private final List<Future<?>> futures = new ArrayList<>();
+    private final ReadLockStats stats = new ReadLockStats();
+    private final AtomicLong firstPublished = new AtomicLong(-1);
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private final AtomicInteger restarted = new AtomicInteger();
+    // files stored by this batch, each one being guarded by its lock in locks
+    private final ConcurrentMap<VirtualFile, StoredFile> stored = new ConcurrentHashMap<>();
+    private volatile boolean cancelled = false;
+
+    private Batch(SonarLintAnalyzer.SonarLintJob job) {
+      this.job = job;
+    }
+
+    public synchronized void submit(VirtualFile file, List<Issue> issues) {
+      submitted.add(file);
+      pending.put(file, issues);
+      locks.putIfAbsent(file, new Object());
+      futures.add(executor.submit(new FileTask(this, file)));
+    }
+
+    /**
+     * Submits the analyzed files that had no issues, so that their previous issues are cleared, and waits for all files to be published.
+     */
+    public void finish(int issueCount) {
+      List<Future<?>> toWait;
+      synchronized (this) {
+        for (VirtualFile f : job.files()) {
+          if (!submitted.contains(f)) {
+            submit(f, Collections.<Issue>emptyList());
+          }
+        }
+        toWait = new ArrayList<>(futures);
+      }
+
+      for (Future<?> f : toWait) {
+        try {
+          f.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          cancel();
+          return;
+        } catch (ExecutionException e) {
+          LOGGER.error("Failed to process SonarLint issues", e.getCause());
+        }
+      }
+
+      long first = firstPublished.get();
+      console.debug(String.format("Stored matched issues of %d files in %d ms, first file after %d ms (read lock held for %d ms in total, %d ms at most, %d retries)",
+        submitted.size(), System.currentTimeMillis() - start, first < 0 ? 0 : first - start, stats.total.get(), stats.max.get(), stats.retries.get()));
+      console.debug(String.format("Issues unchanged in %d files, highlighting restarted in %d files", unchanged.get(), restarted.get()));
 
-      // restart analyzer for all files analyzed (even the ones without issues) so that our external annotator is called
-      for (PsiFile psiFile : getPsi(job.files())) {
-        codeAnalyzer.restart(psiFile);
+      String end;
+      if (issueCount == 1) {
+        end = " issue";
+      } else {
+        end = " issues";
       }
-    } finally {
-      token.finish();
+
+      console.info("Found " + issueCount + end);
     }
 
-    console.debug("Stored matched issues in " + (System.currentTimeMillis() - start) + " ms");
+    /**
+     * Stops processing the files, and puts back the previous issues of the files already stored by this batch, unless they
+     * changed since, so that a cancelled analysis doesn't leave partial results.
+     */
+    public synchronized void cancel() {
+      cancelled = true;
+      for (Future<?> f : futures) {
+        f.cancel(true);
+      }
 
-    String end;
-    if (issues.size() == 1) {
-      end = " issue";
-    } else {
-      end = " issues";
+      int restored = 0;
+      for (VirtualFile file : submitted) {
+        // waits for a task that is storing the file
+        synchronized (locks.get(file)) {
+          StoredFile storedFile = stored.remove(file);
+          if (storedFile != null && restore(file, storedFile)) {
+            restored++;
+          }
+        }
+      }
+      console.debug(String.format("Analysis cancelled, previous issues restored in %d files", restored));
     }
 
-    console.info("Found " + issues.size() + end);
+    private boolean restore(VirtualFile file, StoredFile storedFile) {
+      IssueDelta delta = store.restore(job.module(), file, storedFile.version, storedFile.previousIssues);
+      if (delta == null) {
+        return false;
+      }
+      publisher.publish(delta);
+      if (!delta.isEmpty() && FileEditorManager.getInstance(myProject).isFileOpen(file)) {
+        restart(file);
+      }
+      return true;
+    }
+
+    /**
+     * To be called under the lock of the file, once its issues were stored.
+     */
+    private void stored(VirtualFile file, IssueDelta delta) {
+      StoredFile storedFile = stored.get(file);
+      if (storedFile != null) {
+        storedFile.version = delta.version();
+      } else if (delta.version() != delta.previousVersion()) {
+        // the previous issues are the ones that were replaced the first time
+        List<IssuePointer> previousIssues = new ArrayList<>(delta.removed());
+        previousIssues.addAll(delta.tracked().keySet());
+        stored.put(file, new StoredFile(previousIssues, delta.version()));
+      }
+    }
+
+    ReadLockStats stats() {
+      return stats;
+    }
+  }
+
+  private void restart(final VirtualFile file) {
+    readActions.run(new Computable<Void>() {
+      @Override
+      public Void compute() {
+        try {
+          codeAnalyzer.restart(matcher.findFile(file));
+        } catch (IssueMatcher.NoMatchException e) {
+          LOGGER.error("Couldn't find PSI for file: " + file.getPath(), e);
+        }
+        return null;
+      }
+    });
   }
 
   /**
-   * Transforms issues and organizes them per file
+   * Issues that a file had before a batch first stored it, and the version of its issues last stored by the batch.
    */
-  private Map<VirtualFile, Collection<IssuePointer>> transformIssues(Collection<Issue> issues, Collection<VirtualFile> analysed) {
-    Map<VirtualFile, Collection<IssuePointer>> map = new HashMap<>();
+  private static class StoredFile {
+    private final List<IssuePointer> previousIssues;
+    private long version;
+
+    StoredFile(List<IssuePointer> previousIssues, long version) {
+      this.previousIssues = previousIssues;
+      this.version = version;
+    }
+  }
+
+  private class FileTask implements Runnable {
+    private final Batch batch;
+    private final VirtualFile file;
+    private boolean found = false;
 
-    for (VirtualFile f : analysed) {
-      map.put(f, new ArrayList<IssuePointer>());
+    FileTask(Batch batch, VirtualFile file) {
+      this.batch = batch;
+      this.file = file;
     }
 
-    for (Issue i : issues) {
-      ClientInputFile inputFile = i.getInputFile();
-      if (inputFile == null || inputFile.getPath() == null) {
-        // ignore project level issues
-        continue;
+    @Override
+    public void run() {
+      synchronized (batch.locks.get(file)) {
+        List<Issue> issues = batch.pending.remove(file);
+        if (issues == null || batch.cancelled) {
+          // the latest issues of the file were already published by a previous task
+          return;
+        }
+        run(issues);
       }
+    }
+
+    private void run(final List<Issue> issues) {
+      final ReadLockStats stats = batch.stats;
+      final List<IssuePointer> matched = new ArrayList<>(issues.size());
+      Runnable readAction = new Runnable() {
+        @Override
+        public void run() {
+          long start = System.currentTimeMillis();
+          try {
+            matched.clear();
+            found = match(issues, matched);
+          } finally {
+            stats.add(System.currentTimeMillis() - start);
+          }
+        }
+      };
+
+      while (!readActions.runCancellable(readAction)) {
+        // a write action cancelled us: discard partial results and try again once it's done
+        discard(matched);
+        stats.retries.incrementAndGet();
+        if (Thread.currentThread().isInterrupted() || myProject.isDisposed()) {
+          return;
+        }
+        readActions.waitForWriteAction();
+      }
+
+      if (!found || batch.cancelled) {
+        discard(matched);
+        return;
+      }
+
+      // tracking and storing don't hold the read lock: the locations of attached issues are read in short read actions
+      IssueDelta delta = null;
+      if (file.isValid()) {
+        delta = store.update(batch.job.module(), file, serverIssueTracker.track(batch.job.module(), file, matched));
+      }
+      boolean changed;
+      if (delta == null) {
+        publisher.publish(file, matched);
+        changed = false;
+      } else {
+        batch.stored(file, delta);
+        publisher.publish(delta);
+        changed = !delta.isEmpty();
+      }
+      batch.firstPublished.compareAndSet(-1, System.currentTimeMillis());
+
+      // restart analyzer for the open files in which issues changed so that our external annotator is called.
+      // Other files are highlighted when opened.
+      if (!changed) {
+        batch.unchanged.incrementAndGet();
+      } else if (FileEditorManager.getInstance(myProject).isFileOpen(file)) {
+        batch.restarted.incrementAndGet();
+        restart(file);
+      }
+    }
+
+    private boolean match(List<Issue> issues, List<IssuePointer> matched) {
+      if (!file.isValid()) {
+        return false;
+      }
+      if (issues.isEmpty()) {
+        return true;
+      }
+
+      IssueMatcher.FileMatcher fileMatcher;
       try {
-        VirtualFile vFile = inputFile.getClientObject();
-        PsiFile psiFile = matcher.findFile(vFile);
-        IssuePointer toStore = matcher.match(psiFile, i);
-        map.get(psiFile.getVirtualFile()).add(toStore);
+        fileMatcher = matcher.matcherFor(file, batch.job.snapshot(file));
       } catch (IssueMatcher.NoMatchException e) {
-        console.error("Failed to find location of issue", e);
+        LOGGER.error("Couldn't find content of file: " + file.getPath(), e);
+        return false;
       }
+
+      for (Issue i : issues) {
+        readActions.checkCanceled();
+        try {
+          matched.add(fileMatcher.match(i));
+        } catch (IssueMatcher.NoMatchException e) {
+          console.error("Failed to find location of issue", e);
+        }
+      }
+      return true;
     }
 
-    return map;
+    private void discard(List<IssuePointer> matched) {
+      for (IssuePointer p : matched) {
+        if (p.range() != null) {
+          p.range().dispose();
+        }
+      }
+      matched.clear();
+    }
   }
 
-  private Collection<PsiFile> getPsi(Collection<VirtualFile> files) {
-    List<PsiFile> psiFiles = new LinkedList<>();
+  static class ReadLockStats {
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicInteger retries = new AtomicInteger();
 
-    for (VirtualFile f : files) {
-      try {
-        psiFiles.add(matcher.findFile(f));
-      } catch (IssueMatcher.NoMatchException e) {
-        LOGGER.error("Couldn't find PSI for file: " + f.getPath(), e);
+    void add(long time) {
+      total.addAndGet(time);
+      long current = max.get();
+      while (time > current && !max.compareAndSet(current, time)) {
+        current = max.get();
       }
     }
-    return psiFiles;
+
+    long total() {
+      return total.get();
+    }
+
+    long max() {
+      return max.get();
+    }
+
+    int retries() {
+      return retries.get();
+    }
+  }
+
+  /**
+   * Read actions used to match issues and restart highlighting. Tests replace them to simulate write actions.
+   */
+  interface ReadActions {
+    /**
+     * Runs the action in a read action that is cancelled as soon as a write action is pending.
+     * Returns false if it was cancelled.
+     */
+    boolean runCancellable(Runnable action);
+
+    /**
+     * To be called regularly in {@link #runCancellable(Runnable)}.
+     */
+    void checkCanceled();
+
+    /**
+     * Waits for the pending write action to complete.
+     */
+    void waitForWriteAction();
+
+    <T> T run(Computable<T> computable);
+  }
+
+  private static class ApplicationReadActions implements ReadActions {
+    @Override
+    public boolean runCancellable(Runnable action) {
+      return ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(action);
+    }
+
+    @Override
+    public void checkCanceled() {
+      ProgressManager.checkCanceled();
+    }
+
+    @Override
+    public void waitForWriteAction() {
+      ApplicationManager.getApplication().runReadAction(EmptyRunnable.getInstance());
+    }
+
+    @Override
+    public <T> T run(Computable<T> computable) {
+      return ApplicationManager.getApplication().runReadAction(computable);
+    }
   }
 }
@@ -0,0 +1,241 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Filters on the issues of {@link IssueStore}, see {@link IssueStore#query(IssueQuery)}.
+ * Criteria that are not set accept all issues. Several values of the same criterion are alternatives.
+ */
+@Immutable
+public class IssueQuery {
+  private final Set<String> severities;
+  private final Set<String> rules;
+  private final Set<String> modules;
+  private final String pathPrefix;
+  private final String message;
+  private final long createdAfter;
+  private final long createdBefore;
+  private final int offset;
+  private final int limit;
+
+  private IssueQuery(Builder builder) {
+    this.severities = builder.severities;
+    this.rules = builder.rules;
+    this.modules = builder.modules;
+    this.pathPrefix = builder.pathPrefix;
+    this.message = builder.message;
+    this.createdAfter = builder.createdAfter;
+    this.createdBefore = builder.createdBefore;
+    this.offset = builder.offset;
+    this.limit = builder.limit;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public Set<String> severities() {
+    return severities;
+  }
+
+  public Set<String> rules() {
+    return rules;
+  }
+
+  public Set<String> modules() {
+    return modules;
+  }
+
+  @CheckForNull
+  public String pathPrefix() {
+    return pathPrefix;
+  }
+
+  public int offset() {
+    return offset;
+  }
+
+  public int limit() {
+    return limit;
+  }
+
+  /**
+   * Whether issues of the file can match, considering the criteria on files.
+   */
+  boolean acceptsFile(VirtualFile file, @Nullable String module) {
+    if (!modules.isEmpty() && (module == null || !modules.contains(module))) {
+      return false;
+    }
+    return pathPrefix == null || StringUtil.startsWith(file.getPath(), pathPrefix);
+  }
+
+  /**
+   * Whether the issue matches the criteria on issues.
+   */
+  boolean acceptsIssue(IssuePointer issue) {
+    if (!severities.isEmpty() && !severities.contains(issue.getSeverity())) {
+      return false;
+    }
+    if (!rules.isEmpty() && !rules.contains(issue.getRuleKey())) {
+      return false;
+    }
+    long creationDate = issue.creationDate();
+    if (creationDate < createdAfter || creationDate >= createdBefore) {
+      return false;
+    }
+    return message == null || (issue.getMessage() != null && StringUtil.containsIgnoreCase(issue.getMessage(), message));
+  }
+
+  public static class Builder {
+    private Set<String> severities = ImmutableSet.of();
+    private Set<String> rules = ImmutableSet.of();
+    private Set<String> modules = ImmutableSet.of();
+    private String pathPrefix;
+    private String message;
+    private long createdAfter = Long.MIN_VALUE;
+    private long createdBefore = Long.MAX_VALUE;
+    private int offset = 0;
+    private int limit = Integer.MAX_VALUE;
+
+    private Builder() {
+    }
+
+    public Builder severities(String... severities) {
+      this.severities = ImmutableSet.copyOf(Arrays.asList(severities));
+      return this;
+    }
+
+    public Builder rules(String... ruleKeys) {
+      this.rules = ImmutableSet.copyOf(Arrays.asList(ruleKeys));
+      return this;
+    }
+
+    /**
+     * Names of the modules.
+     */
+    public Builder modules(String... moduleNames) {
+      this.modules = ImmutableSet.copyOf(Arrays.asList(moduleNames));
+      return this;
+    }
+
+    /**
+     * Start of the path of the files, as in {@link VirtualFile#getPath()}. For example the path of a directory, ending with '/'.
+     */
+    public Builder pathPrefix(@Nullable String pathPrefix) {
+      this.pathPrefix = pathPrefix;
+      return this;
+    }
+
+    /**
+     * Part of the message, ignoring case.
+     */
+    public Builder messageContains(@Nullable String message) {
+      this.message = message;
+      return this;
+    }
+
+    /**
+     * Issues created at this time (in ms) or later.
+     */
+    public Builder createdAfter(long time) {
+      this.createdAfter = time;
+      return this;
+    }
+
+    /**
+     * Issues created before this time (in ms).
+     */
+    public Builder createdBefore(long time) {
+      this.createdBefore = time;
+      return this;
+    }
+
+    /**
+     * Returns only {@code limit} issues, skipping the first {@code offset} issues that match.
+     */
+    public Builder page(int offset, int limit) {
+      if (offset < 0 || limit <= 0) {
+        throw new IllegalArgumentException("Invalid page: offset " + offset + ", limit " + limit);
+      }
+      this.offset = offset;
+      this.limit = limit;
+      return this;
+    }
+
+    public IssueQuery build() {
+      return new IssueQuery(this);
+    }
+  }
+
+  /**
+   * A page of the issues that match a query, sorted by path of file and then in the order of the analyzer.
+   */
+  @Immutable
+  public static class Result {
+    private final ImmutableList<IssuePointer> issues;
+    private final int offset;
+    private final int total;
+    private final long version;
+
+    Result(List<IssuePointer> issues, int offset, int total, long version) {
+      this.issues = ImmutableList.copyOf(issues);
+      this.offset = offset;
+      this.total = total;
+      this.version = version;
+    }
+
+    public List<IssuePointer> issues() {
+      return issues;
+    }
+
+    public int offset() {
+      return offset;
+    }
+
+    /**
+     * Number of issues that match, in all pages.
+     */
+    public int total() {
+      return total;
+    }
+
+    public boolean hasMore() {
+      return offset + issues.size() < total;
+    }
+
+    /**
+     * Version of the store when the query was run, see {@link IssueStore#getVersion()}.
+     */
+    public long version() {
+      return version;
+    }
+  }
+}
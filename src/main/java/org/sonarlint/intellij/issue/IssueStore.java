@@ -19,68 +19,251 @@
  */
 package org.sonarlint.intellij.issue;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Striped;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFile;
-import com.intellij.util.messages.MessageBusConnection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
+import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
 import org.sonarlint.intellij.issue.tracking.Input;
+import org.sonarlint.intellij.issue.tracking.Trackable;
 import org.sonarlint.intellij.issue.tracking.Tracker;
 import org.sonarlint.intellij.issue.tracking.Tracking;
-import org.sonarlint.intellij.messages.AnalysisResultsListener;
 
 /**
- * Stores issues associated to a {@link PsiElement}, {@link RangeMarker} or  {@link PsiFile}.
+ * Stores issues associated to a {@link RangeMarker} or a file.
  * Issues can then be displayed as annotations at any time.
+ * Issues of files that are not open are kept detached (see {@link IssuePointer#detach()}), so that they don't retain
+ * the document of the file. Range markers are created for all the issues of a file at once, when it is opened.
+ * The estimated memory taken by the issues is kept within {@link SonarLintGlobalSettings#getIssuesMemoryBudget()} by discarding
+ * the issues of the files that were the least recently used in an editor. Issues of open files are never discarded.
+ * Discarded issues are published as removed with {@link ResultsPublisher#publishChange(IssueDelta)}, and issues that are compacted
+ * or expanded are published as tracked with their new form, so that every change of what a file shows is published.
+ * With {@link SonarLintGlobalSettings#isCompactIssues()}, the issues of detached files are kept in columns of primitive values
+ * (see {@link ColumnarIssues}), and objects are only created for the issues that are read.
+ * Updates of the issues of a file are atomic, without a global lock: issues are tracked without holding a lock, and only
+ * published under the lock of the stripe of the file, if the file wasn't updated in the meantime. New issues are attached or
+ * detached, and compacted, before being published. Each entry that replaces another one has a new version.
+ * Updates don't need to be called in a read action: the locations of the issues attached to a document are read in short
+ * read actions of their own (see {@link TrackedIssue}), and issues are tracked without holding the read lock.
  */
 @ThreadSafe
 public class IssueStore extends AbstractProjectComponent {
-  private static final long THRESHOLD = 10_000;
-  private final Map<VirtualFile, Collection<IssuePointer>> storePerFile;
+  private static final Logger LOGGER = Logger.getInstance(IssueStore.class);
+  // rough estimates of the memory taken by the entry of a file and by each issue, strings being interned
+  static final long FILE_SIZE = 100;
+  static final long ISSUE_SIZE = 150;
+  private static final int LOCK_STRIPES = 64;
+  private static final int MAX_QUERY_ATTEMPTS = 3;
+  private final SonarLintGlobalSettings settings;
+  private final IssueBaseline baseline;
+  private final ResultsPublisher publisher;
+  private final ConcurrentMap<VirtualFile, FileIssues> storePerFile;
+  // incremented each time the issues of a file changed, once the change is visible
+  private final AtomicLong version = new AtomicLong();
+  // versions of the issues of each file
+  private final AtomicLong fileVersion = new AtomicLong();
+  private volatile Snapshot snapshot = new Snapshot(0, ImmutableMap.<VirtualFile, Collection<IssuePointer>>of());
+  private final AtomicLong issueCount = new AtomicLong();
+  private final AtomicLong estimatedSize = new AtomicLong();
+  private final IssueCounts counts = new IssueCounts();
+  private final IssueIndex index = new IssueIndex();
+  private final StringDictionary dictionary = new StringDictionary();
+  // updates of the issues of a file are serialized by the lock of its stripe, tracking is done before taking it
+  private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+  private final AtomicLong contendedLocks = new AtomicLong();
+  private final AtomicLong conflicts = new AtomicLong();
+  // files that have issues, in order of use, the least recent first
+  @GuardedBy("lru")
+  private final LinkedHashMap<VirtualFile, Boolean> lru = new LinkedHashMap<>(16, 0.75f, true);
 
-  public IssueStore(Project project) {
+  public IssueStore(Project project, SonarLintGlobalSettings settings, IssueBaseline baseline, ResultsPublisher publisher) {
     super(project);
+    this.settings = settings;
+    this.baseline = baseline;
+    this.publisher = publisher;
     this.storePerFile = new ConcurrentHashMap<>();
-    MessageBusConnection busConnection = project.getMessageBus().connect(project);
-    busConnection.subscribe(AnalysisResultsListener.SONARLINT_ANALYSIS_DONE_TOPIC, new AnalysisResultsListener() {
-      @Override public void analysisDone(Map<VirtualFile, Collection<IssuePointer>> issuesPerFile) {
-        for (Map.Entry<VirtualFile, Collection<IssuePointer>> e : issuesPerFile.entrySet()) {
-          if (e.getValue().isEmpty()) {
-            clearFile(e.getKey());
-          } else {
-            store(e.getKey(), e.getValue());
+  }
+
+  public void clear() {
+    for (VirtualFile file : storePerFile.keySet()) {
+      clearFile(file);
+    }
+  }
+
+  public long getIssueCount() {
+    return issueCount.get();
+  }
+
+  /**
+   * Number of stored issues per severity, rule and module.
+   */
+  public IssueCounts getCounts() {
+    return counts;
+  }
+
+  /**
+   * Number of times the issues of a file were tracked again because they were replaced concurrently.
+   */
+  public long getConflictCount() {
+    return conflicts.get();
+  }
+
+  /**
+   * Number of times an update of the issues of a file waited for another one of the same lock stripe.
+   */
+  public long getContendedLockCount() {
+    return contendedLocks.get();
+  }
+
+  /**
+   * Estimated memory, in bytes, taken by the stored issues.
+   */
+  public long getEstimatedSize() {
+    return estimatedSize.get();
+  }
+
+  /**
+   * Immutable view of the issues of all files. See {@link #getSnapshot()}.
+   */
+  public Map<VirtualFile, Collection<IssuePointer>> getAll() {
+    return getSnapshot().issues();
+  }
+
+  /**
+   * Immutable view of the issues of all files, with the version of the store when it was taken.
+   * It's only built again if issues changed since the previous call.
+   */
+  public Snapshot getSnapshot() {
+    Snapshot current = snapshot;
+    long currentVersion = version.get();
+    if (current.version() == currentVersion) {
+      return current;
+    }
+
+    // each file is consistent, and files changed while copying will be copied again next time
+    ImmutableMap.Builder<VirtualFile, Collection<IssuePointer>> builder = ImmutableMap.builder();
+    for (Map.Entry<VirtualFile, FileIssues> e : storePerFile.entrySet()) {
+      builder.put(e.getKey(), e.getValue().issues());
+    }
+    current = new Snapshot(currentVersion, builder.build());
+    snapshot = current;
+    return current;
+  }
+
+  /**
+   * Issues that match the query, in a stable order so that they can be fetched page by page.
+   * Only the files that have issues with the requested severities, rules or modules are gone through, starting with
+   * the criterion that matches the least issues.
+   */
+  public IssueQuery.Result query(IssueQuery query) {
+    long currentVersion;
+    TreeMap<String, FileIssues> entries;
+    int attempts = 0;
+    do {
+      currentVersion = version.get();
+      entries = entries(query);
+      attempts++;
+      // copied again if files changed while copying, unless they keep changing
+    } while (currentVersion != version.get() && attempts < MAX_QUERY_ATTEMPTS);
+
+    List<IssuePointer> page = new ArrayList<>(Math.min(query.limit(), 100));
+    int total = 0;
+    for (FileIssues entry : entries.values()) {
+      for (IssuePointer issue : entry.issues()) {
+        if (query.acceptsIssue(issue)) {
+          if (total >= query.offset() && page.size() < query.limit()) {
+            page.add(issue);
           }
+          total++;
         }
       }
-    });
+    }
+    return new IssueQuery.Result(page, query.offset(), total, currentVersion);
   }
 
-  public void clear() {
-    storePerFile.clear();
+  /**
+   * Snapshot of the entries of the files that can have issues matching the query, sorted by path.
+   * The page, the total and the version of a result are built from a single snapshot: each entry is read once.
+   */
+  private TreeMap<String, FileIssues> entries(IssueQuery query) {
+    TreeMap<String, FileIssues> entries = new TreeMap<>();
+    Collection<VirtualFile> candidates = candidates(query);
+    if (candidates == null) {
+      return entries;
+    }
+    for (VirtualFile file : candidates) {
+      FileIssues entry = storePerFile.get(file);
+      if (entry != null && query.acceptsFile(file, entry.module())) {
+        entries.put(file.getPath(), entry);
+      }
+    }
+    return entries;
   }
 
-  private long getNumberIssues() {
-    long count = 0;
-    Iterator<Map.Entry<VirtualFile, Collection<IssuePointer>>> it = storePerFile.entrySet().iterator();
-
-    while (it.hasNext()) {
-      count += it.next().getValue().size();
+  /**
+   * Files that can have issues matching the query, or null if there can't be any.
+   */
+  @CheckForNull
+  private Collection<VirtualFile> candidates(IssueQuery query) {
+    long severityCount = query.severities().isEmpty() ? Long.MAX_VALUE : 0;
+    for (String severity : query.severities()) {
+      severityCount += counts.bySeverity(severity);
+    }
+    long ruleCount = query.rules().isEmpty() ? Long.MAX_VALUE : 0;
+    for (String rule : query.rules()) {
+      ruleCount += counts.byRule(rule);
+    }
+    long moduleCount = query.modules().isEmpty() ? Long.MAX_VALUE : 0;
+    for (String module : query.modules()) {
+      moduleCount += counts.byModule(module);
     }
 
-    return count;
+    long min = Math.min(severityCount, Math.min(ruleCount, moduleCount));
+    if (min == 0) {
+      return null;
+    } else if (min == Long.MAX_VALUE) {
+      return storePerFile.keySet();
+    } else if (min == ruleCount) {
+      return index.filesWithRule(query.rules());
+    } else if (min == severityCount) {
+      return index.filesWithSeverity(query.severities());
+    } else {
+      return index.filesInModule(query.modules());
+    }
   }
 
-  public Map<VirtualFile, Collection<IssuePointer>> getAll() {
-    return storePerFile;
+  /**
+   * Version of the store, which changes each time the issues of a file change.
+   */
+  public long getVersion() {
+    return version.get();
   }
 
   @Override
@@ -88,54 +271,629 @@ public class IssueStore extends AbstractProjectComponent {
     clear();
   }
 
+  /**
+   * Version of the issues of the file, which changes each time they are stored, or 0 if it has no issues.
+   */
+  public long getVersion(VirtualFile file) {
+    FileIssues entry = storePerFile.get(file);
+    return entry == null ? 0 : entry.version();
+  }
+
+  /**
+   * Immutable list of the latest issues of the file.
+   */
   public Collection<IssuePointer> getForFile(VirtualFile file) {
-    Collection<IssuePointer> issues = storePerFile.get(file);
-    return issues == null ? Collections.<IssuePointer>emptyList() : issues;
+    FileIssues entry = storePerFile.get(file);
+    return entry == null ? Collections.<IssuePointer>emptyList() : entry.issues();
+  }
+
+  /**
+   * To be called before the files are analyzed: reads ahead the baselines of the files that have no issues stored, which are
+   * needed to restore the creation dates of their issues once they are stored.
+   */
+  public void preload(Collection<VirtualFile> files) {
+    List<VirtualFile> toLoad = new ArrayList<>(files.size());
+    for (VirtualFile file : files) {
+      if (!storePerFile.containsKey(file)) {
+        toLoad.add(file);
+      }
+    }
+    baseline.preload(toLoad);
   }
 
+  /**
+   * Discards the issues of the file, and publishes them as removed. The baseline of the file is kept.
+   */
   public void clearFile(VirtualFile file) {
-    storePerFile.remove(file);
+    FileIssues removed;
+    long storeVersion;
+    Lock lock = lock(file);
+    try {
+      removed = storePerFile.remove(file);
+      if (removed == null) {
+        return;
+      }
+      storeVersion = version.incrementAndGet();
+      synchronized (lru) {
+        lru.remove(file);
+      }
+      updateStats(file, removed, null);
+    } finally {
+      lock.unlock();
+    }
+    publisher.publishChange(IssueDelta.removed(file, removed.version(), storeVersion, removed.issues()));
   }
 
   /**
-   * Clears issues in the File if the threshold of issues per project as been passed.
-   * It could be improved by being fully synchronized and deleting the oldest file closed.
+   * To be called when a file is used in an editor (opened or selected), to keep its issues as long as possible.
+   * Only the files that have issues are kept track of.
    */
-  public void clean(VirtualFile file) {
-    long numIssues = getNumberIssues();
+  public void touch(VirtualFile file) {
+    synchronized (lru) {
+      // moves the file last in the access order, if it's there
+      lru.get(file);
+    }
+  }
 
-    if (numIssues > THRESHOLD) {
-      clearFile(file);
+  /**
+   * Number of files that are candidates to have their issues discarded.
+   */
+  int getRecentFileCount() {
+    synchronized (lru) {
+      return lru.size();
+    }
+  }
+
+  /**
+   * Discards the issues of the least recently used files that are not open, until the estimated memory taken by the issues
+   * is within the budget.
+   */
+  public void evictIfNeeded() {
+    long budget = settings.getIssuesMemoryBudget() * 1024L * 1024L;
+    if (estimatedSize.get() <= budget) {
+      return;
+    }
+
+    List<VirtualFile> candidates;
+    synchronized (lru) {
+      candidates = new ArrayList<>(lru.keySet());
+    }
+
+    int evicted = 0;
+    for (VirtualFile file : candidates) {
+      if (estimatedSize.get() <= budget) {
+        break;
+      }
+      if (!isOpen(file)) {
+        clearFile(file);
+        evicted++;
+      }
+    }
+    LOGGER.debug(String.format("Discarded issues of %d files, %d issues kept (%d KB)", evicted, issueCount.get(), estimatedSize.get() / 1024));
+  }
+
+  /**
+   * Publishes a new version of the issues of a file, if they weren't changed concurrently since the previous version was read.
+   * The new version, the statistics and the baseline (with the given entries, unless null) are updated atomically for the file,
+   * under the lock of its stripe. Returns the version of the store once published, or -1 if the file was changed concurrently.
+   */
+  private long replace(VirtualFile file, @Nullable FileIssues previous, @Nullable FileIssues entry, @Nullable List<IssueBaseline.Entry> baselineEntries) {
+    Lock lock = lock(file);
+    try {
+      if (storePerFile.get(file) != previous) {
+        return -1;
+      }
+      if (entry == null) {
+        if (previous != null) {
+          storePerFile.remove(file);
+        }
+      } else {
+        storePerFile.put(file, entry);
+      }
+      if (baselineEntries != null) {
+        baseline.saveEntries(file, baselineEntries);
+      }
+      if (previous == null && entry == null) {
+        return version.get();
+      }
+      long newVersion = version.incrementAndGet();
+
+      synchronized (lru) {
+        if (entry == null) {
+          lru.remove(file);
+        } else if (!lru.containsKey(file)) {
+          // newly analyzed files are recent, without changing the order of the files already known
+          lru.put(file, Boolean.TRUE);
+        }
+      }
+      updateStats(file, previous, entry);
+      return newVersion;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Lock lock(VirtualFile file) {
+    Lock lock = locks.get(file);
+    if (!lock.tryLock()) {
+      contendedLocks.incrementAndGet();
+      lock.lock();
+    }
+    return lock;
+  }
+
+  private void updateStats(VirtualFile file, @Nullable FileIssues removed, @Nullable FileIssues added) {
+    long delta = (added == null ? 0 : added.issues().size()) - (removed == null ? 0 : removed.issues().size());
+    issueCount.addAndGet(delta);
+    estimatedSize.addAndGet(estimateSize(added) - estimateSize(removed));
+    if (removed != null) {
+      counts.remove(removed.module(), removed.issues());
+      index.remove(file, removed.module(), removed.issues());
+    }
+    if (added != null) {
+      counts.add(added.module(), added.issues());
+      index.add(file, added.module(), added.issues());
+    }
+  }
+
+  private static long estimateSize(@Nullable FileIssues entry) {
+    if (entry == null) {
+      return 0;
+    }
+    return FILE_SIZE + entry.issues().size() * (entry.isCompact() ? ColumnarIssues.ISSUE_SIZE : ISSUE_SIZE);
+  }
+
+  /**
+   * Replaces the issues of the file, tracking them with the previous ones.
+   * Returns whether the displayed issues changed: an issue was added or removed, or a tracked issue has a different rule,
+   * severity, location or message.
+   * If the issues of the file are replaced concurrently, they are tracked again with the new version.
+   */
+  public boolean store(VirtualFile file, Collection<IssuePointer> rawIssues) {
+    return store(null, file, rawIssues);
+  }
+
+  /**
+   * Same as {@link #store(VirtualFile, Collection)}, counting the issues in the given module.
+   * If it's null, the module in which the previous issues of the file were counted is kept.
+   */
+  public boolean store(@Nullable Module module, VirtualFile file, Collection<IssuePointer> rawIssues) {
+    return !update(module, file, rawIssues).isEmpty();
+  }
+
+  /**
+   * Same as {@link #store(Module, VirtualFile, Collection)}, returning the changes found by tracking.
+   */
+  public IssueDelta update(@Nullable Module module, VirtualFile file, Collection<IssuePointer> rawIssues) {
+    // the new issues are not shared yet: they are read once, and attached or detached before being published
+    List<TrackedIssue> raws = TrackedIssue.of(rawIssues);
+    Document document = openDocument(file);
+    attachOrDetach(document, rawIssues);
+    List<IssueBaseline.Entry> noEntries = Collections.emptyList();
+    while (true) {
+      FileIssues previous = storePerFile.get(file);
+      Collection<IssuePointer> previousIssues = previous == null ? Collections.<IssuePointer>emptyList() : previous.issues();
+      long previousVersion = previous == null ? 0 : previous.version();
+      if (raws.isEmpty()) {
+        // this will also delete all existing issues in the file, and its baseline if it had issues
+        long storeVersion = replace(file, previous, null, previous == null ? null : noEntries);
+        if (storeVersion < 0) {
+          conflicts.incrementAndGet();
+          continue;
+        }
+        if (previous == null) {
+          return IssueDelta.none(file, storeVersion);
+        }
+        return IssueDelta.removed(file, previousVersion, storeVersion, previousIssues);
+      }
+
+      if (previous == null) {
+        // first analysis of the file in this session, or its issues were discarded
+        restoreCreationDates(file, raws);
+      }
+
+      Tracking<TrackedIssue, TrackedIssue> tracking = new Tracker<TrackedIssue, TrackedIssue>().track(input(raws), input(TrackedIssue.of(previousIssues)));
+      List<IssuePointer> trackedIssues = new ArrayList<>(raws.size());
+      List<IssueBaseline.Entry> baselineEntries = new ArrayList<>(raws.size());
+      Map<IssuePointer, IssuePointer> tracked = new IdentityHashMap<>();
+      Map<IssuePointer, IssuePointer> moved = new IdentityHashMap<>();
+      for (Map.Entry<TrackedIssue, TrackedIssue> entry : tracking.getMatchedRaws().entrySet()) {
+        IssuePointer rawMatched = entry.getKey().issue();
+        IssuePointer previousMatched = entry.getValue().issue();
+        if (rawMatched.serverIssueKey() == null) {
+          // the creation date of an issue that exists on the server is the one of the server
+          rawMatched.setCreationDate(previousMatched.creationDate());
+        }
+        tracked.put(previousMatched, rawMatched);
+        if (!looksTheSame(entry.getKey(), entry.getValue())) {
+          moved.put(previousMatched, rawMatched);
+        }
+        trackedIssues.add(rawMatched);
+        baselineEntries.add(IssueBaseline.Entry.of(entry.getKey()));
+      }
+      List<IssuePointer> added = new ArrayList<>();
+      for (TrackedIssue newIssue : tracking.getUnmatchedRaws()) {
+        trackedIssues.add(newIssue.issue());
+        baselineEntries.add(IssueBaseline.Entry.of(newIssue));
+        added.add(newIssue.issue());
+      }
+      String moduleName = module != null ? module.getName() : (previous != null ? previous.module() : null);
+      FileIssues entry = new FileIssues(trackedIssues, moduleName, fileVersion.incrementAndGet());
+      if (document == null) {
+        entry = compact(file, entry);
+      }
+      long storeVersion = replace(file, previous, entry, baselineEntries);
+      if (storeVersion < 0) {
+        // tracked with a version that was replaced concurrently: track again with the new one
+        conflicts.incrementAndGet();
+        continue;
+      }
+
+      checkOpen(file, document);
+      evictIfNeeded();
+      List<IssuePointer> removed = new ArrayList<>();
+      for (TrackedIssue previousIssue : tracking.getUnmatchedBases()) {
+        removed.add(previousIssue.issue());
+      }
+      if (entry.isCompact()) {
+        // the delta refers to the views of the stored columns, not to the raw issues that were compacted
+        List<IssuePointer> views = ImmutableList.copyOf(entry.issues());
+        Map<IssuePointer, IssuePointer> viewOf = new IdentityHashMap<>(views.size());
+        for (int i = 0; i < views.size(); i++) {
+          viewOf.put(trackedIssues.get(i), views.get(i));
+        }
+        return new IssueDelta(file, previousVersion, entry.version(), storeVersion, views, toViews(added, viewOf), removed,
+          toViews(tracked, viewOf), toViews(moved, viewOf));
+      }
+      return new IssueDelta(file, previousVersion, entry.version(), storeVersion, entry.issues(), added, removed, tracked, moved);
     }
   }
 
-  public void store(VirtualFile file, final Collection<IssuePointer> rawIssues) {
-    // this will also delete all existing issues in the file
-    final Collection<IssuePointer> previousIssues = getForFile(file);
-    Collection<IssuePointer> trackedIssues = new ArrayList<>();
+  private static List<IssuePointer> toViews(List<IssuePointer> issues, Map<IssuePointer, IssuePointer> viewOf) {
+    List<IssuePointer> views = new ArrayList<>(issues.size());
+    for (IssuePointer issue : issues) {
+      views.add(viewOf.get(issue));
+    }
+    return views;
+  }
 
-    Input<IssuePointer> baseInput = new Input<IssuePointer>() {
+  private static Map<IssuePointer, IssuePointer> toViews(Map<IssuePointer, IssuePointer> matches, Map<IssuePointer, IssuePointer> viewOf) {
+    Map<IssuePointer, IssuePointer> views = new IdentityHashMap<>(matches.size());
+    for (Map.Entry<IssuePointer, IssuePointer> e : matches.entrySet()) {
+      views.put(e.getKey(), viewOf.get(e.getValue()));
+    }
+    return views;
+  }
+
+  private static <T extends Trackable> Input<T> input(final Collection<T> issues) {
+    return new Input<T>() {
       @Override
-      public Collection<IssuePointer> getIssues() {
-        return previousIssues;
+      public Collection<T> getIssues() {
+        return issues;
       }
     };
-    Input<IssuePointer> rawInput = new Input<IssuePointer>() {
+  }
+
+  /**
+   * Puts back previous issues of a file, counted in the given module, as long as the issues of the file are still at the
+   * given version. It's used to roll back the issues stored by an analysis that was cancelled.
+   * Returns the changes, or null if the issues of the file changed since.
+   */
+  @CheckForNull
+  public IssueDelta restore(@Nullable Module module, VirtualFile file, long version, Collection<IssuePointer> previousIssues) {
+    FileIssues current = storePerFile.get(file);
+    if ((current == null ? 0 : current.version()) != version) {
+      return null;
+    }
+    List<IssuePointer> currentIssues = current == null ? Collections.<IssuePointer>emptyList() : current.issues();
+    String moduleName = module != null ? module.getName() : (current != null ? current.module() : null);
+    List<IssueBaseline.Entry> baselineEntries = new ArrayList<>(previousIssues.size());
+    for (TrackedIssue issue : TrackedIssue.of(previousIssues)) {
+      baselineEntries.add(IssueBaseline.Entry.of(issue));
+    }
+    // the previous issues are no longer stored, they are attached or detached before being published again
+    Document document = openDocument(file);
+    attachOrDetach(document, previousIssues);
+    FileIssues entry = null;
+    if (!previousIssues.isEmpty()) {
+      entry = new FileIssues(previousIssues, moduleName, fileVersion.incrementAndGet());
+      if (document == null) {
+        entry = compact(file, entry);
+      }
+    }
+    long storeVersion = replace(file, current, entry, current == null && entry == null ? null : baselineEntries);
+    if (storeVersion < 0) {
+      conflicts.incrementAndGet();
+      return null;
+    }
+    if (current == null && entry == null) {
+      return IssueDelta.none(file, storeVersion);
+    }
+
+    checkOpen(file, document);
+    List<IssuePointer> restored = entry == null ? Collections.<IssuePointer>emptyList() : entry.issues();
+    Map<IssuePointer, IssuePointer> noMatch = Collections.emptyMap();
+    return new IssueDelta(file, version, entry == null ? 0 : entry.version(), storeVersion, restored, restored, currentIssues, noMatch, noMatch);
+  }
+
+  /**
+   * Document of the file if it's open.
+   */
+  @CheckForNull
+  private Document openDocument(VirtualFile file) {
+    return isOpen(file) ? FileDocumentManager.getInstance().getCachedDocument(file) : null;
+  }
+
+  /**
+   * Attaches the issues to the document, or detaches them if there is none.
+   */
+  private static void attachOrDetach(@Nullable final Document document, final Collection<IssuePointer> issues) {
+    Runnable update = new Runnable() {
       @Override
-      public Collection<IssuePointer> getIssues() {
-        return rawIssues;
+      public void run() {
+        for (IssuePointer issue : issues) {
+          if (document != null) {
+            issue.attach(document);
+          } else {
+            issue.detach();
+          }
+        }
       }
     };
-    Tracking<IssuePointer, IssuePointer> tracking = new Tracker<IssuePointer, IssuePointer>().track(rawInput, baseInput);
-    for (Map.Entry<IssuePointer, IssuePointer> entry : tracking.getMatchedRaws().entrySet()) {
-      IssuePointer rawMatched = entry.getKey();
-      IssuePointer previousMatched = entry.getValue();
-      rawMatched.setCreationDate(previousMatched.creationDate());
-      trackedIssues.add(rawMatched);
+    // usually the issues were already matched in the right state, and the document isn't needed
+    boolean needsDocument = false;
+    for (IssuePointer issue : issues) {
+      if (!issue.isFileLevel() && issue.isAttached() != (document != null)) {
+        needsDocument = true;
+        break;
+      }
+    }
+    if (needsDocument) {
+      ApplicationManager.getApplication().runReadAction(update);
+    } else {
+      update.run();
+    }
+  }
+
+  /**
+   * If the file was opened or closed while its issues were published, attaches or detaches them again.
+   */
+  private void checkOpen(final VirtualFile file, @Nullable Document document) {
+    final Document current = openDocument(file);
+    if (current == document) {
+      return;
+    }
+    ApplicationManager.getApplication().runReadAction(new Runnable() {
+      @Override
+      public void run() {
+        if (current != null) {
+          attach(file, current);
+        } else {
+          detach(file);
+        }
+      }
+    });
+  }
+
+  /**
+   * Tracks the issues with the baseline of the file kept on disk, to restore their creation date.
+   */
+  private void restoreCreationDates(VirtualFile file, Collection<TrackedIssue> rawIssues) {
+    final List<IssueBaseline.Entry> baseEntries = baseline.load(file);
+    if (baseEntries.isEmpty()) {
+      return;
+    }
+    // entries are compared by identity
+    final Map<IssueBaseline.Entry, IssuePointer> rawEntries = new LinkedHashMap<>(rawIssues.size());
+    for (TrackedIssue issue : rawIssues) {
+      rawEntries.put(IssueBaseline.Entry.of(issue), issue.issue());
+    }
+
+    Tracking<IssueBaseline.Entry, IssueBaseline.Entry> tracking = new Tracker<IssueBaseline.Entry, IssueBaseline.Entry>().track(
+      new Input<IssueBaseline.Entry>() {
+        @Override
+        public Collection<IssueBaseline.Entry> getIssues() {
+          return rawEntries.keySet();
+        }
+      }, new Input<IssueBaseline.Entry>() {
+        @Override
+        public Collection<IssueBaseline.Entry> getIssues() {
+          return baseEntries;
+        }
+      });
+    for (Map.Entry<IssueBaseline.Entry, IssueBaseline.Entry> e : tracking.getMatchedRaws().entrySet()) {
+      IssuePointer issue = rawEntries.get(e.getKey());
+      if (issue.serverIssueKey() == null) {
+        issue.setCreationDate(e.getValue().getCreationDate());
+      }
+    }
+  }
+
+  private static boolean looksTheSame(TrackedIssue i1, TrackedIssue i2) {
+    return i1.issue().isFileLevel() == i2.issue().isFileLevel()
+      && i1.getStartOffset() == i2.getStartOffset()
+      && i1.getEndOffset() == i2.getEndOffset()
+      && Objects.equals(i1.getRuleKey(), i2.getRuleKey())
+      && Objects.equals(i1.issue().getSeverity(), i2.issue().getSeverity())
+      && Objects.equals(i1.getMessage(), i2.getMessage());
+  }
+
+  /**
+   * To be called when the file is closed.
+   */
+  public void detach(VirtualFile file) {
+    for (IssuePointer issue : getForFile(file)) {
+      issue.detach();
+    }
+    compact(file);
+  }
+
+  /**
+   * To be called when the file is opened, with its document.
+   */
+  public void attach(VirtualFile file, Document document) {
+    expand(file, document);
+    for (IssuePointer issue : getForFile(file)) {
+      issue.attach(document);
+    }
+  }
+
+  /**
+   * If enabled in the settings, keeps the issues of the file in columns, unless some of them are attached.
+   */
+  private void compact(VirtualFile file) {
+    if (!settings.isCompactIssues()) {
+      return;
+    }
+    IssueDelta delta = null;
+    Lock lock = lock(file);
+    try {
+      FileIssues entry = storePerFile.get(file);
+      if (entry != null && !entry.isCompact()) {
+        delta = swap(file, entry, compact(file, entry));
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (delta != null) {
+      publisher.publishChange(delta);
     }
-    for (IssuePointer newIssue : tracking.getUnmatchedRaws()) {
-      trackedIssues.add(newIssue);
+  }
+
+  /**
+   * The issues of the entry in columns with a new version, if enabled in the settings and none of them is attached.
+   * Otherwise the same entry.
+   */
+  private FileIssues compact(VirtualFile file, FileIssues entry) {
+    if (!settings.isCompactIssues()) {
+      return entry;
+    }
+    FileIssues compacted = entry.compact(file, dictionary, fileVersion.incrementAndGet());
+    return compacted == null ? entry : compacted;
+  }
+
+  /**
+   * Keeps an object per issue of the file, attached to the document before they are published.
+   */
+  private void expand(VirtualFile file, Document document) {
+    IssueDelta delta = null;
+    Lock lock = lock(file);
+    try {
+      FileIssues entry = storePerFile.get(file);
+      if (entry != null && entry.isCompact()) {
+        FileIssues expanded = entry.expand(fileVersion.incrementAndGet());
+        attachOrDetach(document, expanded.issues());
+        delta = swap(file, entry, expanded);
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (delta != null) {
+      publisher.publishChange(delta);
+    }
+  }
+
+  /**
+   * Replaces the entry of the file by the same issues in another form, with a new version. To be called under the lock of the file.
+   * Returns the change, in which each issue is tracked with the one that replaces it, or null if the entry wasn't replaced.
+   */
+  @CheckForNull
+  private IssueDelta swap(VirtualFile file, FileIssues entry, FileIssues swapped) {
+    if (swapped == entry) {
+      return null;
+    }
+    storePerFile.put(file, swapped);
+    long storeVersion = version.incrementAndGet();
+    estimatedSize.addAndGet(estimateSize(swapped) - estimateSize(entry));
+
+    // both entries have the same issues, in the same order
+    List<IssuePointer> issues = ImmutableList.copyOf(swapped.issues());
+    Map<IssuePointer, IssuePointer> tracked = new IdentityHashMap<>(issues.size());
+    int i = 0;
+    for (IssuePointer previous : entry.issues()) {
+      tracked.put(previous, issues.get(i));
+      i++;
+    }
+    List<IssuePointer> none = Collections.emptyList();
+    Map<IssuePointer, IssuePointer> noMove = Collections.emptyMap();
+    return new IssueDelta(file, entry.version(), swapped.version(), storeVersion, issues, none, none, tracked, noMove);
+  }
+
+  boolean isOpen(VirtualFile file) {
+    FileEditorManager editorManager = FileEditorManager.getInstance(myProject);
+    return editorManager != null && editorManager.isFileOpen(file);
+  }
+
+  /**
+   * A version of the issues of a file, as objects or in columns (see {@link ColumnarIssues}).
+   */
+  @Immutable
+  private static class FileIssues {
+    private final List<IssuePointer> issues;
+    @Nullable
+    private final String module;
+    private final long version;
+
+    FileIssues(Collection<IssuePointer> issues, @Nullable String module, long version) {
+      this(ImmutableList.copyOf(issues), module, version);
+    }
+
+    private FileIssues(List<IssuePointer> issues, @Nullable String module, long version) {
+      this.issues = issues;
+      this.module = module;
+      this.version = version;
+    }
+
+    @CheckForNull
+    String module() {
+      return module;
+    }
+
+    List<IssuePointer> issues() {
+      return issues;
+    }
+
+    long version() {
+      return version;
+    }
+
+    boolean isCompact() {
+      return issues instanceof ColumnarIssues;
+    }
+
+    /**
+     * Same issues in columns, with the given version, or null if some of them are attached.
+     */
+    @CheckForNull
+    FileIssues compact(VirtualFile file, StringDictionary dictionary, long newVersion) {
+      ColumnarIssues columns = ColumnarIssues.of(file, issues, dictionary);
+      return columns == null ? null : new FileIssues(columns, module, newVersion);
+    }
+
+    /**
+     * Same issues with an object per issue, with the given version. They are equal to the views that were read from the columns.
+     */
+    FileIssues expand(long newVersion) {
+      return new FileIssues(ImmutableList.copyOf(issues), module, newVersion);
+    }
+  }
+
+  @Immutable
+  public static class Snapshot {
+    private final long version;
+    private final ImmutableMap<VirtualFile, Collection<IssuePointer>> issues;
+
+    Snapshot(long version, ImmutableMap<VirtualFile, Collection<IssuePointer>> issues) {
+      this.version = version;
+      this.issues = issues;
+    }
+
+    public long version() {
+      return version;
+    }
+
+    public Map<VirtualFile, Collection<IssuePointer>> issues() {
+      return issues;
     }
-    storePerFile.put(file, trackedIssues);
   }
 }
@@ -0,0 +1,139 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.messages.MessageBus;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sonarlint.intellij.messages.AnalysisResultsListener;
+import org.sonarlint.intellij.messages.IssueChangesListener;
+
+/**
+ * Publishes the issues of files on {@link AnalysisResultsListener#SONARLINT_ANALYSIS_DONE_TOPIC} asynchronously, in the EDT.
+ * Results published before the previous ones were delivered are merged: subscribers get a single immutable snapshot
+ * with the latest issues of each file.
+ * The changes found when storing them are published on {@link IssueChangesListener#SONARLINT_ISSUE_CHANGES_TOPIC},
+ * all of them, in order, together with the changes that don't come from an analysis, like discarded issues.
+ */
+@ThreadSafe
+public class ResultsPublisher extends AbstractProjectComponent {
+  private final MessageBus messageBus;
+  private final Executor uiExecutor;
+  private final Runnable flush = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  @GuardedBy("this")
+  private Map<VirtualFile, Collection<IssuePointer>> pending = new LinkedHashMap<>();
+  @GuardedBy("this")
+  private List<IssueDelta> pendingDeltas = new ArrayList<>();
+  @GuardedBy("this")
+  private boolean scheduled = false;
+
+  public ResultsPublisher(final Project project) {
+    this(project, project.getMessageBus(), new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        ApplicationManager.getApplication().invokeLater(command, project.getDisposed());
+      }
+    });
+  }
+
+  ResultsPublisher(Project project, MessageBus messageBus, Executor uiExecutor) {
+    super(project);
+    this.messageBus = messageBus;
+    this.uiExecutor = uiExecutor;
+  }
+
+  public void publish(VirtualFile file, Collection<IssuePointer> issues) {
+    publish(file, issues, null);
+  }
+
+  /**
+   * Publishes the issues of the file after they were stored, and how they changed.
+   */
+  public void publish(IssueDelta delta) {
+    publish(delta.file(), delta.issues(), delta);
+  }
+
+  /**
+   * Publishes a change of the stored issues that isn't the result of an analysis, only on
+   * {@link IssueChangesListener#SONARLINT_ISSUE_CHANGES_TOPIC}.
+   */
+  public void publishChange(IssueDelta delta) {
+    synchronized (this) {
+      pendingDeltas.add(delta);
+      if (scheduled) {
+        return;
+      }
+      scheduled = true;
+    }
+    uiExecutor.execute(flush);
+  }
+
+  private void publish(VirtualFile file, Collection<IssuePointer> issues, @Nullable IssueDelta delta) {
+    Collection<IssuePointer> snapshot = ImmutableList.copyOf(issues);
+    synchronized (this) {
+      pending.put(file, snapshot);
+      if (delta != null) {
+        pendingDeltas.add(delta);
+      }
+      if (scheduled) {
+        return;
+      }
+      scheduled = true;
+    }
+    uiExecutor.execute(flush);
+  }
+
+  private void flush() {
+    Map<VirtualFile, Collection<IssuePointer>> toPublish;
+    List<IssueDelta> deltas;
+    synchronized (this) {
+      toPublish = ImmutableMap.copyOf(pending);
+      deltas = ImmutableList.copyOf(pendingDeltas);
+      pending = new LinkedHashMap<>();
+      pendingDeltas = new ArrayList<>();
+      scheduled = false;
+    }
+    if (!toPublish.isEmpty()) {
+      messageBus.syncPublisher(AnalysisResultsListener.SONARLINT_ANALYSIS_DONE_TOPIC).analysisDone(toPublish);
+    }
+    if (!deltas.isEmpty()) {
+      messageBus.syncPublisher(IssueChangesListener.SONARLINT_ISSUE_CHANGES_TOPIC).issuesChanged(deltas);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
+import org.sonarlint.intellij.core.ServerIssue;
+import org.sonarlint.intellij.core.ServerIssueStore;
+import org.sonarlint.intellij.issue.tracking.Input;
+import org.sonarlint.intellij.issue.tracking.Tracker;
+import org.sonarlint.intellij.issue.tracking.Tracking;
+
+/**
+ * In connected mode, tracks the issues found locally with the issues of the bound module on the server, as last downloaded.
+ * Issues that exist on the server get its creation date, and those resolved on the server are not reported.
+ */
+public class ServerIssueTracker extends AbstractProjectComponent {
+  private final SonarLintProjectSettings settings;
+  private final ServerIssueStore serverIssueStore;
+
+  public ServerIssueTracker(Project project, SonarLintProjectSettings settings, ServerIssueStore serverIssueStore) {
+    super(project);
+    this.settings = settings;
+    this.serverIssueStore = serverIssueStore;
+  }
+
+  /**
+   * Returns the issues of the file, analyzed in the given module, that are not resolved on the server.
+   * Doesn't need access to the server, nor a read action.
+   */
+  public List<IssuePointer> track(@Nullable Module module, VirtualFile file, List<IssuePointer> issues) {
+    if (issues.isEmpty() || module == null || !settings.isBindingEnabled() || settings.getServerId() == null || settings.getProjectKey() == null) {
+      return issues;
+    }
+    String path = relativePath(module, file);
+    if (path == null) {
+      return issues;
+    }
+    List<ServerIssue> serverIssues = serverIssueStore.getForFile(settings.getServerId(), settings.getProjectKey(), path);
+    if (serverIssues.isEmpty()) {
+      return issues;
+    }
+    return track(issues, serverIssues);
+  }
+
+  /**
+   * Path of the file relative to the content root of the module that contains it, as the paths of the components on the server.
+   */
+  @CheckForNull
+  private static String relativePath(Module module, VirtualFile file) {
+    for (VirtualFile root : ModuleRootManager.getInstance(module).getContentRoots()) {
+      if (VfsUtilCore.isAncestor(root, file, false)) {
+        return VfsUtilCore.getRelativePath(file, root, '/');
+      }
+    }
+    return null;
+  }
+
+  static List<IssuePointer> track(Collection<IssuePointer> issues, final Collection<ServerIssue> serverIssues) {
+    final List<TrackedIssue> trackedIssues = TrackedIssue.of(issues);
+    Tracking<TrackedIssue, ServerIssue> tracking = new Tracker<TrackedIssue, ServerIssue>(false).track(new Input<TrackedIssue>() {
+      @Override
+      public Collection<TrackedIssue> getIssues() {
+        return trackedIssues;
+      }
+    }, new Input<ServerIssue>() {
+      @Override
+      public Collection<ServerIssue> getIssues() {
+        return serverIssues;
+      }
+    });
+
+    Map<TrackedIssue, ServerIssue> matched = tracking.getMatchedRaws();
+    List<IssuePointer> kept = new ArrayList<>(issues.size());
+    for (TrackedIssue trackedIssue : trackedIssues) {
+      IssuePointer issue = trackedIssue.issue();
+      ServerIssue serverIssue = matched.get(trackedIssue);
+      if (serverIssue == null) {
+        kept.add(issue);
+      } else if (serverIssue.isResolved()) {
+        // don't keep a range marker for it
+        RangeMarker range = issue.range();
+        if (range != null) {
+          range.dispose();
+        }
+      } else {
+        issue.setCreationDate(serverIssue.getCreationDate());
+        issue.setServerIssueKey(serverIssue.getKey());
+        kept.add(issue);
+      }
+    }
+    return kept;
+  }
+}
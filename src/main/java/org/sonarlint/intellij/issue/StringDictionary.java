@@ -0,0 +1,75 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Assigns an int id to strings, so that they can be stored in primitive arrays. Ids are never reused, so it should
+ * only be used for strings with few distinct values, like rule keys.
+ */
+@ThreadSafe
+class StringDictionary {
+  private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+  private volatile String[] strings = new String[64];
+  @GuardedBy("this")
+  private int size = 0;
+
+  /**
+   * Id of the string, or -1 for null.
+   */
+  int id(@Nullable String str) {
+    if (str == null) {
+      return -1;
+    }
+    Integer id = ids.get(str);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      id = ids.get(str);
+      if (id != null) {
+        return id;
+      }
+      if (size == strings.length) {
+        strings = Arrays.copyOf(strings, size * 2);
+      }
+      strings[size] = str;
+      // the string is set before the id can be read by other threads
+      ids.put(str, size);
+      return size++;
+    }
+  }
+
+  @CheckForNull
+  String get(int id) {
+    return id < 0 ? null : strings[id];
+  }
+
+  int size() {
+    return ids.size();
+  }
+}
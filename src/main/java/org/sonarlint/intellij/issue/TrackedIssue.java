@@ -0,0 +1,104 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.Computable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+import org.sonarlint.intellij.issue.tracking.Trackable;
+
+/**
+ * What tracking reads of an {@link IssuePointer}, read at once. The location of an issue attached to a document can only be
+ * read consistently in a read action: it is taken in a short one, and issues are then tracked without holding the read lock.
+ */
+@Immutable
+class TrackedIssue implements Trackable {
+  private final IssuePointer issue;
+  private final Integer line;
+  private final int startOffset;
+  private final int endOffset;
+
+  private TrackedIssue(IssuePointer issue) {
+    this.issue = issue;
+    this.line = issue.getLine();
+    this.startOffset = issue.getStartOffset();
+    this.endOffset = issue.getEndOffset();
+  }
+
+  /**
+   * Reads the issues, in a read action if some of them are attached to a document.
+   */
+  static List<TrackedIssue> of(final Collection<IssuePointer> issues) {
+    Computable<List<TrackedIssue>> read = new Computable<List<TrackedIssue>>() {
+      @Override
+      public List<TrackedIssue> compute() {
+        List<TrackedIssue> tracked = new ArrayList<>(issues.size());
+        for (IssuePointer issue : issues) {
+          tracked.add(new TrackedIssue(issue));
+        }
+        return tracked;
+      }
+    };
+    for (IssuePointer issue : issues) {
+      if (issue.isAttached()) {
+        return ApplicationManager.getApplication().runReadAction(read);
+      }
+    }
+    return read.compute();
+  }
+
+  IssuePointer issue() {
+    return issue;
+  }
+
+  int getStartOffset() {
+    return startOffset;
+  }
+
+  int getEndOffset() {
+    return endOffset;
+  }
+
+  @CheckForNull
+  @Override
+  public Integer getLine() {
+    return line;
+  }
+
+  @Override
+  public String getMessage() {
+    return issue.getMessage();
+  }
+
+  @CheckForNull
+  @Override
+  public Integer getLineHash() {
+    return issue.getLineHash();
+  }
+
+  @Override
+  public String getRuleKey() {
+    return issue.getRuleKey();
+  }
+}
@@ -19,249 +19,256 @@
  */
 package org.sonarlint.intellij.issue.tracking;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import javax.annotation.Nullable;
 
+/**
+ * Matches raw issues with base issues, in several passes, from the most to the least precise criteria.
+ * The values used by the criteria are read once per issue, and each pass indexes the unmatched base issues by the
+ * hash of their key, without allocating a key object per issue.
+ */
 public class Tracker<RAW extends Trackable, BASE extends Trackable> {
+  private final boolean useLineHashes;
+
+  public Tracker() {
+    this(true);
+  }
+
+  /**
+   * @param useLineHashes false to match the issues only by rule, line and message, when the line hashes of the base
+   *                      issues are unknown. Otherwise a null line hash would equal the one of file-level issues.
+   */
+  public Tracker(boolean useLineHashes) {
+    this.useLineHashes = useLineHashes;
+  }
 
   public Tracking<RAW, BASE> track(Input<RAW> rawInput, Input<BASE> baseInput) {
     Tracking<RAW, BASE> tracking = new Tracking<>(rawInput, baseInput);
+    if (tracking.isComplete()) {
+      return tracking;
+    }
+    Keys rawKeys = new Keys(tracking.raws());
+    Keys baseKeys = new Keys(tracking.bases());
+
+    if (!useLineHashes) {
+      match(tracking, Level.LINE_AND_MESSAGE, rawKeys, baseKeys);
+      return tracking;
+    }
 
     // 1. match issues with same rule, same line and same line hash, but not necessarily with same message
-    match(tracking, LineAndLineHashKeyFactory.INSTANCE);
+    match(tracking, Level.LINE_AND_LINE_HASH, rawKeys, baseKeys);
 
     // 3. match issues with same rule, same message and same line hash
-    match(tracking, LineHashAndMessageKeyFactory.INSTANCE);
+    match(tracking, Level.LINE_HASH_AND_MESSAGE, rawKeys, baseKeys);
 
     // 4. match issues with same rule, same line and same message
-    match(tracking, LineAndMessageKeyFactory.INSTANCE);
+    match(tracking, Level.LINE_AND_MESSAGE, rawKeys, baseKeys);
 
     // 5. match issues with same rule and same line hash but different line and different message.
     // See SONAR-2812
-    match(tracking, LineHashKeyFactory.INSTANCE);
+    match(tracking, Level.LINE_HASH, rawKeys, baseKeys);
 
     return tracking;
   }
 
-  private void match(Tracking<RAW, BASE> tracking, SearchKeyFactory factory) {
+  private void match(Tracking<RAW, BASE> tracking, Level level, Keys rawKeys, Keys baseKeys) {
     if (tracking.isComplete()) {
       return;
     }
 
-    Map<SearchKey, List<BASE>> baseSearch = new HashMap<>();
-    for (BASE base : tracking.getUnmatchedBases()) {
-      SearchKey searchKey = factory.create(base);
-      if (!baseSearch.containsKey(searchKey)) {
-        baseSearch.put(searchKey, new ArrayList<BASE>());
+    Index index = new Index(baseKeys.size());
+    for (int base = 0; base < baseKeys.size(); base++) {
+      if (!tracking.isBaseMatched(base)) {
+        index.add(level.hash(baseKeys, base), base);
       }
-      baseSearch.get(searchKey).add(base);
     }
 
-    for (RAW raw : tracking.getUnmatchedRaws()) {
-      SearchKey rawKey = factory.create(raw);
-      Collection<BASE> bases = baseSearch.get(rawKey);
-      if (bases != null && !bases.isEmpty()) {
-        // TODO taking the first one. Could be improved if there are more than 2 issues on the same line.
-        // Message could be checked to take the best one.
-        BASE match = bases.iterator().next();
+    for (int raw = 0; raw < rawKeys.size(); raw++) {
+      if (tracking.isRawMatched(raw)) {
+        continue;
+      }
+      // TODO taking the first one. Could be improved if there are more than 2 issues on the same line.
+      // Message could be checked to take the best one.
+      int match = index.first(level, rawKeys, raw, baseKeys, tracking);
+      if (match >= 0) {
         tracking.match(raw, match);
-        baseSearch.get(rawKey).remove(match);
       }
     }
   }
 
-  private interface SearchKey {
-  }
-
-  private interface SearchKeyFactory {
-    SearchKey create(Trackable trackable);
-  }
-
-  private static class LineAndLineHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer lineHash;
-    private final Integer line;
-
-    LineAndLineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.line = trackable.getLine();
-      this.lineHash = trackable.getLineHash();
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
+  private enum Level {
+    LINE_AND_LINE_HASH {
+      @Override
+      int hash(Keys k, int i) {
+        return 31 * (31 * k.ruleHashes[i] + k.lineHashHashes[i]) + k.lineHashesOfLine[i];
       }
-      if (o == null) {
-        return false;
+
+      @Override
+      boolean equal(Keys k1, int i1, Keys k2, int i2) {
+        // start with most discriminant field
+        return Objects.equals(k1.lines[i1], k2.lines[i2])
+          && Objects.equals(k1.lineHashes[i1], k2.lineHashes[i2])
+          && Objects.equals(k1.ruleKeys[i1], k2.ruleKeys[i2]);
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+    },
+    LINE_HASH_AND_MESSAGE {
+      @Override
+      int hash(Keys k, int i) {
+        return 31 * (31 * k.ruleHashes[i] + k.messageHashes[i]) + k.lineHashHashes[i];
       }
-      LineAndLineHashKey that = (LineAndLineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && Objects.equals(lineHash, that.lineHash)
-        && ruleKey.equals(that.ruleKey);
-    }
-
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
-    }
-  }
-
-  private enum LineAndLineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineAndLineHashKey(t);
-    }
-  }
 
-  private static class LineHashAndMessageKey implements SearchKey {
-    private final String ruleKey;
-    private final String message;
-    private final Integer lineHash;
-
-    LineHashAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.lineHash = trackable.getLineHash();
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
+      @Override
+      boolean equal(Keys k1, int i1, Keys k2, int i2) {
+        return Objects.equals(k1.lineHashes[i1], k2.lineHashes[i2])
+          && Objects.equals(k1.messages[i1], k2.messages[i2])
+          && Objects.equals(k1.ruleKeys[i1], k2.ruleKeys[i2]);
       }
-      if (o == null) {
-        return false;
+    },
+    LINE_AND_MESSAGE {
+      @Override
+      int hash(Keys k, int i) {
+        return 31 * (31 * k.ruleHashes[i] + k.messageHashes[i]) + k.lineHashesOfLine[i];
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+
+      @Override
+      boolean equal(Keys k1, int i1, Keys k2, int i2) {
+        return Objects.equals(k1.lines[i1], k2.lines[i2])
+          && Objects.equals(k1.messages[i1], k2.messages[i2])
+          && Objects.equals(k1.ruleKeys[i1], k2.ruleKeys[i2]);
+      }
+    },
+    LINE_HASH {
+      @Override
+      int hash(Keys k, int i) {
+        return 31 * k.ruleHashes[i] + k.lineHashHashes[i];
       }
-      LineHashAndMessageKey that = (LineHashAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(lineHash, that.lineHash)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
-    }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
-      return result;
-    }
-  }
+      @Override
+      boolean equal(Keys k1, int i1, Keys k2, int i2) {
+        return Objects.equals(k1.lineHashes[i1], k2.lineHashes[i2])
+          && Objects.equals(k1.ruleKeys[i1], k2.ruleKeys[i2]);
+      }
+    };
 
-  private enum LineHashAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
+    abstract int hash(Keys k, int i);
 
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineHashAndMessageKey(t);
-    }
+    abstract boolean equal(Keys k1, int i1, Keys k2, int i2);
   }
 
-  private static class LineAndMessageKey implements SearchKey {
-    private final String ruleKey;
-    private final String message;
-    private final Integer line;
-
-    LineAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.line = trackable.getLine();
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null) {
-        return false;
+  /**
+   * Values of the issues used to match them, read once, and their hashes.
+   */
+  private static class Keys {
+    private final String[] ruleKeys;
+    private final Integer[] lines;
+    private final Integer[] lineHashes;
+    private final String[] messages;
+    private final int[] ruleHashes;
+    private final int[] lineHashesOfLine;
+    private final int[] lineHashHashes;
+    private final int[] messageHashes;
+
+    Keys(List<? extends Trackable> issues) {
+      int size = issues.size();
+      ruleKeys = new String[size];
+      lines = new Integer[size];
+      lineHashes = new Integer[size];
+      messages = new String[size];
+      ruleHashes = new int[size];
+      lineHashesOfLine = new int[size];
+      lineHashHashes = new int[size];
+      messageHashes = new int[size];
+
+      for (int i = 0; i < size; i++) {
+        Trackable t = issues.get(i);
+        ruleKeys[i] = t.getRuleKey();
+        lines[i] = t.getLine();
+        lineHashes[i] = t.getLineHash();
+        messages[i] = t.getMessage();
+        ruleHashes[i] = hashCode(ruleKeys[i]);
+        lineHashesOfLine[i] = hashCode(lines[i]);
+        lineHashHashes[i] = hashCode(lineHashes[i]);
+        messageHashes[i] = hashCode(messages[i]);
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
-      }
-      LineAndMessageKey that = (LineAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+    int size() {
+      return ruleKeys.length;
     }
-  }
-
-  private enum LineAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
 
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineAndMessageKey(t);
+    private static int hashCode(@Nullable Object o) {
+      return o == null ? 0 : o.hashCode();
     }
   }
 
-  private static class LineHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer lineHash;
-
-    LineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.lineHash = trackable.getLineHash();
+  /**
+   * Base issues, in their original order, chained per hash in an open addressing table.
+   */
+  private static class Index {
+    private final boolean[] used;
+    private final int[] slotHashes;
+    private final int[] heads;
+    private final int[] tails;
+    private final int[] next;
+    private final int mask;
+
+    Index(int size) {
+      int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+      used = new boolean[capacity];
+      slotHashes = new int[capacity];
+      heads = new int[capacity];
+      tails = new int[capacity];
+      Arrays.fill(heads, -1);
+      next = new int[size];
+      mask = capacity - 1;
     }
 
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
+    void add(int hash, int issue) {
+      int slot = slot(hash);
+      next[issue] = -1;
+      if (!used[slot]) {
+        used[slot] = true;
+        slotHashes[slot] = hash;
+        heads[slot] = issue;
+      } else if (heads[slot] < 0) {
+        heads[slot] = issue;
+      } else {
+        next[tails[slot]] = issue;
       }
-      if (o == null) {
-        return false;
+      tails[slot] = issue;
+    }
+
+    /**
+     * First base issue, in the original order, not matched yet and with the same key as the raw issue, or -1.
+     */
+    <RAW extends Trackable, BASE extends Trackable> int first(Level level, Keys rawKeys, int raw, Keys baseKeys, Tracking<RAW, BASE> tracking) {
+      int hash = level.hash(rawKeys, raw);
+      int slot = slot(hash);
+      // skip the base issues already matched at the beginning of the chain once and for all
+      while (heads[slot] >= 0 && tracking.isBaseMatched(heads[slot])) {
+        heads[slot] = next[heads[slot]];
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+      for (int base = heads[slot]; base >= 0; base = next[base]) {
+        if (!tracking.isBaseMatched(base) && level.equal(rawKeys, raw, baseKeys, base)) {
+          return base;
+        }
       }
-      LineHashKey that = (LineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(lineHash, that.lineHash)
-        && ruleKey.equals(that.ruleKey);
+      return -1;
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
-      return result;
+    private int slot(int hash) {
+      int slot = mix(hash) & mask;
+      while (used[slot] && slotHashes[slot] != hash) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
     }
-  }
-
-  private enum LineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
 
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineHashKey(t);
+    private static int mix(int hash) {
+      int h = hash * 0x9E3779B9;
+      return h ^ (h >>> 16);
     }
   }
 }
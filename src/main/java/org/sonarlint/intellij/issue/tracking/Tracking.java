@@ -20,74 +20,101 @@
 package org.sonarlint.intellij.issue.tracking;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class Tracking<RAW extends Trackable, BASE extends Trackable> {
 
+  private final List<RAW> raws;
+  private final List<BASE> bases;
+
   /**
-   * Matched issues -> a raw issue is associated to a base issue
+   * Matched issues -> index of the base issue associated to each raw issue, or -1
    */
-  private final IdentityHashMap<RAW, BASE> rawToBase = new IdentityHashMap<>();
-  private final IdentityHashMap<BASE, RAW> baseToRaw = new IdentityHashMap<>();
-
-  private final Collection<RAW> raws;
-  private final Collection<BASE> bases;
+  private final int[] rawToBase;
+  private final boolean[] baseMatched;
+  private int matchCount = 0;
+  private Map<RAW, BASE> matchedRaws;
 
   public Tracking(Input<RAW> rawInput, Input<BASE> baseInput) {
-    this.raws = rawInput.getIssues();
-    this.bases = baseInput.getIssues();
+    this.raws = new ArrayList<>(rawInput.getIssues());
+    this.bases = new ArrayList<>(baseInput.getIssues());
+    this.rawToBase = new int[raws.size()];
+    Arrays.fill(rawToBase, -1);
+    this.baseMatched = new boolean[bases.size()];
   }
 
   /**
    * Returns an Iterable to be traversed when matching issues. That means
-   * that the traversal does not fail if method {@link #match(Trackable, Trackable)}
+   * that the traversal does not fail if method {@link #match(int, int)}
    * is called.
    */
   public Iterable<RAW> getUnmatchedRaws() {
-    List<RAW> result = new ArrayList<>();
-    for (RAW r : raws) {
-      if (!rawToBase.containsKey(r)) {
-        result.add(r);
+    List<RAW> result = new ArrayList<>(raws.size() - matchCount);
+    for (int i = 0; i < rawToBase.length; i++) {
+      if (rawToBase[i] < 0) {
+        result.add(raws.get(i));
       }
     }
     return result;
   }
 
   public Map<RAW, BASE> getMatchedRaws() {
-    return rawToBase;
+    if (matchedRaws == null) {
+      matchedRaws = new IdentityHashMap<>(matchCount);
+      for (int i = 0; i < rawToBase.length; i++) {
+        if (rawToBase[i] >= 0) {
+          matchedRaws.put(raws.get(i), bases.get(rawToBase[i]));
+        }
+      }
+    }
+    return matchedRaws;
   }
 
   public BASE baseFor(RAW raw) {
-    return rawToBase.get(raw);
+    return getMatchedRaws().get(raw);
   }
 
   /**
    * The base issues that are not matched by a raw issue and that need to be closed.
    */
   public Iterable<BASE> getUnmatchedBases() {
-    List<BASE> result = new ArrayList<>();
-    for (BASE b : bases) {
-      if (!baseToRaw.containsKey(b)) {
-        result.add(b);
+    List<BASE> result = new ArrayList<>(bases.size() - matchCount);
+    for (int i = 0; i < baseMatched.length; i++) {
+      if (!baseMatched[i]) {
+        result.add(bases.get(i));
       }
     }
     return result;
   }
 
-  boolean containsUnmatchedBase(BASE base) {
-    return !baseToRaw.containsKey(base);
+  List<RAW> raws() {
+    return raws;
+  }
+
+  List<BASE> bases() {
+    return bases;
+  }
+
+  boolean isRawMatched(int raw) {
+    return rawToBase[raw] >= 0;
+  }
+
+  boolean isBaseMatched(int base) {
+    return baseMatched[base];
   }
 
-  void match(RAW raw, BASE base) {
-    rawToBase.put(raw, base);
-    baseToRaw.put(base, raw);
+  void match(int raw, int base) {
+    rawToBase[raw] = base;
+    baseMatched[base] = true;
+    matchCount++;
+    matchedRaws = null;
   }
 
   boolean isComplete() {
-    return rawToBase.size() == raws.size();
+    return matchCount == raws.size() || matchCount == bases.size();
   }
 
 }
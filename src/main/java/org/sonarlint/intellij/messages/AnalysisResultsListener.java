@@ -28,5 +28,10 @@ import org.sonarlint.intellij.issue.IssuePointer;
 public interface AnalysisResultsListener {
   Topic<AnalysisResultsListener> SONARLINT_ANALYSIS_DONE_TOPIC = Topic.create("SonarLint New Issues", AnalysisResultsListener.class);
 
+  /**
+   * Called in the EDT with an immutable snapshot of the latest issues of each file. Results of several analyses can be
+   * merged in a single call.
+   * See {@link IssueChangesListener} to only get what changed.
+   */
   void analysisDone(Map<VirtualFile, Collection<IssuePointer>> issuesPerFile);
 }
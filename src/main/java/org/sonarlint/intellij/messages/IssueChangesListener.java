@@ -17,22 +17,18 @@
  * License along with this program; if not, write to the Free Software
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
  */
-package org.sonarlint.intellij.editor;
+package org.sonarlint.intellij.messages;
 
-import java.util.LinkedList;
+import com.intellij.util.messages.Topic;
 import java.util.List;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+import org.sonarlint.intellij.issue.IssueDelta;
 
-public class AccumulatorIssueListener implements IssueListener {
-  private final List<Issue> issues = new LinkedList<>();
+public interface IssueChangesListener {
+  Topic<IssueChangesListener> SONARLINT_ISSUE_CHANGES_TOPIC = Topic.create("SonarLint issue changes", IssueChangesListener.class);
 
-  public List<Issue> getIssues() {
-    return issues;
-  }
-
-  @Override
-  public void handle(Issue issue) {
-    issues.add(issue);
-  }
+  /**
+   * Called in the EDT with the changes of the issues of files, in the order in which they were stored.
+   * There can be several deltas for the same file, and deltas in which nothing visible changed.
+   */
+  void issuesChanged(List<IssueDelta> deltas);
 }
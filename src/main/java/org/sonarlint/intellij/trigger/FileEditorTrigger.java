@@ -22,6 +22,8 @@ package org.sonarlint.intellij.trigger;
 import com.intellij.openapi.application.AccessToken;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
 import com.intellij.openapi.fileEditor.FileEditorManagerListener;
@@ -59,6 +61,12 @@ public class FileEditorTrigger extends AbstractProjectComponent implements FileE
    * So on startup, opened files will be submitted one by one.
    */
   public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+    store.touch(file);
+    Document document = FileDocumentManager.getInstance().getDocument(file);
+    if (document != null) {
+      store.attach(file, document);
+    }
+
     if (!globalSettings.isAutoTrigger()) {
       return;
     }
@@ -73,7 +81,8 @@ public class FileEditorTrigger extends AbstractProjectComponent implements FileE
 
   @Override
   /**
-   * Removes issues from the store that are located in the file that was closed.
+   * Detaches the issues of the file that was closed from its document, and discards the issues of the least recently
+   * used files if the store is over its memory budget.
    */
   public void fileClosed(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
     if (myProject.isDisposed()) {
@@ -83,7 +92,8 @@ public class FileEditorTrigger extends AbstractProjectComponent implements FileE
 
     AccessToken token = ReadAction.start();
     try {
-      store.clean(file);
+      store.detach(file);
+      store.evictIfNeeded();
     } finally {
       token.finish();
     }
@@ -91,6 +101,9 @@ public class FileEditorTrigger extends AbstractProjectComponent implements FileE
 
   @Override
   public void selectionChanged(@NotNull FileEditorManagerEvent event) {
-    // nothing to do
+    VirtualFile file = event.getNewFile();
+    if (file != null) {
+      store.touch(file);
+    }
   }
 }
@@ -28,13 +28,11 @@ import com.intellij.openapi.actionSystem.ActionToolbar;
 import com.intellij.openapi.actionSystem.DefaultActionGroup;
 import com.intellij.openapi.actionSystem.IdeActions;
 import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.ComboBox;
 import com.intellij.openapi.ui.SimpleToolWindowPanel;
 import com.intellij.openapi.ui.Splitter;
-import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.PopupHandler;
 import com.intellij.ui.ScrollPaneFactory;
 import com.intellij.ui.treeStructure.Tree;
@@ -50,8 +48,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.util.Collection;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.Box;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JComponent;
@@ -67,9 +65,9 @@ import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
 import org.sonarlint.intellij.analysis.SonarLintStatus;
 import org.sonarlint.intellij.core.SonarLintServerManager;
-import org.sonarlint.intellij.issue.IssuePointer;
+import org.sonarlint.intellij.issue.IssueDelta;
 import org.sonarlint.intellij.issue.IssueStore;
-import org.sonarlint.intellij.messages.AnalysisResultsListener;
+import org.sonarlint.intellij.messages.IssueChangesListener;
 import org.sonarlint.intellij.messages.StatusListener;
 import org.sonarlint.intellij.ui.nodes.AbstractNode;
 import org.sonarlint.intellij.ui.nodes.IssueNode;
@@ -92,6 +90,8 @@ public class SonarLintIssuesPanel extends SimpleToolWindowPanel implements Occur
   private ActionToolbar mainToolbar;
   private IssueTreeScope scope;
   private TreeModelBuilder treeBuilder;
+  // version of the store with which the tree was fully built, to skip results that it already includes
+  private long treeVersion = -1;
   private SonarLintRulePanel rulePanel;
 
   public SonarLintIssuesPanel(Project project) {
@@ -118,13 +118,18 @@ public class SonarLintIssuesPanel extends SimpleToolWindowPanel implements Occur
     super.setContent(createSplitter(issuesPanel, scrollableRulePanel));
 
     MessageBusConnection busConnection = project.getMessageBus().connect(project);
-    busConnection.subscribe(AnalysisResultsListener.SONARLINT_ANALYSIS_DONE_TOPIC, new AnalysisResultsListener() {
-      @Override public void analysisDone(final Map<VirtualFile, Collection<IssuePointer>> issuesPerFile) {
-        ApplicationManager.getApplication().invokeLater(new Runnable() {
-          @Override public void run() {
-            treeBuilder.updateFiles(issuesPerFile);
+    busConnection.subscribe(IssueChangesListener.SONARLINT_ISSUE_CHANGES_TOPIC, new IssueChangesListener() {
+      @Override public void issuesChanged(List<IssueDelta> deltas) {
+        // already in the EDT, see ResultsPublisher. Changes stored before the tree was built are already in it.
+        List<IssueDelta> newer = new ArrayList<>(deltas.size());
+        for (IssueDelta delta : deltas) {
+          if (delta.storeVersion() > treeVersion) {
+            newer.add(delta);
           }
-        });
+        }
+        if (!newer.isEmpty()) {
+          treeBuilder.applyDeltas(newer);
+        }
       }
     });
     busConnection.subscribe(StatusListener.SONARLINT_STATUS_TOPIC, new StatusListener() {
@@ -226,7 +231,10 @@ public class SonarLintIssuesPanel extends SimpleToolWindowPanel implements Occur
   }
 
   public void updateTree() {
-    treeBuilder.updateModel(issueStore.getAll(), scope.getCondition());
+    IssueStore.Snapshot snapshot = issueStore.getSnapshot();
+    treeBuilder.updateModel(snapshot.issues(), scope.getCondition());
+    treeBuilder.setSummaryStore(scope.isWholeProject() ? issueStore : null);
+    treeVersion = snapshot.version();
     tree.expandRow(0);
     if (tree.getRowCount() > 1) {
       tree.expandRow(1);
@@ -236,7 +244,7 @@ public class SonarLintIssuesPanel extends SimpleToolWindowPanel implements Occur
   private void issueTreeSelectionChanged() {
     IssueNode[] selectedNodes = tree.getSelectedNodes(IssueNode.class, null);
     if (selectedNodes.length > 0) {
-      rulePanel.setRuleKey(selectedNodes[0].issue().issue());
+      rulePanel.setRuleKey(selectedNodes[0].issue());
     } else {
       rulePanel.setRuleKey(null);
     }
@@ -276,10 +284,8 @@ public class SonarLintIssuesPanel extends SimpleToolWindowPanel implements Occur
     tree.getSelectionModel().setSelectionPath(path);
     tree.scrollPathToVisible(path);
 
-    RangeMarker range = node.issue().range();
-    int startOffset = (range != null) ? range.getStartOffset() : 0;
     return new OccurenceInfo(
-      new OpenFileDescriptor(project, node.issue().psiFile().getVirtualFile(), startOffset),
+      new OpenFileDescriptor(project, node.issue().file(), node.issue().getStartOffset()),
       -1,
       -1);
   }
@@ -39,7 +39,7 @@ import javax.swing.text.html.HTMLEditorKit;
 import javax.swing.text.html.StyleSheet;
 import org.jetbrains.annotations.Nullable;
 import org.sonarlint.intellij.core.SonarLintServerManager;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarlint.intellij.issue.IssuePointer;
 
 public class SonarLintRulePanel {
   private final Project project;
@@ -62,7 +62,7 @@ public class SonarLintRulePanel {
     show();
   }
 
-  public void setRuleKey(@Nullable Issue issue) {
+  public void setRuleKey(@Nullable IssuePointer issue) {
     if (issue == null) {
       nothingToDisplay(false);
     } else {
@@ -20,9 +20,6 @@
 package org.sonarlint.intellij.ui.nodes;
 
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.editor.Document;
-import com.intellij.openapi.editor.RangeMarker;
-import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.ui.ColoredTreeCellRenderer;
 import com.intellij.ui.SimpleTextAttributes;
 import java.io.IOException;
@@ -33,25 +30,25 @@ import org.sonarlint.intellij.util.SonarLintUtils;
 
 public class IssueNode extends AbstractNode {
   private static final Logger LOGGER = Logger.getInstance(IssueNode.class);
-  private final IssuePointer issue;
+  private IssuePointer issue;
 
   public IssueNode(IssuePointer issue) {
     this.issue = issue;
   }
 
   @Override public void render(ColoredTreeCellRenderer renderer) {
-    String severity = issue.issue().getSeverity();
+    String severity = issue.getSeverity();
 
     if (severity != null) {
       try {
-        renderer.setIcon(ResourceLoader.getSeverityIcon(issue.issue().getSeverity()));
+        renderer.setIcon(ResourceLoader.getSeverityIcon(issue.getSeverity()));
       } catch (IOException e) {
         LOGGER.error("Couldn't load icon for severity: " + severity, e);
       }
     }
     renderer.append(issueCoordinates(issue), SimpleTextAttributes.GRAY_ATTRIBUTES);
 
-    renderer.append(issue.issue().getMessage());
+    renderer.append(issue.getMessage());
 
     renderer.append(" ");
 
@@ -70,15 +67,18 @@ public class IssueNode extends AbstractNode {
     return issue;
   }
 
+  /**
+   * Replaces the issue by a newer instance of it, that looks the same.
+   */
+  public void setIssue(IssuePointer issue) {
+    this.issue = issue;
+  }
+
   private static String issueCoordinates(@Nonnull IssuePointer issue) {
-    RangeMarker range = issue.range();
-    if (range == null) {
+    if (issue.isFileLevel()) {
       return "(0, 0) ";
     }
 
-    Document doc = FileDocumentManager.getInstance().getDocument(issue.psiFile().getVirtualFile());
-    int line = doc.getLineNumber(range.getStartOffset());
-    int offset = range.getStartOffset() - doc.getLineStartOffset(line);
-    return String.format("(%d, %d) ", line, offset);
+    return String.format("(%d, %d) ", issue.getLine(), issue.getColumn());
   }
 }
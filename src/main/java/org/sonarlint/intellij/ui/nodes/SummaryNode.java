@@ -20,14 +20,27 @@
 package org.sonarlint.intellij.ui.nodes;
 
 import com.intellij.ui.ColoredTreeCellRenderer;
+import javax.annotation.Nullable;
+import org.sonarlint.intellij.issue.IssueStore;
 
 public class SummaryNode extends AbstractNode {
+  @Nullable
+  private IssueStore store;
+
   public SummaryNode() {
     super();
   }
 
+  /**
+   * When the tree shows the issues of all files, the number of issues is read from the counts kept by the store
+   * instead of going through the nodes.
+   */
+  public void setStore(@Nullable IssueStore store) {
+    this.store = store;
+  }
+
   public String getText() {
-    int issues = getIssueCount();
+    long issues = store != null ? store.getIssueCount() : getIssueCount();
     int files = getChildCount();
 
     if (issues == 0) {
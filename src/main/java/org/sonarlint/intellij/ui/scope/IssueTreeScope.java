@@ -42,6 +42,13 @@ public abstract class IssueTreeScope {
     return condition;
   }
 
+  /**
+   * Whether the condition accepts all the files of the project.
+   */
+  public boolean isWholeProject() {
+    return false;
+  }
+
   public interface ScopeListener {
     void conditionChanged();
   }
@@ -31,6 +31,10 @@ public class ProjectScope extends IssueTreeScope {
     return "Project";
   }
 
+  @Override public boolean isWholeProject() {
+    return true;
+  }
+
   private static class ProjectCondition implements Condition<VirtualFile> {
     @Override public boolean value(VirtualFile virtualFile) {
       return true;
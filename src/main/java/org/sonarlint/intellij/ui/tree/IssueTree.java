@@ -21,7 +21,6 @@ package org.sonarlint.intellij.ui.tree;
 
 import com.intellij.openapi.actionSystem.CommonDataKeys;
 import com.intellij.openapi.actionSystem.DataProvider;
-import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.ui.treeStructure.Tree;
@@ -55,15 +54,7 @@ public class IssueTree extends Tree implements DataProvider {
         return null;
       }
       IssuePointer issue = ((IssueNode) node).issue();
-      int offset;
-
-      RangeMarker range = issue.range();
-      if (range != null) {
-        offset = range.getStartOffset();
-      } else {
-        offset = 0;
-      }
-      return new OpenFileDescriptor(project, issue.psiFile().getVirtualFile(), offset);
+      return new OpenFileDescriptor(project, issue.file(), issue.getStartOffset());
     }
 
     return null;
@@ -21,20 +21,27 @@ package org.sonarlint.intellij.ui.tree;
 
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
 import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeNode;
+import org.sonarlint.intellij.issue.IssueDelta;
 import org.sonarlint.intellij.issue.IssuePointer;
+import org.sonarlint.intellij.issue.IssueStore;
 import org.sonarlint.intellij.ui.nodes.AbstractNode;
 import org.sonarlint.intellij.ui.nodes.FileNode;
 import org.sonarlint.intellij.ui.nodes.IssueNode;
@@ -52,14 +59,97 @@ public class TreeModelBuilder {
   private SummaryNode summary;
   private IssueTreeIndex index;
   private Condition<VirtualFile> condition;
+  // last delta applied to each file since the model was updated
+  private final Map<VirtualFile, IssueDelta> applied = new HashMap<>();
 
   public TreeModelBuilder() {
     this.index = new IssueTreeIndex();
   }
 
+  /**
+   * Applies the changes of the issues of files, in order. If the tree shows the issues to which a delta applies, only
+   * the nodes of the issues that were added, removed or moved are changed. Otherwise all the issues of the file are set.
+   */
+  public void applyDeltas(List<IssueDelta> deltas) {
+    for (IssueDelta delta : deltas) {
+      VirtualFile file = delta.file();
+      IssueDelta last = applied.get(file);
+      if (last != null && delta.storeVersion() <= last.storeVersion()) {
+        // older than what is shown
+        continue;
+      }
+      FileNode node = index.getFileNode(file);
+      if (last != null && last.version() == delta.previousVersion() && node != null && accept(file, condition)) {
+        applyDelta(node, delta);
+      } else {
+        setFileIssues(file, delta.issues(), condition);
+      }
+      applied.put(file, delta);
+    }
+
+    model.nodeChanged(summary);
+  }
+
+  private void applyDelta(FileNode node, IssueDelta delta) {
+    Set<IssuePointer> toRemove = new HashSet<>();
+    toRemove.addAll(delta.removed());
+    toRemove.addAll(delta.moved().keySet());
+
+    List<Integer> removedIndexes = new ArrayList<>();
+    List<Object> removedNodes = new ArrayList<>();
+    for (int i = 0; i < node.getChildCount(); i++) {
+      IssueNode child = (IssueNode) node.getChildAt(i);
+      if (toRemove.contains(child.issue())) {
+        removedIndexes.add(i);
+        removedNodes.add(child);
+      } else {
+        // tracked issues that look the same keep their node
+        IssuePointer current = delta.tracked().get(child.issue());
+        if (current != null) {
+          child.setIssue(current);
+        }
+      }
+    }
+    if (!removedIndexes.isEmpty()) {
+      for (int i = removedIndexes.size() - 1; i >= 0; i--) {
+        node.remove(removedIndexes.get(i));
+      }
+      model.nodesWereRemoved(node, Ints.toArray(removedIndexes), removedNodes.toArray());
+    }
+
+    for (IssuePointer issue : Iterables.concat(delta.added(), delta.moved().values())) {
+      if (accept(issue)) {
+        int idx = insertIdx(node, issue);
+        node.insert(new IssueNode(issue), idx);
+        model.nodesWereInserted(node, new int[] {idx});
+      }
+    }
+
+    if (node.getChildCount() == 0) {
+      removeFile(node.file());
+    } else {
+      model.nodeChanged(node);
+    }
+  }
+
+  private static int insertIdx(FileNode node, IssuePointer issue) {
+    int low = 0;
+    int high = node.getChildCount();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (ISSUE_COMPARATOR.compare(((IssueNode) node.getChildAt(mid)).issue(), issue) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
   public void updateFiles(Map<VirtualFile, Collection<IssuePointer>> issuesPerFile) {
     for (Map.Entry<VirtualFile, Collection<IssuePointer>> e : issuesPerFile.entrySet()) {
       setFileIssues(e.getKey(), e.getValue(), condition);
+      applied.remove(e.getKey());
     }
 
     model.nodeChanged(summary);
@@ -178,8 +268,17 @@ public class TreeModelBuilder {
     return summary;
   }
 
+  /**
+   * Sets the store whose counts the summary shows, or null to count the issues in the tree.
+   */
+  public void setSummaryStore(@Nullable IssueStore store) {
+    summary.setStore(store);
+    model.nodeChanged(summary);
+  }
+
   public DefaultTreeModel updateModel(Map<VirtualFile, Collection<IssuePointer>> map, @Nullable Condition<VirtualFile> condition) {
     this.condition = condition;
+    applied.clear();
 
     for (VirtualFile f : index.getAllFiles()) {
       if (!map.containsKey(f)) {
@@ -309,17 +408,17 @@ public class TreeModelBuilder {
         return -dateCompare;
       }
 
-      int severityCompare = Ordering.explicit(SEVERITY_ORDER).compare(o1.issue().getSeverity(), o2.issue().getSeverity());
+      int severityCompare = Ordering.explicit(SEVERITY_ORDER).compare(o1.getSeverity(), o2.getSeverity());
 
       if (severityCompare != 0) {
         return severityCompare;
       }
 
-      int rangeStart1 = (o1.range() == null) ? -1 : o1.range().getStartOffset();
-      int rangeStart2 = (o2.range() == null) ? -1 : o2.range().getStartOffset();
+      int rangeStart1 = o1.isFileLevel() ? -1 : o1.getStartOffset();
+      int rangeStart2 = o2.isFileLevel() ? -1 : o2.getStartOffset();
 
       return ComparisonChain.start()
-        .compare(o1.issue().getRuleName(), o2.issue().getRuleName())
+        .compare(o1.getRuleName(), o2.getRuleName())
         .compare(rangeStart1, rangeStart2)
         .compare(o1.uid(), o2.uid())
         .result();
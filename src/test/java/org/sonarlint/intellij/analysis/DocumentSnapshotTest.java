@@ -0,0 +1,86 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.editor.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DocumentSnapshotTest {
+  private Document doc;
+  private DocumentSnapshot snapshot;
+
+  @Before
+  public void setUp() {
+    doc = mock(Document.class);
+    when(doc.getModificationStamp()).thenReturn(1L);
+    snapshot = new DocumentSnapshot(doc, 1L, "0123456789");
+  }
+
+  @Test
+  public void testUnmodified() {
+    assertThat(snapshot.isCurrent()).isTrue();
+    assertThat(snapshot.translateStart(5)).isEqualTo(5);
+    assertThat(snapshot.translateEnd(5)).isEqualTo(5);
+
+    when(doc.getModificationStamp()).thenReturn(2L);
+    assertThat(snapshot.isCurrent()).isFalse();
+  }
+
+  @Test
+  public void testInsertion() {
+    // 3 chars inserted at offset 4
+    snapshot.record(4, 0, 3);
+    assertThat(snapshot.isCurrent()).isFalse();
+
+    assertThat(snapshot.translateStart(2)).isEqualTo(2);
+    assertThat(snapshot.translateStart(4)).isEqualTo(7);
+    assertThat(snapshot.translateEnd(4)).isEqualTo(4);
+    assertThat(snapshot.translateEnd(6)).isEqualTo(9);
+  }
+
+  @Test
+  public void testReplacement() {
+    // chars 3 to 6 replaced by a single char
+    snapshot.record(3, 3, 1);
+
+    assertThat(snapshot.translateStart(3)).isEqualTo(3);
+    assertThat(snapshot.translateStart(4)).isEqualTo(3);
+    assertThat(snapshot.translateEnd(5)).isEqualTo(4);
+    assertThat(snapshot.translateStart(8)).isEqualTo(6);
+    assertThat(snapshot.translateEnd(8)).isEqualTo(6);
+  }
+
+  @Test
+  public void testSuccessiveEdits() {
+    for (int i = 0; i < 10; i++) {
+      snapshot.record(0, 0, 1);
+    }
+    snapshot.record(15, 1, 0);
+
+    assertThat(snapshot.translateStart(2)).isEqualTo(12);
+    assertThat(snapshot.translateStart(6)).isEqualTo(15);
+    assertThat(snapshot.translateStart(9)).isEqualTo(18);
+  }
+}
@@ -21,7 +21,6 @@ package org.sonarlint.intellij.analysis;
 
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.vfs.VirtualFile;
-import java.util.ArrayList;
 import java.util.HashSet;
 import org.junit.Before;
 import org.junit.Test;
@@ -29,22 +28,23 @@ import org.sonarlint.intellij.SonarTest;
 import org.sonarlint.intellij.issue.IssueProcessor;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.ui.SonarLintConsole;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
-import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class SonarLintTaskTest extends SonarTest {
   private SonarLintTask task;
   private IssueProcessor processor;
+  private IssueProcessor.Batch batch;
   private HashSet<VirtualFile> files;
   private ProgressIndicator progress;
   private SonarLintAnalyzer.SonarLintJob job;
@@ -60,6 +60,8 @@ public class SonarLintTaskTest extends SonarTest {
     progress = mock(ProgressIndicator.class);
     when(progress.isCanceled()).thenReturn(false);
     processor = mock(IssueProcessor.class);
+    batch = mock(IssueProcessor.Batch.class);
+    when(processor.startBatch(job)).thenReturn(batch);
     SonarLintConsole console = mock(SonarLintConsole.class);
     task = SonarLintTask.createBackground(processor, job);
     configurator = mock(SonarLintAnalysisConfigurator.class);
@@ -80,7 +82,8 @@ public class SonarLintTaskTest extends SonarTest {
     task.run(progress);
 
     verify(configurator).analyzeModule(eq(module), eq(job.files()), any(IssueListener.class));
-    verify(processor).process(job, new ArrayList<Issue>());
+    verify(processor).startBatch(job);
+    verify(batch).finish(0);
     verify(listener).ended(job);
 
     verifyNoMoreInteractions(configurator);
@@ -97,7 +100,7 @@ public class SonarLintTaskTest extends SonarTest {
     task.run(progress);
 
     // never called because of error
-    verifyZeroInteractions(processor);
+    verify(batch, never()).finish(anyInt());
 
     // still called
     verify(listener).ended(job);
@@ -0,0 +1,97 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.google.common.collect.ImmutableSet;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LanguagePluginsTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private LanguagePlugins plugins;
+
+  @Before
+  public void setUp() throws IOException {
+    Path dir = temp.newFolder().toPath();
+    Files.createFile(dir.resolve("sonar-java-plugin-3.12.jar"));
+    Files.createFile(dir.resolve("sonar-javascript-plugin-2.11.jar"));
+    Files.createFile(dir.resolve("sonar-php-plugin-2.8.jar"));
+    Files.createFile(dir.resolve("sonar-other-plugin-1.0.jar"));
+    plugins = LanguagePlugins.load(dir, mock(LogOutput.class));
+  }
+
+  @Test
+  public void testLanguagesOfPlugins() {
+    assertThat(plugins.languages()).containsOnly("java", "javascript", "php");
+    assertThat(LanguagePlugins.languageOfPlugin("sonar-java-plugin-3.12.jar")).isEqualTo("java");
+    assertThat(LanguagePlugins.languageOfPlugin("foo.jar")).isNull();
+  }
+
+  @Test
+  public void testLanguagesOfFiles() {
+    assertThat(plugins.languagesOf(Arrays.asList(file("Foo.java"), file("Bar.JAVA")))).containsOnly("java");
+    assertThat(plugins.languagesOf(Arrays.asList(file("index.php"), file("app.js"), file("README")))).containsOnly("php", "javascript");
+    assertThat(plugins.languagesOf(Arrays.asList(file("pom.xml")))).isEmpty();
+  }
+
+  @Test
+  public void testExtensionsIgnoreDefaultLocale() {
+    Locale defaultLocale = Locale.getDefault();
+    Locale.setDefault(new Locale("tr", "TR"));
+    try {
+      assertThat(plugins.languagesOf(Arrays.asList(file("CONFIG.INC")))).containsOnly("php");
+    } finally {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+
+  @Test
+  public void testPluginsFor() {
+    URL[] urls = plugins.pluginsFor(ImmutableSet.of("java"));
+    assertThat(urls).hasSize(2);
+    assertThat(urls[0].getPath()).endsWith("sonar-other-plugin-1.0.jar");
+    assertThat(urls[1].getPath()).endsWith("sonar-java-plugin-3.12.jar");
+
+    assertThat(plugins.pluginsFor(ImmutableSet.<String>of())).hasSize(1);
+    assertThat(plugins.pluginsFor(plugins.languages())).hasSize(4);
+  }
+
+  private static VirtualFile file(String name) {
+    VirtualFile f = mock(VirtualFile.class);
+    when(f.getName()).thenReturn(name);
+    return f;
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class PluginCacheTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Path pluginsDir;
+  private Path cacheDir;
+  private PluginCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    pluginsDir = temp.newFolder().toPath();
+    cacheDir = temp.newFolder().toPath();
+    Files.write(pluginsDir.resolve("sonar-java-plugin-3.12.jar"), "java".getBytes(StandardCharsets.UTF_8));
+    Files.write(pluginsDir.resolve("sonar-php-plugin-2.8.jar"), "php".getBytes(StandardCharsets.UTF_8));
+    cache = new PluginCache(cacheDir, mock(LogOutput.class));
+  }
+
+  @Test
+  public void testCopyToCache() throws IOException {
+    List<Path> plugins = cache.get(pluginsDir);
+
+    assertThat(plugins).hasSize(2);
+    for (Path p : plugins) {
+      assertThat(p.startsWith(cacheDir)).isTrue();
+      assertThat(Files.exists(p)).isTrue();
+    }
+    assertThat(Files.exists(cacheDir.resolve(PluginCache.INDEX_FILE))).isTrue();
+  }
+
+  @Test
+  public void testReuseCache() throws IOException {
+    List<Path> cold = cache.get(pluginsDir);
+    FileTime copyTime = Files.getLastModifiedTime(cold.get(0));
+
+    // a new instance, as after an IDE restart
+    List<Path> warm = new PluginCache(cacheDir, mock(LogOutput.class)).get(pluginsDir);
+    assertThat(warm).containsOnly(cold.toArray(new Path[cold.size()]));
+    assertThat(Files.getLastModifiedTime(warm.get(warm.indexOf(cold.get(0))))).isEqualTo(copyTime);
+  }
+
+  @Test
+  public void testInvalidateWhenCachedFileIsMissing() throws IOException {
+    List<Path> cold = cache.get(pluginsDir);
+    Files.delete(cold.get(0));
+
+    List<Path> plugins = cache.get(pluginsDir);
+    assertThat(plugins).hasSize(2);
+    assertThat(Files.exists(cold.get(0))).isTrue();
+  }
+
+  @Test
+  public void testNewPlugin() throws IOException {
+    cache.get(pluginsDir);
+    Files.write(pluginsDir.resolve("sonar-javascript-plugin-2.11.jar"), "js".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(cache.get(pluginsDir)).hasSize(3);
+  }
+
+  @Test
+  public void testPluginReplacedInPlace() throws IOException {
+    Path jar = pluginsDir.resolve("sonar-java-plugin-3.12.jar");
+    Path old = cachedCopy(cache.get(pluginsDir), jar);
+    FileTime dirModified = Files.getLastModifiedTime(pluginsDir);
+
+    Files.write(jar, "java 2".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+    Files.setLastModifiedTime(pluginsDir, dirModified);
+
+    Path replaced = cachedCopy(cache.get(pluginsDir), jar);
+    assertThat(replaced).isNotEqualTo(old);
+    assertThat(new String(Files.readAllBytes(replaced), StandardCharsets.UTF_8)).isEqualTo("java 2");
+    // the copy of the previous version is deleted
+    assertThat(Files.exists(old.getParent())).isFalse();
+  }
+
+  @Test
+  public void testPruneRemovedPlugins() throws IOException {
+    Path jar = pluginsDir.resolve("sonar-php-plugin-2.8.jar");
+    Path old = cachedCopy(cache.get(pluginsDir), jar);
+    Files.delete(jar);
+
+    assertThat(cache.get(pluginsDir)).hasSize(1);
+    assertThat(Files.exists(old.getParent())).isFalse();
+  }
+
+  private static Path cachedCopy(List<Path> plugins, Path plugin) {
+    for (Path p : plugins) {
+      if (p.getFileName().equals(plugin.getFileName())) {
+        return p;
+      }
+    }
+    throw new IllegalStateException("Not cached: " + plugin);
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerIssueDownloaderTest {
+  private HttpServer server;
+  private final List<String> queries = new ArrayList<>();
+  private final List<String> authorizations = new ArrayList<>();
+  private int status = 200;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/api/issues/search", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        queries.add(query);
+        authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        byte[] body = (query.contains("&p=1&") ? page1() : page2()).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(body);
+        }
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testDownloadAllPages() throws IOException {
+    List<ServerIssue> issues = new ServerIssueDownloader(url(), "admin", "secret").download("my:module");
+
+    assertThat(queries).hasSize(2);
+    assertThat(queries.get(0)).contains("componentKeys=my:module").contains("ps=500").contains("p=1&");
+    assertThat(queries.get(1)).contains("p=2&");
+    assertThat(authorizations.get(0)).isEqualTo("Basic YWRtaW46c2VjcmV0");
+
+    // the issue on the module is ignored
+    assertThat(issues).hasSize(2);
+    ServerIssue issue = issues.get(0);
+    assertThat(issue.getKey()).isEqualTo("AU1");
+    assertThat(issue.getRuleKey()).isEqualTo("squid:S1");
+    assertThat(issue.getPath()).isEqualTo("src/Foo.java");
+    assertThat(issue.getLine()).isEqualTo(11);
+    assertThat(issue.getMessage()).isEqualTo("Remove this");
+    assertThat(issue.getCreationDate()).isEqualTo(ServerIssueDownloader.parseDate("2016-03-01T10:00:00+0100"));
+    assertThat(issue.isResolved()).isFalse();
+
+    // path deduced from the component key
+    assertThat(issues.get(1).getPath()).isEqualTo("src/Bar.java");
+    assertThat(issues.get(1).getLine()).isNull();
+    assertThat(issues.get(1).isResolved()).isTrue();
+  }
+
+  @Test
+  public void testAnonymous() throws IOException {
+    new ServerIssueDownloader(url() + "/", null, null).download("my:module");
+    assertThat(authorizations.get(0)).isNull();
+  }
+
+  @Test(expected = IOException.class)
+  public void testHttpError() throws IOException {
+    status = 403;
+    new ServerIssueDownloader(url(), "admin", "wrong").download("my:module");
+  }
+
+  @Test
+  public void testParseDate() throws IOException {
+    assertThat(ServerIssueDownloader.parseDate("1970-01-01T00:00:01+0000")).isEqualTo(1000);
+    assertThat(ServerIssueDownloader.parseDate(null)).isEqualTo(0);
+  }
+
+  private String url() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  private static String page1() {
+    return "{\"paging\":{\"pageIndex\":1,\"pageSize\":500,\"total\":501},"
+      + "\"issues\":["
+      + "{\"key\":\"AU1\",\"rule\":\"squid:S1\",\"component\":\"my:module:src/Foo.java\",\"line\":12,\"message\":\"Remove this\","
+      + "\"creationDate\":\"2016-03-01T10:00:00+0100\"},"
+      + "{\"key\":\"AU2\",\"rule\":\"common-java:S2\",\"component\":\"my:module\",\"message\":\"On module\","
+      + "\"creationDate\":\"2016-03-01T10:00:00+0100\"}],"
+      + "\"components\":[{\"key\":\"my:module:src/Foo.java\",\"path\":\"src/Foo.java\"},{\"key\":\"my:module\"}]}";
+  }
+
+  private static String page2() {
+    return "{\"paging\":{\"pageIndex\":2,\"pageSize\":500,\"total\":501},"
+      + "\"issues\":["
+      + "{\"key\":\"AU3\",\"rule\":\"squid:S3\",\"component\":\"my:module:src/Bar.java\",\"message\":\"Fixed\","
+      + "\"creationDate\":\"2016-03-02T10:00:00+0100\",\"resolution\":\"FIXED\"}],"
+      + "\"components\":[]}";
+  }
+}
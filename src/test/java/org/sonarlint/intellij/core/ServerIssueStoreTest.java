@@ -0,0 +1,85 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerIssueStoreTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Path root;
+  private ServerIssueStore store;
+
+  @Before
+  public void setUp() throws IOException {
+    root = temp.newFolder().toPath();
+    store = new ServerIssueStore(root);
+  }
+
+  @Test
+  public void testSaveAndGetForFile() throws IOException {
+    store.save("server", "module", Arrays.asList(
+      new ServerIssue("k1", "squid:S1", "src/Foo.java", 10, "message 1", 1000, null),
+      new ServerIssue("k2", "squid:S2", "src/Foo.java", null, "message 2", 2000, "FIXED"),
+      new ServerIssue("k3", "squid:S1", "src/Bar.java", 3, "message 3", 3000, null)));
+
+    // read from disk by another instance
+    ServerIssueStore other = new ServerIssueStore(root);
+    List<ServerIssue> issues = other.getForFile("server", "module", "src/Foo.java");
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).getKey()).isEqualTo("k1");
+    assertThat(issues.get(0).getLine()).isEqualTo(9);
+    assertThat(issues.get(0).getCreationDate()).isEqualTo(1000);
+    assertThat(issues.get(0).isResolved()).isFalse();
+    assertThat(issues.get(1).getLine()).isNull();
+    assertThat(issues.get(1).isResolved()).isTrue();
+
+    assertThat(other.getForFile("server", "module", "src/Bar.java")).hasSize(1);
+    assertThat(other.getForFile("server", "module", "src/Unknown.java")).isEmpty();
+    assertThat(other.getForFile("server", "other", "src/Foo.java")).isEmpty();
+  }
+
+  @Test
+  public void testReplace() throws IOException {
+    store.save("server", "module", Collections.singletonList(new ServerIssue("k1", "squid:S1", "src/Foo.java", 10, "message", 1000, null)));
+    assertThat(store.getForFile("server", "module", "src/Foo.java")).hasSize(1);
+
+    store.save("server", "module", Collections.<ServerIssue>emptyList());
+    assertThat(store.getForFile("server", "module", "src/Foo.java")).isEmpty();
+    assertThat(new ServerIssueStore(root).getForFile("server", "module", "src/Foo.java")).isEmpty();
+    assertThat(root.toFile().list()).hasSize(1);
+  }
+
+  @Test
+  public void testNothingDownloaded() {
+    assertThat(new ServerIssueStore(root.resolve("missing")).getForFile("server", "module", "src/Foo.java")).isEmpty();
+  }
+}
@@ -0,0 +1,306 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
+import org.sonarlint.intellij.config.global.SonarQubeServer;
+import org.sonarlint.intellij.util.GlobalLogOutput;
+import org.sonarsource.sonarlint.core.client.api.connected.ConnectedSonarLintEngine;
+import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneSonarLintEngine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class SonarLintServerManagerTest {
+  private static final Set<String> JAVA = Collections.singleton("java");
+  private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+  private final Set<Object> stopped = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+  private SonarLintGlobalSettings settings;
+  private SonarLintServerManager manager;
+
+  @Before
+  public void setUp() {
+    settings = new SonarLintGlobalSettings();
+    settings.setEngineIdleTimeout(10);
+    manager = new SonarLintServerManager(mock(GlobalLogOutput.class), settings) {
+      @Override
+      StandaloneSonarLintEngine createEngine(Set<String> languages) {
+        StandaloneSonarLintEngine engine = mock(StandaloneSonarLintEngine.class);
+        doAnswer(recordStop(engine)).when(engine).stop();
+        return engine;
+      }
+
+      @Override
+      ConnectedSonarLintEngine createEngine(String serverId) {
+        ConnectedSonarLintEngine engine = mock(ConnectedSonarLintEngine.class);
+        doAnswer(recordStop(engine)).when(engine).stop(false);
+        return engine;
+      }
+
+      @Override
+      long now() {
+        return clock.get();
+      }
+    };
+  }
+
+  @After
+  public void tearDown() {
+    manager.disposeComponent();
+  }
+
+  @Test
+  public void testStopIdleStandaloneEngine() {
+    StandaloneSonarLintEngine engine = manager.getStandaloneEngine(JAVA);
+
+    clock.addAndGet(5 * MINUTE);
+    manager.stopIdleEngines();
+    assertThat(manager.getStandaloneEngine(JAVA)).isSameAs(engine);
+
+    clock.addAndGet(11 * MINUTE);
+    manager.stopIdleEngines();
+    verify(engine, timeout(1000)).stop();
+
+    // created again on demand, with the same languages
+    StandaloneSonarLintEngine restarted = manager.getStandaloneEngine(Collections.<String>emptySet());
+    assertThat(restarted).isNotSameAs(engine);
+    assertThat(manager.getStandaloneEngine(JAVA)).isSameAs(restarted);
+  }
+
+  @Test
+  public void testStopIdleConnectedEngine() {
+    ConnectedSonarLintEngine engine = manager.getConnectedEngine("server");
+
+    clock.addAndGet(11 * MINUTE);
+    manager.stopIdleEngines();
+    verify(engine, timeout(1000)).stop(false);
+    assertThat(manager.getConnectedEngine("server")).isNotSameAs(engine);
+  }
+
+  @Test
+  public void testNoIdleStopWithoutTimeout() {
+    settings.setEngineIdleTimeout(0);
+    StandaloneSonarLintEngine engine = manager.getStandaloneEngine(JAVA);
+
+    clock.addAndGet(1000 * MINUTE);
+    manager.stopIdleEngines();
+    assertThat(manager.getStandaloneEngine(JAVA)).isSameAs(engine);
+  }
+
+  @Test
+  public void testHeldEngineIsNotStoppedWhenIdle() {
+    ManagedEngine<StandaloneSonarLintEngine> held = manager.standaloneEngine(JAVA, true);
+
+    // an analysis longer than the idle timeout
+    clock.addAndGet(60 * MINUTE);
+    manager.stopIdleEngines();
+    assertThat(manager.getStandaloneEngine(JAVA)).isSameAs(held.engine());
+
+    // idle time starts when the analysis ends
+    held.release(clock.get());
+    clock.addAndGet(5 * MINUTE);
+    manager.stopIdleEngines();
+    assertThat(manager.getStandaloneEngine(JAVA)).isSameAs(held.engine());
+
+    clock.addAndGet(11 * MINUTE);
+    manager.stopIdleEngines();
+    verify(held.engine(), timeout(1000)).stop();
+  }
+
+  @Test
+  public void testReplacedEngineStopsAfterRunningAnalyses() {
+    ManagedEngine<StandaloneSonarLintEngine> held = manager.standaloneEngine(JAVA, true);
+
+    StandaloneSonarLintEngine replacement = manager.getStandaloneEngine(Collections.singleton("php"));
+    assertThat(replacement).isNotSameAs(held.engine());
+    assertThat(manager.getStandaloneEngine(JAVA)).isSameAs(replacement);
+    verify(held.engine(), never()).stop();
+
+    held.release(clock.get());
+    verify(held.engine(), timeout(1000)).stop();
+    assertThat(held.acquire(clock.get())).isFalse();
+  }
+
+  @Test
+  public void testRemovedServerEngineStopsAfterRunningAnalyses() {
+    settings.setSonarQubeServers(Collections.singletonList(server("server")));
+    manager.reloadServers();
+    ManagedEngine<ConnectedSonarLintEngine> held = manager.connectedEngine("server", true);
+    ConnectedSonarLintEngine idle = manager.getConnectedEngine("other");
+
+    settings.setSonarQubeServers(Collections.<SonarQubeServer>emptyList());
+    manager.reloadServers();
+    verify(idle, timeout(1000)).stop(false);
+    verify(held.engine(), never()).stop(false);
+    assertThat(manager.getConnectedEngine("server")).isNotSameAs(held.engine());
+
+    held.release(clock.get());
+    verify(held.engine(), timeout(1000)).stop(false);
+  }
+
+  @Test
+  public void testDisposeStopsAllEngines() {
+    ManagedEngine<StandaloneSonarLintEngine> held = manager.standaloneEngine(JAVA, true);
+    ConnectedSonarLintEngine connected = manager.getConnectedEngine("server");
+
+    manager.disposeComponent();
+    verify(held.engine(), timeout(1000)).stop();
+    verify(connected, timeout(1000)).stop(false);
+    assertThat(stopped).containsOnly(held.engine(), connected);
+  }
+
+  @Test(timeout = 5000)
+  public void testEngineStartsWithoutBlockingOtherServers() throws InterruptedException {
+    final CountDownLatch slowStarting = new CountDownLatch(1);
+    final CountDownLatch slowCanStart = new CountDownLatch(1);
+    final AtomicInteger slowCreated = new AtomicInteger();
+    final SonarLintServerManager slowManager = new SonarLintServerManager(mock(GlobalLogOutput.class), settings) {
+      @Override
+      ConnectedSonarLintEngine createEngine(String serverId) {
+        if ("slow".equals(serverId)) {
+          slowCreated.incrementAndGet();
+          slowStarting.countDown();
+          try {
+            slowCanStart.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return mock(ConnectedSonarLintEngine.class);
+      }
+    };
+    final AtomicReference<ConnectedSonarLintEngine> slow1 = new AtomicReference<>();
+    final AtomicReference<ConnectedSonarLintEngine> slow2 = new AtomicReference<>();
+    Thread first = new Thread() {
+      @Override
+      public void run() {
+        slow1.set(slowManager.getConnectedEngine("slow"));
+      }
+    };
+    Thread second = new Thread() {
+      @Override
+      public void run() {
+        slow2.set(slowManager.getConnectedEngine("slow"));
+      }
+    };
+    try {
+      first.start();
+      slowStarting.await();
+      second.start();
+
+      // another server doesn't wait for the engine being created
+      assertThat(slowManager.getConnectedEngine("fast")).isNotNull();
+
+      slowCanStart.countDown();
+      first.join();
+      second.join();
+      assertThat(slow1.get()).isNotNull().isSameAs(slow2.get());
+      assertThat(slowCreated.get()).isEqualTo(1);
+    } finally {
+      slowCanStart.countDown();
+      slowManager.disposeComponent();
+    }
+  }
+
+  /**
+   * The clock moves by a minute on every read, so that an engine not held is stopped by almost every idle check.
+   * An engine handed out for an analysis must never be stopped before it is released.
+   */
+  @Test
+  public void testEngineHandedOutConcurrentlyWithIdleCheck() throws InterruptedException {
+    settings.setEngineIdleTimeout(1);
+    final SonarLintServerManager fastClockManager = new SonarLintServerManager(mock(GlobalLogOutput.class), settings) {
+      @Override
+      StandaloneSonarLintEngine createEngine(Set<String> languages) {
+        StandaloneSonarLintEngine engine = mock(StandaloneSonarLintEngine.class);
+        doAnswer(recordStop(engine)).when(engine).stop();
+        return engine;
+      }
+
+      @Override
+      long now() {
+        return clock.addAndGet(MINUTE);
+      }
+    };
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicReference<Object> stoppedWhileHeld = new AtomicReference<>();
+
+    Thread checker = new Thread() {
+      @Override
+      public void run() {
+        while (!done.get()) {
+          fastClockManager.stopIdleEngines();
+        }
+      }
+    };
+    checker.start();
+    try {
+      for (int i = 0; i < 200; i++) {
+        ManagedEngine<StandaloneSonarLintEngine> held = fastClockManager.standaloneEngine(JAVA, true);
+        Thread.yield();
+        if (stopped.contains(held.engine())) {
+          stoppedWhileHeld.set(held.engine());
+        }
+        held.release(fastClockManager.now());
+      }
+    } finally {
+      done.set(true);
+      checker.join();
+      fastClockManager.disposeComponent();
+    }
+    assertThat(stoppedWhileHeld.get()).isNull();
+  }
+
+  private static SonarQubeServer server(String name) {
+    SonarQubeServer server = new SonarQubeServer();
+    server.setName(name);
+    return server;
+  }
+
+  private Answer<Void> recordStop(final Object engine) {
+    return new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        stopped.add(engine);
+        return null;
+      }
+    };
+  }
+}
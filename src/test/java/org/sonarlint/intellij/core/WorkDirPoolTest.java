@@ -0,0 +1,95 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.openapi.project.Project;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class WorkDirPoolTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Path root;
+  private WorkDirPool pool;
+
+  @Before
+  public void setUp() throws IOException {
+    root = temp.newFolder().toPath();
+    pool = new WorkDirPool(mock(Project.class), mock(SonarLintConsole.class), root, MoreExecutors.sameThreadExecutor());
+  }
+
+  @Test
+  public void testConcurrentLeasesAreIsolated() {
+    WorkDirPool.Lease lease1 = pool.lease();
+    WorkDirPool.Lease lease2 = pool.lease();
+
+    assertThat(lease1.getDir()).isNotEqualTo(lease2.getDir());
+    assertThat(Files.isDirectory(lease1.getDir())).isTrue();
+    assertThat(Files.isDirectory(lease2.getDir())).isTrue();
+  }
+
+  @Test
+  public void testReleasedDirIsCleanedAndReused() throws IOException {
+    WorkDirPool.Lease lease = pool.lease();
+    Path dir = lease.getDir();
+    Files.write(dir.resolve("tmp"), "content".getBytes(StandardCharsets.UTF_8));
+    assertThat(pool.getDiskUsage()).isEqualTo(0);
+
+    lease.close();
+    assertThat(Files.exists(dir.resolve("tmp"))).isFalse();
+    assertThat(pool.getDiskUsage()).isEqualTo(0);
+
+    assertThat(pool.lease().getDir()).isEqualTo(dir);
+  }
+
+  @Test
+  public void testSlotsAbovePoolSizeAreDeleted() {
+    WorkDirPool.Lease last = null;
+    for (int i = 0; i <= WorkDirPool.POOL_SIZE; i++) {
+      last = pool.lease();
+    }
+
+    last.close();
+    assertThat(Files.exists(last.getDir())).isFalse();
+  }
+
+  @Test
+  public void testCleanStale() throws IOException {
+    Files.createDirectories(root.resolve("0"));
+    Files.write(root.resolve("0").resolve("tmp"), "content".getBytes(StandardCharsets.UTF_8));
+    Files.write(root.resolve("other"), "content".getBytes(StandardCharsets.UTF_8));
+
+    pool.initComponent();
+
+    assertThat(root.toFile().list()).isEmpty();
+  }
+}
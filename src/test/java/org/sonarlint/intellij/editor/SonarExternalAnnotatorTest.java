@@ -19,6 +19,7 @@
  */
 package org.sonarlint.intellij.editor;
 
+import com.google.common.base.Strings;
 import com.intellij.codeInsight.daemon.impl.AnnotationHolderImpl;
 import com.intellij.lang.annotation.AnnotationSession;
 import com.intellij.lang.annotation.HighlightSeverity;
@@ -28,6 +29,7 @@ import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import org.junit.Before;
 import org.junit.Test;
@@ -39,8 +41,8 @@ import org.sonarlint.intellij.issue.IssueStore;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
 public class SonarExternalAnnotatorTest {
@@ -97,11 +99,24 @@ public class SonarExternalAnnotatorTest {
     }
   }
 
+  @Test
+  public void testIssueDetachedWhileAnnotated() {
+    IssuePointer issue = spy(createRangeStoredIssue(1, 1, 11, "foo"));
+    RangeMarker range = issue.range();
+    // detached right after its range is read
+    when(issue.range()).thenReturn(range, (RangeMarker) null);
+    when(store.getForFile(virtualFile)).thenReturn(Collections.singletonList(issue));
+
+    annotator.apply(psiFile, ctx, holder);
+    assertThat(holder).hasSize(1);
+    assertThat(holder.get(0).getStartOffset()).isEqualTo(1);
+  }
+
   private void createFileIssues(int number) {
     Collection<IssuePointer> issues = new LinkedList<>();
 
     for (int i = 0; i < number; i++) {
-      issues.add(createFileStoredIssue(i, psiFile));
+      issues.add(createFileStoredIssue(i, virtualFile));
     }
 
     when(store.getForFile(virtualFile)).thenReturn(issues);
@@ -117,7 +132,7 @@ public class SonarExternalAnnotatorTest {
     when(store.getForFile(virtualFile)).thenReturn(issues);
   }
 
-  private static IssuePointer createFileStoredIssue(int id, PsiFile file) {
+  private static IssuePointer createFileStoredIssue(int id, VirtualFile file) {
     Issue issue = SonarLintTestUtils.createIssue(id);
     return new IssuePointer(issue, file, null);
   }
@@ -130,7 +145,7 @@ public class SonarExternalAnnotatorTest {
     when(range.getEndOffset()).thenReturn(rangeEnd);
     when(range.isValid()).thenReturn(true);
     when(range.getDocument()).thenReturn(document);
-    when(document.getText(any(TextRange.class))).thenReturn(text);
+    when(document.getCharsSequence()).thenReturn(Strings.padEnd(Strings.repeat(" ", rangeStart) + text, rangeEnd, ' '));
     return new IssuePointer(issue, null, range);
   }
 }
@@ -0,0 +1,116 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.editor;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.sonarlint.intellij.issue.IssueProcessor;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class StreamingIssueListenerTest {
+  private IssueProcessor.Batch batch;
+  private StreamingIssueListener listener;
+  private ClientInputFile input1;
+  private ClientInputFile input2;
+  private VirtualFile file1;
+  private VirtualFile file2;
+
+  @Before
+  public void setUp() {
+    batch = mock(IssueProcessor.Batch.class);
+    listener = new StreamingIssueListener(batch);
+    file1 = mock(VirtualFile.class);
+    file2 = mock(VirtualFile.class);
+    input1 = createInputFile(file1);
+    input2 = createInputFile(file2);
+  }
+
+  @Test
+  public void testHandOverWhenFileChanges() {
+    Issue i1 = createIssue(input1);
+    Issue i2 = createIssue(input1);
+    Issue i3 = createIssue(input2);
+
+    listener.handle(i1);
+    listener.handle(i2);
+    verifyZeroInteractions(batch);
+
+    listener.handle(i3);
+    verify(batch).submit(file1, Arrays.asList(i1, i2));
+    verifyNoMoreInteractions(batch);
+
+    listener.finish();
+    InOrder inOrder = inOrder(batch);
+    inOrder.verify(batch).submit(file2, Collections.singletonList(i3));
+    inOrder.verify(batch).finish(3);
+  }
+
+  @Test
+  public void testLateIssuesAreDeliveredAgain() {
+    Issue i1 = createIssue(input1);
+    Issue i2 = createIssue(input2);
+    Issue i3 = createIssue(input1);
+
+    listener.handle(i1);
+    listener.handle(i2);
+    listener.handle(i3);
+    listener.finish();
+
+    verify(batch).submit(file1, Collections.singletonList(i1));
+    verify(batch).submit(file2, Collections.singletonList(i2));
+    verify(batch).submit(file1, Arrays.asList(i1, i3));
+  }
+
+  @Test
+  public void testProjectLevelIssues() {
+    listener.handle(createIssue(null));
+    assertThat(listener.getIssueCount()).isEqualTo(1);
+
+    listener.finish();
+    verify(batch).finish(1);
+    verifyNoMoreInteractions(batch);
+  }
+
+  private static ClientInputFile createInputFile(VirtualFile file) {
+    ClientInputFile inputFile = mock(ClientInputFile.class);
+    when(inputFile.getPath()).thenReturn("path");
+    when(inputFile.getClientObject()).thenReturn(file);
+    return inputFile;
+  }
+
+  private static Issue createIssue(ClientInputFile inputFile) {
+    Issue issue = mock(Issue.class);
+    when(issue.getInputFile()).thenReturn(inputFile);
+    return issue;
+  }
+}
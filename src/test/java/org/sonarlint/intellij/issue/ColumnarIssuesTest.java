@@ -0,0 +1,104 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import org.junit.Test;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ColumnarIssuesTest {
+  private VirtualFile file = mock(VirtualFile.class);
+  private StringDictionary dictionary = new StringDictionary();
+
+  @Test
+  public void testViews() {
+    IssuePointer rangeIssue = new IssuePointer(createIssue(1, "MAJOR", "message 1"), file, 10, 20, 2, 4, 1234);
+    rangeIssue.setCreationDate(1000);
+    rangeIssue.setServerIssueKey("AU1");
+    IssuePointer fileIssue = new IssuePointer(createIssue(2, "MINOR", null), file);
+
+    ColumnarIssues issues = ColumnarIssues.of(file, Arrays.asList(rangeIssue, fileIssue), dictionary);
+    assertThat(issues).containsExactly(rangeIssue, fileIssue);
+
+    IssuePointer view = issues.get(0);
+    assertThat(view).isNotSameAs(rangeIssue);
+    assertThat(view.uid()).isEqualTo(rangeIssue.uid());
+    assertThat(view.file()).isEqualTo(file);
+    assertThat(view.isFileLevel()).isFalse();
+    assertThat(view.isAttached()).isFalse();
+    assertThat(view.getRuleKey()).isEqualTo("rule1");
+    assertThat(view.getRuleName()).isEqualTo("Rule 1");
+    assertThat(view.getSeverity()).isEqualTo("MAJOR");
+    assertThat(view.getMessage()).isEqualTo("message 1");
+    assertThat(view.getStartOffset()).isEqualTo(10);
+    assertThat(view.getEndOffset()).isEqualTo(20);
+    assertThat(view.getLine()).isEqualTo(2);
+    assertThat(view.getColumn()).isEqualTo(4);
+    assertThat(view.getLineHash()).isEqualTo(1234);
+    assertThat(view.creationDate()).isEqualTo(1000);
+    assertThat(view.serverIssueKey()).isEqualTo("AU1");
+
+    view = issues.get(1);
+    assertThat(view.isFileLevel()).isTrue();
+    assertThat(view.getLine()).isNull();
+    assertThat(view.getLineHash()).isNull();
+    assertThat(view.getMessage()).isNull();
+    assertThat(view.serverIssueKey()).isNull();
+  }
+
+  @Test
+  public void testAttachedIssuesAreNotCompacted() {
+    RangeMarker range = mock(RangeMarker.class);
+    Document document = mock(Document.class);
+    when(range.getDocument()).thenReturn(document);
+    when(document.getCharsSequence()).thenReturn("issue");
+    IssuePointer attached = new IssuePointer(createIssue(1, "MAJOR", "message"), file, range);
+
+    assertThat(ColumnarIssues.of(file, Arrays.asList(attached), dictionary)).isNull();
+  }
+
+  @Test
+  public void testDictionaryIsShared() {
+    Issue issue = createIssue(1, "MAJOR", "message");
+    ColumnarIssues.of(file, Arrays.asList(new IssuePointer(issue, file), new IssuePointer(issue, file)), dictionary);
+    ColumnarIssues.of(mock(VirtualFile.class), Arrays.asList(new IssuePointer(issue, file)), dictionary);
+
+    // rule key, rule name and severity
+    assertThat(dictionary.size()).isEqualTo(3);
+    assertThat(dictionary.id(null)).isEqualTo(-1);
+    assertThat(dictionary.get(dictionary.id("MAJOR"))).isEqualTo("MAJOR");
+  }
+
+  private static Issue createIssue(int id, String severity, String message) {
+    Issue issue = mock(Issue.class);
+    when(issue.getRuleKey()).thenReturn("rule" + id);
+    when(issue.getRuleName()).thenReturn("Rule " + id);
+    when(issue.getSeverity()).thenReturn(severity);
+    when(issue.getMessage()).thenReturn(message);
+    return issue;
+  }
+}
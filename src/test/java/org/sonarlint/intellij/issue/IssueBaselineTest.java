@@ -0,0 +1,156 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.sonarlint.intellij.SonarLintTestUtils;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IssueBaselineTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Path root;
+  private IssueBaseline baseline;
+  private VirtualFile file;
+
+  @Before
+  public void setUp() throws IOException {
+    root = temp.newFolder().toPath();
+    baseline = new IssueBaseline(mock(Project.class), root, MoreExecutors.sameThreadExecutor());
+    file = mock(VirtualFile.class);
+    when(file.getPath()).thenReturn("/project/src/Foo.java");
+  }
+
+  @Test
+  public void testSaveAndLoad() {
+    IssuePointer issue1 = createIssue(1, 1000);
+    IssuePointer issue2 = createIssue(2, 2000);
+    baseline.save(file, Arrays.asList(issue1, issue2));
+    assertThat(root.toFile().list()).hasSize(1);
+
+    // read from disk by another instance
+    List<IssueBaseline.Entry> entries = new IssueBaseline(mock(Project.class), root, MoreExecutors.sameThreadExecutor()).load(file);
+    assertThat(entries).hasSize(2);
+    assertThat(entries.get(0).getRuleKey()).isEqualTo("1");
+    assertThat(entries.get(0).getMessage()).isEqualTo(Integer.toString("issue 1".hashCode()));
+    assertThat(entries.get(0).getLine()).isNull();
+    assertThat(entries.get(0).getLineHash()).isNull();
+    assertThat(entries.get(0).getCreationDate()).isEqualTo(1000);
+    assertThat(entries.get(1).getCreationDate()).isEqualTo(2000);
+  }
+
+  @Test
+  public void testDeleteWithoutIssues() {
+    baseline.save(file, Collections.singletonList(createIssue(1, 1000)));
+    baseline.save(file, Collections.<IssuePointer>emptyList());
+
+    assertThat(root.toFile().list()).isEmpty();
+    assertThat(baseline.load(file)).isEmpty();
+  }
+
+  @Test
+  public void testUnknownFile() {
+    assertThat(baseline.load(file)).isEmpty();
+  }
+
+  @Test
+  public void testIgnoreCorruptedBaseline() throws IOException {
+    baseline.save(file, Collections.singletonList(createIssue(1, 1000)));
+    File[] files = root.toFile().listFiles();
+    Files.write(files[0].toPath(), "corrupted".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(baseline.load(file)).isEmpty();
+  }
+
+  @Test
+  public void testCoalescePendingWrites() {
+    ExecutorService writer = mock(ExecutorService.class);
+    baseline = new IssueBaseline(mock(Project.class), root, writer);
+    baseline.save(file, Collections.singletonList(createIssue(1, 1000)));
+    baseline.save(file, Arrays.asList(createIssue(1, 1000), createIssue(2, 2000)));
+
+    // not written yet, but loaded
+    assertThat(baseline.load(file)).hasSize(2);
+    assertThat(root.toFile().list()).isEmpty();
+
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(writer).execute(task.capture());
+    task.getValue().run();
+    assertThat(new IssueBaseline(mock(Project.class), root, MoreExecutors.sameThreadExecutor()).load(file)).hasSize(2);
+  }
+
+  @Test
+  public void testPreload() throws IOException {
+    baseline.save(file, Collections.singletonList(createIssue(1, 1000)));
+    ExecutorService reader = mock(ExecutorService.class);
+    baseline = new IssueBaseline(mock(Project.class), root, reader);
+    baseline.preload(Collections.singletonList(file));
+    baseline.preload(Collections.singletonList(file));
+
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(reader).execute(task.capture());
+    task.getValue().run();
+    for (File f : root.toFile().listFiles()) {
+      Files.delete(f.toPath());
+    }
+
+    // read ahead once
+    assertThat(baseline.load(file)).hasSize(1);
+    assertThat(baseline.load(file)).isEmpty();
+  }
+
+  @Test
+  public void testPreloadedIsOutdatedByWrite() {
+    baseline.save(file, Collections.singletonList(createIssue(1, 1000)));
+    baseline.preload(Collections.singletonList(file));
+    baseline.save(file, Arrays.asList(createIssue(1, 1000), createIssue(2, 2000)));
+
+    assertThat(baseline.load(file)).hasSize(2);
+  }
+
+  private IssuePointer createIssue(int id, long creationDate) {
+    Issue issue = SonarLintTestUtils.createIssue(id);
+    IssuePointer pointer = new IssuePointer(issue, file);
+    pointer.setCreationDate(creationDate);
+    return pointer;
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiManager;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonarlint.intellij.SonarTest;
+import org.sonarlint.intellij.analysis.DocumentSnapshot;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IssueMatcherTest extends SonarTest {
+  private static final String CONTENT = "class A {\n  \tint a;\n  // comment\n    \n}";
+  private FileDocumentManager fileDocManager;
+  private IssueMatcher matcher;
+  private VirtualFile file;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    fileDocManager = mock(FileDocumentManager.class);
+    register(app, FileDocumentManager.class, fileDocManager);
+    matcher = new IssueMatcher(project, mock(PsiManager.class), mock(PsiDocumentManager.class), mock(FileEditorManager.class));
+    file = mock(VirtualFile.class);
+  }
+
+  @Test
+  public void testSkipIndentation() throws IssueMatcher.NoMatchException {
+    IssueMatcher.FileMatcher fileMatcher = createMatcher(CONTENT);
+
+    // line 2 starts at offset 10, 'int' at 13
+    IssuePointer issue = fileMatcher.match(createIssue(2, null, 2, null));
+    assertThat(issue.isAttached()).isFalse();
+    assertThat(issue.getStartOffset()).isEqualTo(13);
+    assertThat(issue.getEndOffset()).isEqualTo(19);
+    assertThat(issue.getLine()).isEqualTo(1);
+    assertThat(issue.getColumn()).isEqualTo(3);
+    assertThat(issue.getLineHash()).isEqualTo("inta;".hashCode());
+
+    // comment
+    assertThat(fileMatcher.match(createIssue(3, null, 3, null)).getStartOffset()).isEqualTo(22);
+  }
+
+  @Test
+  public void testKeepOffsets() throws IssueMatcher.NoMatchException {
+    IssueMatcher.FileMatcher fileMatcher = createMatcher(CONTENT);
+
+    // precise location
+    assertThat(fileMatcher.match(createIssue(2, 1, 2, 3)).getStartOffset()).isEqualTo(11);
+    // blank line
+    assertThat(fileMatcher.match(createIssue(4, null, 4, null)).getStartOffset()).isEqualTo(33);
+    // file level
+    assertThat(fileMatcher.match(createIssue(null, null, null, null)).isFileLevel()).isTrue();
+  }
+
+  @Test
+  public void testTranslateThroughEdits() throws IssueMatcher.NoMatchException {
+    Document doc = mock(Document.class);
+    when(doc.getImmutableCharSequence()).thenReturn(CONTENT);
+    when(doc.getModificationStamp()).thenReturn(1L);
+    DocumentSnapshot snapshot = DocumentSnapshot.take(doc);
+    ArgumentCaptor<DocumentListener> listener = ArgumentCaptor.forClass(DocumentListener.class);
+    verify(doc).addDocumentListener(listener.capture());
+
+    // a line is inserted at the beginning of the file while it's analyzed
+    String edited = "// new\n" + CONTENT;
+    when(doc.getCharsSequence()).thenReturn(edited);
+    when(doc.getModificationStamp()).thenReturn(2L);
+    DocumentEvent event = mock(DocumentEvent.class);
+    when(event.getOffset()).thenReturn(0);
+    when(event.getNewLength()).thenReturn(7);
+    listener.getValue().documentChanged(event);
+    when(fileDocManager.getCachedDocument(file)).thenReturn(doc);
+
+    IssuePointer issue = matcher.matcherFor(file, snapshot).match(createIssue(2, null, 2, null));
+    assertThat(issue.getStartOffset()).isEqualTo(20);
+    assertThat(issue.getEndOffset()).isEqualTo(26);
+    assertThat(issue.getLine()).isEqualTo(2);
+    assertThat(issue.getColumn()).isEqualTo(3);
+    assertThat(issue.getLineHash()).isEqualTo("inta;".hashCode());
+  }
+
+  @Test(expected = IssueMatcher.NoMatchException.class)
+  public void testLineOutOfFile() throws IssueMatcher.NoMatchException {
+    createMatcher(CONTENT).match(createIssue(6, null, 6, null));
+  }
+
+  @Test
+  public void testSkipBlanks() {
+    assertThat(IssueMatcher.skipBlanks(" \t\fa", 0, 4)).isEqualTo(3);
+    assertThat(IssueMatcher.skipBlanks("  ", 0, 2)).isEqualTo(2);
+    assertThat(IssueMatcher.skipBlanks("a ", 0, 2)).isEqualTo(0);
+  }
+
+  private IssueMatcher.FileMatcher createMatcher(CharSequence content) throws IssueMatcher.NoMatchException {
+    Document doc = mock(Document.class);
+    when(doc.getCharsSequence()).thenReturn(content);
+    when(fileDocManager.getCachedDocument(file)).thenReturn(doc);
+    return matcher.matcherFor(file);
+  }
+
+  private static Issue createIssue(@Nullable Integer startLine, @Nullable Integer startOffset, @Nullable Integer endLine, @Nullable Integer endOffset) {
+    Issue issue = mock(Issue.class);
+    when(issue.getStartLine()).thenReturn(startLine);
+    when(issue.getStartLineOffset()).thenReturn(startOffset);
+    when(issue.getEndLine()).thenReturn(endLine);
+    when(issue.getEndLineOffset()).thenReturn(endOffset);
+    return issue;
+  }
+
+  @Test
+  public void testLineIndex() {
+    IssueMatcher.LineIndex index = new IssueMatcher.LineIndex("class A {\n  int a;\n\n}\n");
+
+    assertThat(index.getLineCount()).isEqualTo(5);
+    assertThat(index.getLineStartOffset(1)).isEqualTo(10);
+    assertThat(index.getLineEndOffset(1)).isEqualTo(18);
+    assertThat(index.getLineStartOffset(2)).isEqualTo(19);
+    assertThat(index.getLineEndOffset(2)).isEqualTo(19);
+    assertThat(index.getLineEndOffset(4)).isEqualTo(22);
+
+    assertThat(index.getLineNumber(0)).isEqualTo(0);
+    assertThat(index.getLineNumber(9)).isEqualTo(0);
+    assertThat(index.getLineNumber(10)).isEqualTo(1);
+    assertThat(index.getLineNumber(12)).isEqualTo(1);
+    assertThat(index.getLineNumber(22)).isEqualTo(4);
+  }
+
+  @Test
+  public void testLineIndexManyLines() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      builder.append("line\n");
+    }
+    IssueMatcher.LineIndex index = new IssueMatcher.LineIndex(builder);
+
+    assertThat(index.getLineCount()).isEqualTo(1001);
+    assertThat(index.getLineStartOffset(999)).isEqualTo(999 * 5);
+    assertThat(index.getLineNumber(999 * 5 + 2)).isEqualTo(999);
+  }
+
+  @Test
+  public void testEmptyText() {
+    IssueMatcher.LineIndex index = new IssueMatcher.LineIndex("");
+
+    assertThat(index.getLineCount()).isEqualTo(1);
+    assertThat(index.getLineStartOffset(0)).isEqualTo(0);
+    assertThat(index.getLineEndOffset(0)).isEqualTo(0);
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IssuePointerTest {
+  private static final char[] CHARS = {'a', 'Z', '0', '{', ';', '"', ' ', '\t', '\n', '\r', '\f', 0x0B, ' ', ' ', '\u00e9'};
+
+  @Test
+  public void testChecksumIgnoresWhitespaces() {
+    assertThat(IssuePointer.checksum("int a = 1;")).isEqualTo(IssuePointer.checksum(" int\ta=\n1; "));
+    assertThat(IssuePointer.checksum("")).isEqualTo(0);
+    assertThat(IssuePointer.checksum("foo")).isEqualTo("foo".hashCode());
+  }
+
+  @Test
+  public void testChecksumOfRange() {
+    String content = "class A {\n  int a = 1;\n}";
+    int start = content.indexOf("int");
+    int end = content.indexOf(';') + 1;
+
+    assertThat(IssuePointer.checksum(content, start, end)).isEqualTo("inta=1;".hashCode());
+  }
+
+  @Test
+  public void testSameValuesAsRegex() {
+    Random random = new Random(42);
+    for (int i = 0; i < 1_000; i++) {
+      String s = randomString(random, random.nextInt(200));
+      assertThat(IssuePointer.checksum(s)).isEqualTo(regexChecksum(s));
+    }
+  }
+
+  private static int regexChecksum(String content) {
+    return content.replaceAll("[\\s]", "").hashCode();
+  }
+
+  private static String randomString(Random random, int length) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append(CHARS[random.nextInt(CHARS.length)]);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,356 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonarlint.intellij.SonarTest;
+import org.sonarlint.intellij.analysis.DocumentSnapshot;
+import org.sonarlint.intellij.analysis.SonarLintAnalyzer;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.returnsArgAt;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IssueProcessorTest extends SonarTest {
+  private IssueMatcher matcher = mock(IssueMatcher.class);
+  private IssueMatcher.FileMatcher fileMatcher = mock(IssueMatcher.FileMatcher.class);
+  private IssueStore store = mock(IssueStore.class);
+  private ServerIssueTracker serverIssueTracker = mock(ServerIssueTracker.class);
+  private ResultsPublisher publisher = mock(ResultsPublisher.class);
+  private SonarLintAnalyzer.SonarLintJob job = mock(SonarLintAnalyzer.SonarLintJob.class);
+  private FakeReadActions readActions = new FakeReadActions();
+  private List<RangeMarker> ranges = new CopyOnWriteArrayList<>();
+  private List<Collection<IssuePointer>> stored = new CopyOnWriteArrayList<>();
+  private ExecutorService executor;
+  private VirtualFile file;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    register(SonarLintConsole.class, mock(SonarLintConsole.class));
+    register(FileEditorManager.class, mock(FileEditorManager.class));
+    file = validFile();
+    when(job.module()).thenReturn(module);
+    when(job.files()).thenReturn(new HashSet<>(Collections.singleton(file)));
+    when(serverIssueTracker.track(any(Module.class), any(VirtualFile.class), anyList())).then(returnsArgAt(2));
+    when(store.update(any(Module.class), any(VirtualFile.class), anyCollection())).then(new Answer<IssueDelta>() {
+      @Override
+      public IssueDelta answer(InvocationOnMock invocation) {
+        stored.add(new ArrayList<>((Collection<IssuePointer>) invocation.getArguments()[2]));
+        return IssueDelta.none((VirtualFile) invocation.getArguments()[1], stored.size());
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    super.tearDown();
+  }
+
+  @Test
+  public void testRetryWhenPreemptedByWriteAction() throws Exception {
+    IssueProcessor processor = processor(1);
+    matchAll();
+    // cancelled after the first issue was matched
+    readActions.cancelAt = 2;
+
+    IssueProcessor.Batch batch = processor.startBatch(job);
+    batch.submit(file, Arrays.asList(mock(Issue.class), mock(Issue.class)));
+    batch.finish(2);
+
+    assertThat(stored).hasSize(1);
+    assertThat(stored.get(0)).hasSize(2);
+    assertThat(readActions.waits.get()).isEqualTo(1);
+    assertThat(batch.stats().retries()).isEqualTo(1);
+    // the issue matched before the write action is discarded
+    assertThat(ranges).hasSize(3);
+    verify(ranges.get(0)).dispose();
+    verify(ranges.get(1), never()).dispose();
+    verify(ranges.get(2), never()).dispose();
+  }
+
+  @Test
+  public void testOnlyLatestIssuesOfFileAreStored() throws Exception {
+    IssueProcessor processor = processor(4);
+    matchAll();
+    final AtomicBoolean storing = new AtomicBoolean();
+    final AtomicBoolean concurrentStore = new AtomicBoolean();
+    doAnswer(new Answer<IssueDelta>() {
+      @Override
+      public IssueDelta answer(InvocationOnMock invocation) throws InterruptedException {
+        if (!storing.compareAndSet(false, true)) {
+          concurrentStore.set(true);
+        }
+        Thread.sleep(1);
+        stored.add(new ArrayList<>((Collection<IssuePointer>) invocation.getArguments()[2]));
+        storing.set(false);
+        return IssueDelta.none(file, stored.size());
+      }
+    }).when(store).update(any(Module.class), eq(file), anyCollection());
+
+    Issue issue = mock(Issue.class);
+    IssueProcessor.Batch batch = processor.startBatch(job);
+    List<Issue> issues = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      issues.add(issue);
+      batch.submit(file, new ArrayList<>(issues));
+    }
+    batch.finish(50);
+
+    assertThat(concurrentStore.get()).isFalse();
+    assertThat(stored).isNotEmpty();
+    int previous = 0;
+    for (Collection<IssuePointer> s : stored) {
+      assertThat(s.size()).isGreaterThan(previous);
+      previous = s.size();
+    }
+    assertThat(previous).isEqualTo(50);
+  }
+
+  @Test
+  public void testStoredOutsideReadActions() throws Exception {
+    IssueProcessor processor = processor(1);
+    matchAll();
+    final AtomicBoolean storedInReadAction = new AtomicBoolean();
+    doAnswer(new Answer<List<IssuePointer>>() {
+      @Override
+      public List<IssuePointer> answer(InvocationOnMock invocation) {
+        storedInReadAction.compareAndSet(false, readActions.reading);
+        return (List<IssuePointer>) invocation.getArguments()[2];
+      }
+    }).when(serverIssueTracker).track(any(Module.class), any(VirtualFile.class), anyList());
+    doAnswer(new Answer<IssueDelta>() {
+      @Override
+      public IssueDelta answer(InvocationOnMock invocation) {
+        storedInReadAction.compareAndSet(false, readActions.reading);
+        return IssueDelta.none(file, 1);
+      }
+    }).when(store).update(any(Module.class), eq(file), anyCollection());
+
+    IssueProcessor.Batch batch = processor.startBatch(job);
+    batch.submit(file, Collections.singletonList(mock(Issue.class)));
+    batch.finish(1);
+
+    verify(store).update(eq(module), eq(file), anyCollection());
+    assertThat(storedInReadAction.get()).isFalse();
+  }
+
+  @Test
+  public void testFilesWithoutIssuesAreStoredOnFinish() throws Exception {
+    IssueProcessor processor = processor(2);
+    VirtualFile clean = validFile();
+    when(job.files()).thenReturn(new HashSet<>(Arrays.asList(file, clean)));
+    matchAll();
+
+    IssueProcessor.Batch batch = processor.startBatch(job);
+    batch.submit(file, Collections.singletonList(mock(Issue.class)));
+    batch.finish(1);
+
+    verify(store).update(eq(module), eq(file), anyCollection());
+    verify(store).update(eq(module), eq(clean), anyCollection());
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    IssueProcessor processor = processor(1);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch blocked = new CountDownLatch(1);
+    when(matcher.matcherFor(any(VirtualFile.class), any(DocumentSnapshot.class))).then(new Answer<IssueMatcher.FileMatcher>() {
+      @Override
+      public IssueMatcher.FileMatcher answer(InvocationOnMock invocation) {
+        started.countDown();
+        try {
+          blocked.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ProcessCanceledException();
+        }
+        return fileMatcher;
+      }
+    });
+    VirtualFile queued = validFile();
+
+    IssueProcessor.Batch batch = processor.startBatch(job);
+    batch.submit(file, Collections.singletonList(mock(Issue.class)));
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    batch.submit(queued, Collections.singletonList(mock(Issue.class)));
+    batch.cancel();
+
+    executor.shutdown();
+    assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    verify(store, never()).update(any(Module.class), any(VirtualFile.class), anyCollection());
+  }
+
+  @Test
+  public void testCancelRestoresStoredFiles() throws Exception {
+    // each file is processed when submitted
+    executor = MoreExecutors.sameThreadExecutor();
+    IssueProcessor processor = new IssueProcessor(project, matcher, store, serverIssueTracker, mock(DaemonCodeAnalyzer.class), publisher, executor, readActions);
+    matchAll();
+    final IssuePointer previous = mock(IssuePointer.class);
+    final Collection<IssuePointer> noIssues = Collections.emptyList();
+    final Map<IssuePointer, IssuePointer> noMatch = Collections.emptyMap();
+    doAnswer(new Answer<IssueDelta>() {
+      @Override
+      public IssueDelta answer(InvocationOnMock invocation) {
+        Collection<IssuePointer> issues = (Collection<IssuePointer>) invocation.getArguments()[2];
+        stored.add(issues);
+        return new IssueDelta(file, 3 + stored.size(), 4 + stored.size(), stored.size(), issues, issues, Collections.singletonList(previous), noMatch, noMatch);
+      }
+    }).when(store).update(any(Module.class), eq(file), anyCollection());
+    IssueDelta restored = new IssueDelta(file, 6, 7, 3, Collections.singletonList(previous), noIssues, noIssues, noMatch, noMatch);
+    when(store.restore(module, file, 6, Collections.singletonList(previous))).thenReturn(restored);
+
+    IssueProcessor.Batch batch = processor.startBatch(job);
+    batch.submit(file, Collections.singletonList(mock(Issue.class)));
+    batch.submit(file, Arrays.asList(mock(Issue.class), mock(Issue.class)));
+    batch.cancel();
+
+    // the previous issues of the first update are put back, if the file still has the issues of the last one
+    assertThat(stored).hasSize(2);
+    verify(store).restore(module, file, 6, Collections.singletonList(previous));
+    verify(publisher).publish(restored);
+  }
+
+  @Test
+  public void testReadLockStats() {
+    IssueProcessor.ReadLockStats stats = new IssueProcessor.ReadLockStats();
+    stats.add(5);
+    stats.add(12);
+    stats.add(3);
+
+    assertThat(stats.total()).isEqualTo(20);
+    assertThat(stats.max()).isEqualTo(12);
+    assertThat(stats.retries()).isEqualTo(0);
+  }
+
+  private IssueProcessor processor(int threads) {
+    executor = Executors.newFixedThreadPool(threads);
+    return new IssueProcessor(project, matcher, store, serverIssueTracker, mock(DaemonCodeAnalyzer.class), publisher, executor, readActions);
+  }
+
+  private void matchAll() throws IssueMatcher.NoMatchException {
+    when(matcher.matcherFor(any(VirtualFile.class), any(DocumentSnapshot.class))).thenReturn(fileMatcher);
+    when(fileMatcher.match(any(Issue.class))).then(new Answer<IssuePointer>() {
+      @Override
+      public IssuePointer answer(InvocationOnMock invocation) {
+        RangeMarker range = mock(RangeMarker.class);
+        Document document = mock(Document.class);
+        when(range.getDocument()).thenReturn(document);
+        when(document.getCharsSequence()).thenReturn("issue");
+        ranges.add(range);
+        Issue issue = (Issue) invocation.getArguments()[0];
+        return new IssuePointer(issue, file, range);
+      }
+    });
+  }
+
+  private static VirtualFile validFile() {
+    VirtualFile f = mock(VirtualFile.class);
+    when(f.isValid()).thenReturn(true);
+    when(f.getPath()).thenReturn("/src/File.java");
+    return f;
+  }
+
+  /**
+   * Runs read actions in the calling thread. A write action can be simulated at a given call to {@link #checkCanceled()}.
+   */
+  private static class FakeReadActions implements IssueProcessor.ReadActions {
+    private final AtomicInteger checks = new AtomicInteger();
+    private final AtomicInteger waits = new AtomicInteger();
+    private volatile int cancelAt = -1;
+    private volatile boolean reading = false;
+
+    @Override
+    public boolean runCancellable(Runnable action) {
+      reading = true;
+      try {
+        action.run();
+        return true;
+      } catch (ProcessCanceledException e) {
+        return false;
+      } finally {
+        reading = false;
+      }
+    }
+
+    @Override
+    public void checkCanceled() {
+      if (checks.incrementAndGet() == cancelAt) {
+        throw new ProcessCanceledException();
+      }
+    }
+
+    @Override
+    public void waitForWriteAction() {
+      waits.incrementAndGet();
+    }
+
+    @Override
+    public <T> T run(Computable<T> computable) {
+      reading = true;
+      try {
+        return computable.compute();
+      } finally {
+        reading = false;
+      }
+    }
+  }
+}
@@ -19,27 +19,45 @@
  */
 package org.sonarlint.intellij.issue;
 
+import com.google.common.base.Strings;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
-import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonarlint.intellij.SonarLintTestUtils;
 import org.sonarlint.intellij.SonarTest;
+import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class IssueStoreTest extends SonarTest {
   private IssueStore store;
+  private SonarLintGlobalSettings settings;
+  private IssueBaseline baseline;
+  private ResultsPublisher publisher;
 
   private VirtualFile file1;
   private VirtualFile file2;
@@ -53,7 +71,24 @@ public class IssueStoreTest extends SonarTest {
     super.setUp();
     file1 = mock(VirtualFile.class);
     file2 = mock(VirtualFile.class);
-    store = new IssueStore(project);
+    baseline = mock(IssueBaseline.class);
+    publisher = mock(ResultsPublisher.class);
+    settings = new SonarLintGlobalSettings();
+    settings.setIssuesMemoryBudget(1);
+    store = new IssueStore(project, settings, baseline, publisher);
+    when(app.runReadAction(any(Computable.class))).then(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) {
+        return ((Computable<?>) invocation.getArguments()[0]).compute();
+      }
+    });
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ((Runnable) invocation.getArguments()[0]).run();
+        return null;
+      }
+    }).when(app).runReadAction(any(Runnable.class));
 
     issue1 = createRangeStoredIssue(1, "issue 1", 10);
     issue2 = createRangeStoredIssue(2, "issue 2", 10);
@@ -102,6 +137,388 @@ public class IssueStoreTest extends SonarTest {
     assertThat(fileIssues.iterator().next().creationDate()).isEqualTo(1000);
   }
 
+  @Test
+  public void testStoreReportsChanges() {
+    // same issue
+    assertThat(store.store(file1, Collections.singletonList(createRangeStoredIssue(1, "issue 1", 10)))).isFalse();
+    // new issue
+    assertThat(store.store(file1, Arrays.asList(createRangeStoredIssue(1, "issue 1", 10), createRangeStoredIssue(3, "issue 3", 10)))).isTrue();
+    // issue removed
+    assertThat(store.store(file1, Collections.singletonList(createRangeStoredIssue(1, "issue 1", 10)))).isTrue();
+
+    // location changed
+    IssuePointer changed = createRangeStoredIssue(1, "issue 1", 10);
+    when(changed.range().getEndOffset()).thenReturn(3);
+    assertThat(store.store(file1, Collections.singletonList(changed))).isTrue();
+
+    assertThat(store.store(file1, Collections.<IssuePointer>emptyList())).isTrue();
+    assertThat(store.store(file1, Collections.<IssuePointer>emptyList())).isFalse();
+  }
+
+  @Test
+  public void testSnapshot() {
+    IssueStore.Snapshot snapshot = store.getSnapshot();
+    assertThat(snapshot.issues()).containsOnlyKeys(file1, file2);
+    assertThat(store.getSnapshot()).isSameAs(snapshot);
+    long file1Version = store.getVersion(file1);
+
+    store.store(file1, Collections.singletonList(createRangeStoredIssue(3, "issue 3", 10)));
+    assertThat(store.getVersion()).isGreaterThan(snapshot.version());
+    assertThat(store.getVersion(file1)).isGreaterThan(file1Version);
+    // previous snapshot is unchanged
+    assertThat(snapshot.issues().get(file1)).containsExactly(issue1);
+    assertThat(store.getSnapshot().version()).isEqualTo(store.getVersion());
+    assertThat(store.getAll().get(file1)).hasSize(1).doesNotContain(issue1);
+
+    store.clearFile(file1);
+    assertThat(store.getVersion(file1)).isEqualTo(0);
+    assertThat(store.getAll()).containsOnlyKeys(file2);
+  }
+
+  @Test
+  public void testCounts() {
+    VirtualFile file3 = mock(VirtualFile.class);
+    Module module = mock(Module.class);
+    when(module.getName()).thenReturn("module");
+
+    store.store(module, file3, Arrays.asList(createFileIssue(file3, 1, "MAJOR"), createFileIssue(file3, 1, "MINOR"), createFileIssue(file3, 2, "MAJOR")));
+    IssueCounts counts = store.getCounts();
+    assertThat(counts.bySeverity("MAJOR")).isEqualTo(2);
+    assertThat(counts.byRule("1")).isEqualTo(2);
+    assertThat(counts.byRule("2")).isEqualTo(1);
+    assertThat(counts.byModule("module")).isEqualTo(3);
+
+    // module is kept
+    store.store(file3, Collections.singletonList(createFileIssue(file3, 2, "MINOR")));
+    assertThat(counts.perSeverity()).containsEntry("MINOR", 1L).doesNotContainKey("MAJOR");
+    assertThat(counts.perRule()).containsEntry("2", 1L).doesNotContainKey("1");
+    assertThat(counts.perModule()).containsOnly(entry("module", 1L));
+
+    store.clearFile(file3);
+    assertThat(counts.perModule()).isEmpty();
+  }
+
+  @Test
+  public void testQuery() {
+    store.clear();
+    VirtualFile fileA = mock(VirtualFile.class);
+    when(fileA.getPath()).thenReturn("/project/src/A.java");
+    VirtualFile fileB = mock(VirtualFile.class);
+    when(fileB.getPath()).thenReturn("/project/test/B.java");
+    Module module = mock(Module.class);
+    when(module.getName()).thenReturn("module");
+
+    IssuePointer a1 = createFileIssue(fileA, 1, "MAJOR");
+    a1.setCreationDate(1000);
+    IssuePointer a2 = createFileIssue(fileA, 2, "MINOR");
+    a2.setCreationDate(2000);
+    IssuePointer b1 = createFileIssue(fileB, 1, "MAJOR");
+    b1.setCreationDate(3000);
+    // stored in reverse order of path
+    store.store(null, fileB, Collections.singletonList(b1));
+    store.store(module, fileA, Arrays.asList(a1, a2));
+
+    assertThat(query(IssueQuery.builder())).containsExactly(a1, a2, b1);
+    assertThat(query(IssueQuery.builder().severities("MAJOR"))).containsExactly(a1, b1);
+    assertThat(query(IssueQuery.builder().severities("BLOCKER"))).isEmpty();
+    assertThat(query(IssueQuery.builder().rules("2", "3"))).containsExactly(a2);
+    assertThat(query(IssueQuery.builder().modules("module").severities("MAJOR"))).containsExactly(a1);
+    assertThat(query(IssueQuery.builder().pathPrefix("/project/test/"))).containsExactly(b1);
+    assertThat(query(IssueQuery.builder().createdAfter(2000))).containsExactly(a2, b1);
+    assertThat(query(IssueQuery.builder().createdBefore(2000))).containsExactly(a1);
+    assertThat(query(IssueQuery.builder().messageContains("ISSUE 2"))).containsExactly(a2);
+
+    // index is updated
+    store.store(fileB, Collections.singletonList(createFileIssue(fileB, 3, "BLOCKER")));
+    assertThat(query(IssueQuery.builder().severities("MAJOR"))).containsExactly(a1);
+    assertThat(query(IssueQuery.builder().severities("BLOCKER"))).hasSize(1);
+    store.clearFile(fileA);
+    assertThat(query(IssueQuery.builder().modules("module"))).isEmpty();
+  }
+
+  @Test
+  public void testQueryFilesChangedWhileCopying() {
+    store.clear();
+    final VirtualFile fileA = mock(VirtualFile.class);
+    final VirtualFile fileB = mock(VirtualFile.class);
+    when(fileA.getPath()).thenReturn("/project/A.java");
+    final IssuePointer b1 = createFileIssue(fileB, 1, "MAJOR");
+    final IssuePointer b2 = createFileIssue(fileB, 2, "MAJOR");
+    store.store(fileA, Collections.singletonList(createFileIssue(fileA, 1, "MAJOR")));
+    store.store(fileB, Collections.singletonList(b1));
+    // fileB changes while the entries are copied, once
+    when(fileB.getPath()).then(new Answer<String>() {
+      private boolean changed = false;
+
+      @Override
+      public String answer(InvocationOnMock invocation) {
+        if (!changed) {
+          changed = true;
+          store.store(fileB, Arrays.asList(b1, b2));
+        }
+        return "/project/B.java";
+      }
+    });
+
+    IssueQuery.Result result = store.query(IssueQuery.builder().build());
+    assertThat(result.total()).isEqualTo(3);
+    assertThat(result.issues()).contains(b2);
+    assertThat(result.version()).isEqualTo(store.getVersion());
+  }
+
+  @Test
+  public void testQueryPages() {
+    store.clear();
+    VirtualFile file = mock(VirtualFile.class);
+    when(file.getPath()).thenReturn("/project/A.java");
+    List<IssuePointer> issues = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      issues.add(createFileIssue(file, i, "MAJOR"));
+    }
+    store.store(file, issues);
+
+    IssueQuery.Result page = store.query(IssueQuery.builder().page(0, 2).build());
+    assertThat(page.issues()).containsExactly(issues.get(0), issues.get(1));
+    assertThat(page.total()).isEqualTo(5);
+    assertThat(page.hasMore()).isTrue();
+    assertThat(page.version()).isEqualTo(store.getVersion());
+
+    page = store.query(IssueQuery.builder().page(4, 2).build());
+    assertThat(page.issues()).containsExactly(issues.get(4));
+    assertThat(page.offset()).isEqualTo(4);
+    assertThat(page.hasMore()).isFalse();
+  }
+
+  private List<IssuePointer> query(IssueQuery.Builder builder) {
+    return store.query(builder.build()).issues();
+  }
+
+  @Test
+  public void testTrackAgainWhenReplacedConcurrently() {
+    final VirtualFile file3 = mock(VirtualFile.class);
+    final IssuePointer concurrent = createFileIssue(file3, 1, "MAJOR");
+    concurrent.setCreationDate(1000);
+    // the issues of the file are stored by another analysis while the first one is tracking them
+    when(baseline.load(file3)).thenAnswer(new Answer<List<IssueBaseline.Entry>>() {
+      private boolean first = true;
+
+      @Override
+      public List<IssueBaseline.Entry> answer(InvocationOnMock invocation) {
+        if (first) {
+          first = false;
+          store.store(file3, Collections.singletonList(concurrent));
+        }
+        return Collections.emptyList();
+      }
+    });
+
+    IssuePointer issue = createFileIssue(file3, 1, "MAJOR");
+    assertThat(store.store(file3, Collections.singletonList(issue))).isFalse();
+    assertThat(store.getConflictCount()).isEqualTo(1);
+    assertThat(store.getForFile(file3)).containsExactly(issue);
+    assertThat(issue.creationDate()).isEqualTo(1000);
+    assertThat(store.getIssueCount()).isEqualTo(3);
+    assertThat(store.getContendedLockCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testDelta() {
+    long file1Version = store.getVersion(file1);
+    IssuePointer moved = createRangeStoredIssue(1, "issue 1", 10);
+    RangeMarker range = moved.range();
+    when(range.getStartOffset()).thenReturn(5);
+    IssuePointer added = createRangeStoredIssue(3, "issue 3", 10);
+
+    IssueDelta delta = store.update(null, file1, Arrays.asList(moved, added));
+    assertThat(delta.file()).isEqualTo(file1);
+    assertThat(delta.previousVersion()).isEqualTo(file1Version);
+    assertThat(delta.version()).isEqualTo(store.getVersion(file1));
+    assertThat(delta.storeVersion()).isEqualTo(store.getVersion());
+    assertThat(delta.issues()).containsExactly(moved, added);
+    assertThat(delta.added()).containsExactly(added);
+    assertThat(delta.removed()).isEmpty();
+    assertThat(delta.tracked()).containsOnly(entry(issue1, moved));
+    assertThat(delta.moved()).containsOnly(entry(issue1, moved));
+    assertThat(delta.isEmpty()).isFalse();
+
+    // issue 3 didn't change
+    IssuePointer same = createRangeStoredIssue(3, "issue 3", 10);
+    delta = store.update(null, file1, Collections.singletonList(same));
+    assertThat(delta.removed()).containsExactly(moved);
+    assertThat(delta.tracked()).containsEntry(added, same);
+    assertThat(delta.moved()).doesNotContainKey(added);
+
+    delta = store.update(null, file2, Collections.<IssuePointer>emptyList());
+    assertThat(delta.removed()).containsExactly(issue2);
+    assertThat(delta.version()).isEqualTo(0);
+    assertThat(delta.issues()).isEmpty();
+  }
+
+  @Test
+  public void testRestore() {
+    IssuePointer added = createRangeStoredIssue(3, "issue 3", 10);
+    IssueDelta stored = store.update(null, file1, Arrays.asList(createRangeStoredIssue(1, "issue 1", 10), added));
+
+    IssueDelta restored = store.restore(null, file1, stored.version(), Collections.singletonList(issue1));
+    assertThat(restored.previousVersion()).isEqualTo(stored.version());
+    assertThat(restored.version()).isEqualTo(store.getVersion(file1));
+    assertThat(restored.storeVersion()).isEqualTo(store.getVersion());
+    assertThat(restored.removed()).hasSize(2).contains(added);
+    assertThat(restored.added()).containsExactly(issue1);
+    assertThat(store.getForFile(file1)).containsExactly(issue1);
+    assertThat(store.getIssueCount()).isEqualTo(2);
+
+    // not restored once changed since
+    assertThat(store.restore(null, file1, stored.version(), Collections.<IssuePointer>emptyList())).isNull();
+    assertThat(store.getForFile(file1)).containsExactly(issue1);
+
+    restored = store.restore(null, file2, store.getVersion(file2), Collections.<IssuePointer>emptyList());
+    assertThat(restored.removed()).containsExactly(issue2);
+    assertThat(store.getForFile(file2)).isEmpty();
+  }
+
+  @Test
+  public void testCompactIssuesOfDetachedFiles() {
+    settings.setCompactIssues(true);
+    store.clear();
+    VirtualFile file3 = mock(VirtualFile.class);
+    IssuePointer issue = createFileIssue(file3, 1, "MAJOR");
+    issue.setCreationDate(1000);
+    store.store(file3, Collections.singletonList(issue));
+
+    Collection<IssuePointer> compact = store.getForFile(file3);
+    assertThat(compact).isInstanceOf(ColumnarIssues.class).containsExactly(issue);
+    IssuePointer view = compact.iterator().next();
+    assertThat(view).isNotSameAs(issue);
+    assertThat(view.creationDate()).isEqualTo(1000);
+    assertThat(view.getSeverity()).isEqualTo("MAJOR");
+    assertThat(store.getEstimatedSize()).isEqualTo(IssueStore.FILE_SIZE + ColumnarIssues.ISSUE_SIZE);
+    assertThat(store.getCounts().bySeverity("MAJOR")).isEqualTo(1);
+
+    // tracked with the views
+    IssuePointer again = createFileIssue(file3, 1, "MAJOR");
+    assertThat(store.store(file3, Collections.singletonList(again))).isFalse();
+    assertThat(again.creationDate()).isEqualTo(1000);
+
+    // objects are kept again once the file is opened
+    long version = store.getVersion();
+    long file3Version = store.getVersion(file3);
+    store.attach(file3, document);
+    assertThat(store.getForFile(file3)).isNotInstanceOf(ColumnarIssues.class).containsExactly(again);
+    assertThat(store.getEstimatedSize()).isEqualTo(IssueStore.FILE_SIZE + IssueStore.ISSUE_SIZE);
+    assertThat(store.getVersion()).isGreaterThan(version);
+    assertThat(store.getVersion(file3)).isGreaterThan(file3Version);
+  }
+
+  @Test
+  public void testPublishCompactedIssues() {
+    settings.setCompactIssues(true);
+    VirtualFile file3 = mock(VirtualFile.class);
+    IssuePointer raw = createFileIssue(file3, 1, "MAJOR");
+    IssueDelta delta = store.update(null, file3, Collections.singletonList(raw));
+
+    assertThat(store.getForFile(file3)).isInstanceOf(ColumnarIssues.class);
+    assertThat(delta.version()).isEqualTo(store.getVersion(file3));
+    assertThat(delta.storeVersion()).isEqualTo(store.getVersion());
+    // views of the columns, not the raw issue
+    assertThat(delta.added()).containsExactly(raw);
+    assertThat(delta.added().get(0)).isNotSameAs(raw).isSameAs(delta.issues().get(0));
+
+    // swapping the entry of a file changes the versions
+    IssueStore.Snapshot snapshot = store.getSnapshot();
+    long file1Version = store.getVersion(file1);
+    store.detach(file1);
+    assertThat(store.getForFile(file1)).isInstanceOf(ColumnarIssues.class);
+    assertThat(store.getVersion(file1)).isGreaterThan(file1Version);
+    assertThat(store.getSnapshot()).isNotSameAs(snapshot);
+    assertThat(store.getSnapshot().issues().get(file1)).isSameAs(store.getForFile(file1));
+
+    // and is published, each issue being tracked with its new form
+    ArgumentCaptor<IssueDelta> captor = ArgumentCaptor.forClass(IssueDelta.class);
+    verify(publisher).publishChange(captor.capture());
+    IssueDelta swap = captor.getValue();
+    assertThat(swap.previousVersion()).isEqualTo(file1Version);
+    assertThat(swap.version()).isEqualTo(store.getVersion(file1));
+    assertThat(swap.storeVersion()).isEqualTo(store.getVersion());
+    assertThat(swap.tracked()).containsOnlyKeys(issue1);
+    assertThat(swap.added()).isEmpty();
+    assertThat(swap.removed()).isEmpty();
+  }
+
+  @Test
+  public void testOnlySaveBaselineOfFilesWithIssues() {
+    VirtualFile file3 = mock(VirtualFile.class);
+    store.store(file3, Collections.<IssuePointer>emptyList());
+    verify(baseline, never()).saveEntries(eq(file3), anyList());
+
+    store.store(file1, Collections.<IssuePointer>emptyList());
+    verify(baseline).saveEntries(file1, Collections.<IssueBaseline.Entry>emptyList());
+  }
+
+  @Test
+  public void testPreloadBaselineOfNewFiles() {
+    VirtualFile file3 = mock(VirtualFile.class);
+    store.preload(Arrays.asList(file1, file3));
+    verify(baseline).preload(Collections.singletonList(file3));
+  }
+
+  @Test
+  public void testRestoreCreationDateFromBaseline() {
+    VirtualFile file3 = mock(VirtualFile.class);
+    when(baseline.load(file3)).thenReturn(Collections.singletonList(new IssueBaseline.Entry(null, null, "1", "issue 1".hashCode(), 1000)));
+
+    IssuePointer issue = createFileIssue(file3, 1, "MAJOR");
+    store.store(file3, Collections.singletonList(issue));
+    assertThat(issue.creationDate()).isEqualTo(1000);
+    ArgumentCaptor<List> saved = ArgumentCaptor.forClass(List.class);
+    verify(baseline).saveEntries(eq(file3), saved.capture());
+    assertThat(saved.getValue()).hasSize(1);
+    assertThat(((IssueBaseline.Entry) saved.getValue().get(0)).getCreationDate()).isEqualTo(1000);
+
+    // baseline is only needed the first time
+    store.store(file3, Collections.singletonList(createFileIssue(file3, 1, "MAJOR")));
+    verify(baseline).load(file3);
+  }
+
+  @Test
+  public void testConcurrentStores() throws InterruptedException {
+    store.clear();
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      // mocks are stubbed in this thread only
+      final List<IssuePointer> issues = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        issues.add(createRangeStoredIssue(t, "issue", 10));
+      }
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (IssuePointer issue : issues) {
+            store.store(file1, Collections.singletonList(issue));
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertThat(store.getForFile(file1)).hasSize(1);
+    assertThat(store.getIssueCount()).isEqualTo(1);
+    assertThat(store.getEstimatedSize()).isEqualTo(IssueStore.FILE_SIZE + IssueStore.ISSUE_SIZE);
+    // statistics are updated in the same order as the issues
+    assertThat(store.getCounts().perRule()).containsOnly(entry(store.getForFile(file1).iterator().next().getRuleKey(), 1L));
+  }
+
   @Test
   public void testClearFile() {
     store.clearFile(file1);
@@ -136,24 +553,165 @@ public class IssueStoreTest extends SonarTest {
   }
 
   @Test
-  public void testClean() {
-    store.clean(file1);
+  public void testCountAndSize() {
+    assertThat(store.getIssueCount()).isEqualTo(2);
+    assertThat(store.getEstimatedSize()).isEqualTo(2 * (IssueStore.FILE_SIZE + IssueStore.ISSUE_SIZE));
+
+    store.store(file1, Arrays.asList(createRangeStoredIssue(1, "issue 1", 10), createRangeStoredIssue(3, "issue 3", 10)));
+    assertThat(store.getIssueCount()).isEqualTo(3);
+    assertThat(store.getEstimatedSize()).isEqualTo(2 * IssueStore.FILE_SIZE + 3 * IssueStore.ISSUE_SIZE);
+
+    store.clearFile(file2);
+    assertThat(store.getIssueCount()).isEqualTo(2);
+    store.clear();
+    assertThat(store.getIssueCount()).isEqualTo(0);
+    assertThat(store.getEstimatedSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() {
+    store.evictIfNeeded();
     //nothing should be removed
     assertThat(store.getForFile(file1)).containsExactly(issue1);
     assertThat(store.getForFile(file2)).containsExactly(issue2);
 
-    //add a lot of issues
-    store.clear();
+    store.touch(file1);
+    // a file that fits in the budget with only one of the other files
+    VirtualFile file3 = mock(VirtualFile.class);
+    int count = (int) ((1024 * 1024 - 2 * IssueStore.FILE_SIZE - IssueStore.ISSUE_SIZE) / IssueStore.ISSUE_SIZE);
+    store.store(file3, createIssues(count));
+
+    assertThat(store.getForFile(file3)).hasSize(count);
+    assertThat(store.getForFile(file2)).isEmpty();
+    assertThat(store.getForFile(file1)).containsExactly(issue1);
+    assertThat(store.getIssueCount()).isEqualTo(count + 1);
+  }
+
+  @Test
+  public void testEvictPublishesRemoval() {
+    long file2Version = store.getVersion(file2);
+    store.touch(file1);
+    store.store(mock(VirtualFile.class), createIssues(1024 * 1024 / (int) IssueStore.ISSUE_SIZE));
+
+    ArgumentCaptor<IssueDelta> captor = ArgumentCaptor.forClass(IssueDelta.class);
+    verify(publisher, atLeastOnce()).publishChange(captor.capture());
+    IssueDelta delta = captor.getAllValues().get(0);
+    assertThat(delta.file()).isEqualTo(file2);
+    assertThat(delta.previousVersion()).isEqualTo(file2Version);
+    assertThat(delta.version()).isEqualTo(0);
+    assertThat(delta.issues()).isEmpty();
+    assertThat(delta.removed()).containsExactly(issue2);
+  }
+
+  @Test
+  public void testClearFilePublishesRemoval() {
+    store.clearFile(file1);
+    store.clearFile(file1);
+
+    ArgumentCaptor<IssueDelta> captor = ArgumentCaptor.forClass(IssueDelta.class);
+    verify(publisher).publishChange(captor.capture());
+    assertThat(captor.getValue().removed()).containsExactly(issue1);
+    assertThat(captor.getValue().storeVersion()).isEqualTo(store.getVersion());
+  }
+
+  @Test
+  public void testOnlyFilesWithIssuesAreRecent() {
+    assertThat(store.getRecentFileCount()).isEqualTo(2);
+    for (int i = 0; i < 10; i++) {
+      VirtualFile file = mock(VirtualFile.class);
+      store.touch(file);
+      store.store(file, Collections.<IssuePointer>emptyList());
+    }
+    assertThat(store.getRecentFileCount()).isEqualTo(2);
+
+    store.store(file1, Collections.<IssuePointer>emptyList());
+    store.clearFile(file2);
+    assertThat(store.getRecentFileCount()).isEqualTo(0);
+  }
 
-    List<IssuePointer> issueList = new ArrayList<>(10_001);
-    for (int i = 0; i < 10_001; i++) {
+  @Test
+  public void testDontEvictOpenFiles() {
+    store = new IssueStore(project, settings, baseline, publisher) {
+      @Override
+      boolean isOpen(VirtualFile file) {
+        return file == file1;
+      }
+    };
+    store.store(file1, Collections.singletonList(issue1));
+    store.store(file2, Collections.singletonList(issue2));
+
+    store.store(file1, createIssues(1024 * 1024 / (int) IssueStore.ISSUE_SIZE));
+
+    assertThat(store.getForFile(file1)).isNotEmpty();
+    assertThat(store.getForFile(file2)).isEmpty();
+  }
+
+  private List<IssuePointer> createIssues(int count) {
+    List<IssuePointer> issueList = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
       issueList.add(new IssuePointer(SonarLintTestUtils.createIssue(i), null, null));
     }
+    return issueList;
+  }
 
-    store.store(file1, issueList);
+  @Test
+  public void testDetachAndAttach() {
+    IssuePointer issue = createRangeStoredIssue(1, "issue 1", 10);
+    RangeMarker range = issue.range();
+    when(range.getStartOffset()).thenReturn(20);
+    when(range.getEndOffset()).thenReturn(27);
+    when(range.isValid()).thenReturn(true);
+    when(document.getLineNumber(20)).thenReturn(2);
+    when(document.getLineStartOffset(2)).thenReturn(15);
 
-    store.clean(file1);
-    assertThat(store.getForFile(file1)).isEmpty();
+    // file is not open
+    store.store(file1, Collections.singletonList(issue));
+    verify(range).dispose();
+    assertThat(issue.isAttached()).isFalse();
+    assertThat(issue.getStartOffset()).isEqualTo(20);
+    assertThat(issue.getLine()).isEqualTo(2);
+    assertThat(issue.getColumn()).isEqualTo(5);
+
+    RangeMarker newRange = mock(RangeMarker.class);
+    when(document.getTextLength()).thenReturn(100);
+    when(document.getCharsSequence()).thenReturn(Strings.padEnd(Strings.repeat(" ", 20) + "issue 1", 100, ' '));
+    when(document.createRangeMarker(20, 27)).thenReturn(newRange);
+    store.attach(file1, document);
+    assertThat(issue.range()).isEqualTo(newRange);
+  }
+
+  @Test
+  public void testDontAttachChangedText() {
+    IssuePointer issue = createRangeStoredIssue(1, "issue 1", 10);
+    when(issue.range().isValid()).thenReturn(true);
+    store.store(file1, Collections.singletonList(issue));
+
+    // the text of the issue was edited while the file was closed
+    when(document.getTextLength()).thenReturn(7);
+    when(document.getCharsSequence()).thenReturn("issue 2");
+    store.attach(file1, document);
+    assertThat(issue.isAttached()).isFalse();
+    assertThat(issue.isValid()).isFalse();
+    verify(document, never()).createRangeMarker(0, 7);
+  }
+
+  @Test
+  public void testDontAttachOutOfDocument() {
+    IssuePointer issue = createRangeStoredIssue(1, "issue 1", 10);
+    when(issue.range().isValid()).thenReturn(true);
+    store.store(file1, Collections.singletonList(issue));
+
+    // document was truncated while the file was closed
+    when(document.getTextLength()).thenReturn(3);
+    store.attach(file1, document);
+    assertThat(issue.isAttached()).isFalse();
+    assertThat(issue.isValid()).isFalse();
+  }
+
+  private static IssuePointer createFileIssue(VirtualFile file, int id, String severity) {
+    Issue issue = SonarLintTestUtils.createIssue(id);
+    when(issue.getSeverity()).thenReturn(severity);
+    return new IssuePointer(issue, file);
   }
 
   private IssuePointer createRangeStoredIssue(int id, String rangeContent, int line) {
@@ -161,7 +719,8 @@ public class IssueStoreTest extends SonarTest {
     when(issue.getStartLine()).thenReturn(line);
     RangeMarker range = mock(RangeMarker.class);
     when(range.getDocument()).thenReturn(document);
-    when(document.getText(any(TextRange.class))).thenReturn(rangeContent);
+    when(range.getEndOffset()).thenReturn(rangeContent.length());
+    when(document.getCharsSequence()).thenReturn(rangeContent);
     return new IssuePointer(issue, null, range);
   }
 }
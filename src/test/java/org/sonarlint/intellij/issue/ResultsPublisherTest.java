@@ -0,0 +1,155 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.messages.MessageBus;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonarlint.intellij.messages.AnalysisResultsListener;
+import org.sonarlint.intellij.messages.IssueChangesListener;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResultsPublisherTest {
+  private AnalysisResultsListener listener = mock(AnalysisResultsListener.class);
+  private IssueChangesListener changesListener = mock(IssueChangesListener.class);
+  private List<Runnable> queued = new ArrayList<>();
+  private ResultsPublisher publisher;
+
+  @Before
+  public void setUp() {
+    MessageBus bus = mock(MessageBus.class);
+    when(bus.syncPublisher(AnalysisResultsListener.SONARLINT_ANALYSIS_DONE_TOPIC)).thenReturn(listener);
+    when(bus.syncPublisher(IssueChangesListener.SONARLINT_ISSUE_CHANGES_TOPIC)).thenReturn(changesListener);
+    publisher = new ResultsPublisher(mock(Project.class), bus, new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        queued.add(command);
+      }
+    });
+  }
+
+  @Test
+  public void testCoalesce() {
+    VirtualFile file1 = mock(VirtualFile.class);
+    VirtualFile file2 = mock(VirtualFile.class);
+    IssuePointer issue = mock(IssuePointer.class);
+
+    publisher.publish(file1, Collections.<IssuePointer>emptyList());
+    publisher.publish(file2, Collections.<IssuePointer>emptyList());
+    publisher.publish(file1, Collections.singletonList(issue));
+
+    assertThat(queued).hasSize(1);
+    verify(listener, never()).analysisDone(anyMap());
+    queued.get(0).run();
+
+    Map<VirtualFile, Collection<IssuePointer>> published = captureOne();
+    assertThat(published.keySet()).containsExactly(file1, file2);
+    assertThat(published.get(file1)).containsExactly(issue);
+    assertThat(published.get(file2)).isEmpty();
+  }
+
+  @Test
+  public void testSnapshot() {
+    VirtualFile file = mock(VirtualFile.class);
+    List<IssuePointer> issues = new ArrayList<>();
+    issues.add(mock(IssuePointer.class));
+
+    publisher.publish(file, issues);
+    issues.clear();
+    queued.get(0).run();
+
+    assertThat(captureOne().get(file)).hasSize(1);
+  }
+
+  @Test
+  public void testScheduleAgainAfterFlush() {
+    VirtualFile file = mock(VirtualFile.class);
+
+    publisher.publish(file, Collections.<IssuePointer>emptyList());
+    queued.get(0).run();
+    publisher.publish(file, Collections.<IssuePointer>emptyList());
+
+    assertThat(queued).hasSize(2);
+    queued.get(1).run();
+    verify(listener, times(2)).analysisDone(anyMap());
+  }
+
+  @Test
+  public void testPublishAllDeltasInOrder() {
+    VirtualFile file = mock(VirtualFile.class);
+    IssuePointer issue = mock(IssuePointer.class);
+    IssueDelta delta1 = IssueDelta.none(file, 1);
+    IssueDelta delta2 = new IssueDelta(file, 0, 1, 2, Collections.singletonList(issue), Collections.singletonList(issue),
+      Collections.<IssuePointer>emptyList(), Collections.<IssuePointer, IssuePointer>emptyMap(), Collections.<IssuePointer, IssuePointer>emptyMap());
+
+    publisher.publish(delta1);
+    publisher.publish(delta2);
+    queued.get(0).run();
+
+    assertThat(captureOne().get(file)).containsExactly(issue);
+    verify(changesListener).issuesChanged(Arrays.asList(delta1, delta2));
+  }
+
+  @Test
+  public void testNoDeltas() {
+    publisher.publish(mock(VirtualFile.class), Collections.<IssuePointer>emptyList());
+    queued.get(0).run();
+    verify(changesListener, never()).issuesChanged(anyList());
+  }
+
+  @Test
+  public void testPublishChange() {
+    VirtualFile file = mock(VirtualFile.class);
+    IssueDelta delta = IssueDelta.none(file, 1);
+
+    publisher.publishChange(delta);
+    publisher.publishChange(delta);
+
+    assertThat(queued).hasSize(1);
+    queued.get(0).run();
+    verify(listener, never()).analysisDone(anyMap());
+    verify(changesListener).issuesChanged(Arrays.asList(delta, delta));
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<VirtualFile, Collection<IssuePointer>> captureOne() {
+    ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+    verify(listener).analysisDone(captor.capture());
+    return captor.getValue();
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.sonarlint.intellij.SonarLintTestUtils;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
+import org.sonarlint.intellij.core.ServerIssue;
+import org.sonarlint.intellij.core.ServerIssueStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ServerIssueTrackerTest {
+  private VirtualFile file = mock(VirtualFile.class);
+
+  @Test
+  public void testMatchByLineAndMessage() {
+    IssuePointer local = createIssue(1, 9);
+    local.setCreationDate(5000);
+    ServerIssue server = new ServerIssue("AU1", "1", "src/Foo.java", 10, "issue 1", 1000, null);
+
+    List<IssuePointer> tracked = ServerIssueTracker.track(Collections.singletonList(local), Collections.singletonList(server));
+
+    assertThat(tracked).containsExactly(local);
+    assertThat(local.creationDate()).isEqualTo(1000);
+    assertThat(local.serverIssueKey()).isEqualTo("AU1");
+  }
+
+  @Test
+  public void testKeepNewIssues() {
+    IssuePointer local = createIssue(1, 20);
+    local.setCreationDate(5000);
+    ServerIssue otherLine = new ServerIssue("AU1", "1", "src/Foo.java", 10, "issue 1", 1000, null);
+    ServerIssue otherRule = new ServerIssue("AU2", "2", "src/Foo.java", 21, "issue 1", 1000, null);
+
+    List<IssuePointer> tracked = ServerIssueTracker.track(Collections.singletonList(local), Arrays.asList(otherLine, otherRule));
+
+    assertThat(tracked).containsExactly(local);
+    assertThat(local.creationDate()).isEqualTo(5000);
+    assertThat(local.serverIssueKey()).isNull();
+  }
+
+  @Test
+  public void testDropResolvedIssues() {
+    IssuePointer resolved = createIssue(1, 9);
+    IssuePointer open = createIssue(2, 4);
+    List<IssuePointer> tracked = ServerIssueTracker.track(Arrays.asList(resolved, open), Arrays.asList(
+      new ServerIssue("AU1", "1", "src/Foo.java", 10, "issue 1", 1000, "FALSE-POSITIVE"),
+      new ServerIssue("AU2", "2", "src/Foo.java", 5, "issue 2", 2000, null)));
+
+    assertThat(tracked).containsExactly(open);
+    assertThat(open.serverIssueKey()).isEqualTo("AU2");
+  }
+
+  @Test
+  public void testFileLevelIssueDoesntMatchLineLevelIssue() {
+    IssuePointer local = new IssuePointer(SonarLintTestUtils.createIssue(1), file);
+    local.setCreationDate(5000);
+    ServerIssue resolved = new ServerIssue("AU1", "1", "src/Foo.java", 10, "other message", 1000, "FIXED");
+
+    List<IssuePointer> tracked = ServerIssueTracker.track(Collections.singletonList(local), Collections.singletonList(resolved));
+
+    assertThat(tracked).containsExactly(local);
+    assertThat(local.creationDate()).isEqualTo(5000);
+    assertThat(local.serverIssueKey()).isNull();
+  }
+
+  @Test
+  public void testPathRelativeToModuleRoot() {
+    SonarLintProjectSettings settings = new SonarLintProjectSettings();
+    settings.setBindingEnabled(true);
+    settings.setServerId("server");
+    settings.setProjectKey("my:module");
+    Module module = mock(Module.class);
+    ModuleRootManager rootManager = mock(ModuleRootManager.class);
+    when(module.getComponent(ModuleRootManager.class)).thenReturn(rootManager);
+    VirtualFile root = mock(VirtualFile.class);
+    when(rootManager.getContentRoots()).thenReturn(new VirtualFile[] {mock(VirtualFile.class), root});
+    VirtualFile dir = mock(VirtualFile.class);
+    when(dir.getName()).thenReturn("src");
+    when(dir.getNameSequence()).thenReturn("src");
+    when(dir.getParent()).thenReturn(root);
+    when(file.getName()).thenReturn("Foo.java");
+    when(file.getNameSequence()).thenReturn("Foo.java");
+    when(file.getParent()).thenReturn(dir);
+
+    ServerIssueStore serverIssueStore = mock(ServerIssueStore.class);
+    when(serverIssueStore.getForFile("server", "my:module", "src/Foo.java")).thenReturn(Collections.singletonList(
+      new ServerIssue("AU1", "1", "src/Foo.java", 10, "issue 1", 1000, "FIXED")));
+    ServerIssueTracker tracker = new ServerIssueTracker(mock(Project.class), settings, serverIssueStore);
+
+    assertThat(tracker.track(module, file, Collections.singletonList(createIssue(1, 9)))).isEmpty();
+    assertThat(tracker.track(null, file, Collections.singletonList(createIssue(1, 9)))).hasSize(1);
+  }
+
+  private IssuePointer createIssue(int id, int line) {
+    return new IssuePointer(SonarLintTestUtils.createIssue(id), file, 0, 1, line, 0, 31 * line);
+  }
+}
@@ -0,0 +1,108 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.tracking;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The original tracking algorithm, with a search key object per issue and pass, used as a reference for {@link Tracker}.
+ */
+class ReferenceTracker<RAW extends Trackable, BASE extends Trackable> {
+  private final IdentityHashMap<RAW, BASE> rawToBase = new IdentityHashMap<>();
+  private final IdentityHashMap<BASE, RAW> baseToRaw = new IdentityHashMap<>();
+
+  Map<RAW, BASE> track(Collection<RAW> raws, Collection<BASE> bases) {
+    match(raws, bases, new KeyFactory() {
+      @Override
+      public List<Object> create(Trackable t) {
+        return key(t.getRuleKey(), t.getLine(), t.getLineHash());
+      }
+    });
+    match(raws, bases, new KeyFactory() {
+      @Override
+      public List<Object> create(Trackable t) {
+        return key(t.getRuleKey(), t.getMessage(), t.getLineHash());
+      }
+    });
+    match(raws, bases, new KeyFactory() {
+      @Override
+      public List<Object> create(Trackable t) {
+        return key(t.getRuleKey(), t.getMessage(), t.getLine());
+      }
+    });
+    match(raws, bases, new KeyFactory() {
+      @Override
+      public List<Object> create(Trackable t) {
+        return key(t.getRuleKey(), t.getLineHash());
+      }
+    });
+    return rawToBase;
+  }
+
+  private void match(Collection<RAW> raws, Collection<BASE> bases, KeyFactory factory) {
+    if (rawToBase.size() == raws.size()) {
+      return;
+    }
+
+    Map<List<Object>, List<BASE>> baseSearch = new HashMap<>();
+    for (BASE base : bases) {
+      if (baseToRaw.containsKey(base)) {
+        continue;
+      }
+      List<Object> searchKey = factory.create(base);
+      if (!baseSearch.containsKey(searchKey)) {
+        baseSearch.put(searchKey, new ArrayList<BASE>());
+      }
+      baseSearch.get(searchKey).add(base);
+    }
+
+    List<RAW> unmatchedRaws = new ArrayList<>();
+    for (RAW raw : raws) {
+      if (!rawToBase.containsKey(raw)) {
+        unmatchedRaws.add(raw);
+      }
+    }
+    for (RAW raw : unmatchedRaws) {
+      List<BASE> candidates = baseSearch.get(factory.create(raw));
+      if (candidates != null && !candidates.isEmpty()) {
+        BASE match = candidates.remove(0);
+        rawToBase.put(raw, match);
+        baseToRaw.put(match, raw);
+      }
+    }
+  }
+
+  private static List<Object> key(Object... values) {
+    List<Object> key = new ArrayList<>(values.length);
+    for (Object v : values) {
+      key.add(v);
+    }
+    return key;
+  }
+
+  private interface KeyFactory {
+    List<Object> create(Trackable t);
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.tracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.annotation.Nullable;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrackerTest {
+  private final Tracker<FakeIssue, FakeIssue> tracker = new Tracker<>();
+
+  @Test
+  public void testMatchLevels() {
+    FakeIssue base1 = new FakeIssue("rule", 1, 10, "msg");
+    FakeIssue base2 = new FakeIssue("rule", 5, 20, "other msg");
+    FakeIssue base3 = new FakeIssue("rule", 7, 30, "msg 3");
+    FakeIssue base4 = new FakeIssue("rule2", 8, 40, "msg");
+
+    // same line and line hash, different message
+    FakeIssue raw1 = new FakeIssue("rule", 1, 10, "changed msg");
+    // same line hash and message, moved
+    FakeIssue raw2 = new FakeIssue("rule", 9, 20, "other msg");
+    // same line and message, line modified
+    FakeIssue raw3 = new FakeIssue("rule", 7, 31, "msg 3");
+    // different rule
+    FakeIssue raw4 = new FakeIssue("rule", 8, 40, "msg");
+
+    Tracking<FakeIssue, FakeIssue> tracking = track(Arrays.asList(raw1, raw2, raw3, raw4), Arrays.asList(base1, base2, base3, base4));
+
+    assertThat(tracking.baseFor(raw1)).isSameAs(base1);
+    assertThat(tracking.baseFor(raw2)).isSameAs(base2);
+    assertThat(tracking.baseFor(raw3)).isSameAs(base3);
+    assertThat(tracking.baseFor(raw4)).isNull();
+    assertThat(tracking.getUnmatchedRaws()).containsExactly(raw4);
+    assertThat(tracking.getUnmatchedBases()).containsExactly(base4);
+  }
+
+  @Test
+  public void testTakeFirstBaseInOrder() {
+    FakeIssue base1 = new FakeIssue("rule", null, null, "msg");
+    FakeIssue base2 = new FakeIssue("rule", null, null, "msg");
+    FakeIssue raw = new FakeIssue("rule", null, null, "msg");
+
+    Tracking<FakeIssue, FakeIssue> tracking = track(Arrays.asList(raw), Arrays.asList(base1, base2));
+    assertThat(tracking.baseFor(raw)).isSameAs(base1);
+    assertThat(tracking.getUnmatchedBases()).containsExactly(base2);
+  }
+
+  @Test
+  public void testEmpty() {
+    Tracking<FakeIssue, FakeIssue> tracking = track(new ArrayList<FakeIssue>(), Arrays.asList(new FakeIssue("rule", 1, 1, "msg")));
+    assertThat(tracking.getMatchedRaws()).isEmpty();
+    assertThat(tracking.getUnmatchedBases()).hasSize(1);
+  }
+
+  /**
+   * Compares the matches with the ones of the original algorithm, on random issues with many collisions.
+   */
+  @Test
+  public void testSameMatchesAsReference() {
+    Random random = new Random(42);
+    for (int run = 0; run < 500; run++) {
+      int values = 1 + random.nextInt(10);
+      List<FakeIssue> bases = randomIssues(random, random.nextInt(100), values);
+      List<FakeIssue> raws = randomIssues(random, random.nextInt(100), values);
+
+      Map<FakeIssue, FakeIssue> expected = new ReferenceTracker<FakeIssue, FakeIssue>().track(raws, bases);
+      assertThat(track(raws, bases).getMatchedRaws()).isEqualTo(expected);
+    }
+  }
+
+  private Tracking<FakeIssue, FakeIssue> track(final Collection<FakeIssue> raws, final Collection<FakeIssue> bases) {
+    return tracker.track(new Input<FakeIssue>() {
+      @Override
+      public Collection<FakeIssue> getIssues() {
+        return raws;
+      }
+    }, new Input<FakeIssue>() {
+      @Override
+      public Collection<FakeIssue> getIssues() {
+        return bases;
+      }
+    });
+  }
+
+  private static List<FakeIssue> randomIssues(Random random, int count, int values) {
+    List<FakeIssue> issues = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Integer line = random.nextInt(8) == 0 ? null : random.nextInt(values);
+      Integer lineHash = random.nextInt(8) == 0 ? null : random.nextInt(values);
+      issues.add(new FakeIssue("rule" + random.nextInt(3), line, lineHash, "msg" + random.nextInt(values)));
+    }
+    return issues;
+  }
+
+  private static class FakeIssue implements Trackable {
+    private final String ruleKey;
+    private final Integer line;
+    private final Integer lineHash;
+    private final String message;
+
+    FakeIssue(String ruleKey, @Nullable Integer line, @Nullable Integer lineHash, String message) {
+      this.ruleKey = ruleKey;
+      this.line = line;
+      this.lineHash = lineHash;
+      this.message = message;
+    }
+
+    @Override
+    public Integer getLine() {
+      return line;
+    }
+
+    @Override
+    public String getMessage() {
+      return message;
+    }
+
+    @Override
+    public Integer getLineHash() {
+      return lineHash;
+    }
+
+    @Override
+    public String getRuleKey() {
+      return ruleKey;
+    }
+  }
+}
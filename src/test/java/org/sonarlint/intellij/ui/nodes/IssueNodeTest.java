@@ -19,10 +19,11 @@
  */
 package org.sonarlint.intellij.ui.nodes;
 
-import com.intellij.psi.PsiFile;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.ColoredTreeCellRenderer;
 import com.intellij.ui.SimpleTextAttributes;
 import java.io.IOException;
+import javax.annotation.Nullable;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonarlint.intellij.issue.IssuePointer;
@@ -45,7 +46,7 @@ public class IssueNodeTest {
 
   @Test
   public void testAge() {
-    IssuePointer i = createIssue(System.currentTimeMillis(), "rule");
+    IssuePointer i = createIssue(System.currentTimeMillis(), "rule", null);
     node = new IssueNode(i);
     node.render(renderer);
 
@@ -55,8 +56,7 @@ public class IssueNodeTest {
 
   @Test
   public void testHoursAndSeverity() throws IOException {
-    IssuePointer i = createIssue(System.currentTimeMillis() - 3600 * 1000, "rule");
-    when(i.issue().getSeverity()).thenReturn("MAJOR");
+    IssuePointer i = createIssue(System.currentTimeMillis() - 3600 * 1000, "rule", "MAJOR");
     node = new IssueNode(i);
     node.render(renderer);
 
@@ -67,17 +67,18 @@ public class IssueNodeTest {
 
   @Test
   public void testCount() {
-    IssuePointer i = createIssue(System.currentTimeMillis(), "rule");
+    IssuePointer i = createIssue(System.currentTimeMillis(), "rule", null);
     node = new IssueNode(i);
     assertThat(node.getFileCount()).isZero();
     assertThat(node.getIssueCount()).isEqualTo(1);
     assertThat(node.issue()).isEqualTo(i);
   }
 
-  private static IssuePointer createIssue(long date, String message) {
-    PsiFile file = mock(PsiFile.class);
+  private static IssuePointer createIssue(long date, String message, @Nullable String severity) {
+    VirtualFile file = mock(VirtualFile.class);
     Issue i = mock(Issue.class);
     when(i.getMessage()).thenReturn(message);
+    when(i.getSeverity()).thenReturn(severity);
     IssuePointer issue = new IssuePointer(i, file);
     issue.setCreationDate(date);
     return issue;
@@ -22,8 +22,10 @@ package org.sonarlint.intellij.ui.nodes;
 import com.intellij.ui.ColoredTreeCellRenderer;
 import org.junit.Before;
 import org.junit.Test;
+import org.sonarlint.intellij.issue.IssueStore;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -48,6 +50,21 @@ public class SummaryNodeTest {
     verify(renderer).append("Found 3 issues in 1 file");
   }
 
+  @Test
+  public void testTextFromStoreCounts() {
+    AbstractNode child1 = mock(AbstractNode.class);
+    node.add(child1);
+    IssueStore store = mock(IssueStore.class);
+    when(store.getIssueCount()).thenReturn(5L);
+    node.setStore(store);
+
+    ColoredTreeCellRenderer renderer = mock(ColoredTreeCellRenderer.class);
+    node.render(renderer);
+
+    verify(renderer).append("Found 5 issues in 1 file");
+    verify(child1, never()).getIssueCount();
+  }
+
   @Test
   public void testNoIssues() {
     ColoredTreeCellRenderer renderer = mock(ColoredTreeCellRenderer.class);
@@ -20,10 +20,12 @@
 package org.sonarlint.intellij.ui.tree;
 
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiFile;
 import java.nio.charset.Charset;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -31,8 +33,10 @@ import java.util.Map;
 import javax.swing.tree.DefaultTreeModel;
 import org.junit.Before;
 import org.junit.Test;
+import org.sonarlint.intellij.issue.IssueDelta;
 import org.sonarlint.intellij.issue.IssuePointer;
 import org.sonarlint.intellij.ui.nodes.AbstractNode;
+import org.sonarlint.intellij.ui.nodes.FileNode;
 import org.sonarlint.intellij.ui.nodes.IssueNode;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
@@ -82,35 +86,135 @@ public class TreeModelBuilderTest {
     assertThat(treeBuilder.getPreviousIssue(first)).isNull();
   }
 
+  @Test
+  public void testApplyDeltas() {
+    Map<VirtualFile, Collection<IssuePointer>> data = new HashMap<>();
+    VirtualFile file = addFile(data, "file1", 2);
+    List<IssuePointer> issues = new ArrayList<>(data.get(file));
+    treeBuilder.updateModel(data, null);
+
+    // the tree doesn't know the version of the issues, they are all set
+    IssueDelta delta1 = mockDelta(file, 0, 1, 1, issues);
+    treeBuilder.applyDeltas(Collections.singletonList(delta1));
+    FileNode fileNode = (FileNode) model.getChild(model.getRoot(), 0);
+    assertThat(fileNode.getChildCount()).isEqualTo(2);
+    IssueNode kept = (IssueNode) fileNode.getChildAt(0);
+    assertThat(kept.issue()).isSameAs(issues.get(1));
+
+    // only what changed is updated
+    IssuePointer tracked = createIssue(file, "file1", 1);
+    IssuePointer added = createIssue(file, "file1", 2);
+    IssueDelta delta2 = mockDelta(file, 1, 2, 2, Arrays.asList(tracked, added));
+    when(delta2.added()).thenReturn(Collections.singletonList(added));
+    when(delta2.removed()).thenReturn(Collections.singletonList(issues.get(0)));
+    when(delta2.tracked()).thenReturn(Collections.singletonMap(issues.get(1), tracked));
+    treeBuilder.applyDeltas(Collections.singletonList(delta2));
+
+    assertThat(fileNode.getChildCount()).isEqualTo(2);
+    // the most recent issue first
+    assertThat(((IssueNode) fileNode.getChildAt(0)).issue()).isSameAs(added);
+    assertThat(fileNode.getChildAt(1)).isSameAs(kept);
+    assertThat(kept.issue()).isSameAs(tracked);
+
+    // older changes are ignored
+    treeBuilder.applyDeltas(Collections.singletonList(delta1));
+    assertThat(kept.issue()).isSameAs(tracked);
+
+    // all issues removed
+    IssueDelta delta3 = mockDelta(file, 2, 0, 3, Collections.<IssuePointer>emptyList());
+    when(delta3.removed()).thenReturn(Arrays.asList(tracked, added));
+    treeBuilder.applyDeltas(Collections.singletonList(delta3));
+    assertThat(model.getChildCount(model.getRoot())).isEqualTo(0);
+  }
+
+  @Test
+  public void testRemoveDiscardedFile() {
+    Map<VirtualFile, Collection<IssuePointer>> data = new HashMap<>();
+    VirtualFile file1 = addFile(data, "file1", 2);
+    VirtualFile file2 = addFile(data, "file2", 1);
+    treeBuilder.updateModel(data, null);
+    assertThat(model.getChildCount(model.getRoot())).isEqualTo(2);
+
+    // issues discarded by the store, without an analysis
+    IssueDelta removal = mockDelta(file1, 1, 0, 5, Collections.<IssuePointer>emptyList());
+    when(removal.removed()).thenReturn(new ArrayList<>(data.get(file1)));
+    treeBuilder.applyDeltas(Collections.singletonList(removal));
+
+    assertThat(model.getChildCount(model.getRoot())).isEqualTo(1);
+    assertThat(((FileNode) model.getChild(model.getRoot(), 0)).file()).isEqualTo(file2);
+  }
+
+  @Test
+  public void testReplacedIssuesKeepTheirNodes() {
+    Map<VirtualFile, Collection<IssuePointer>> data = new HashMap<>();
+    VirtualFile file = addFile(data, "file1", 2);
+    List<IssuePointer> issues = new ArrayList<>(data.get(file));
+    treeBuilder.updateModel(data, null);
+    treeBuilder.applyDeltas(Collections.singletonList(mockDelta(file, 0, 1, 1, issues)));
+    FileNode fileNode = (FileNode) model.getChild(model.getRoot(), 0);
+    IssueNode node = (IssueNode) fileNode.getChildAt(0);
+
+    // same issues in another form, for example once compacted
+    IssuePointer replaced0 = createIssue(file, "file1", 0);
+    IssuePointer replaced1 = createIssue(file, "file1", 1);
+    Map<IssuePointer, IssuePointer> tracked = new HashMap<>();
+    tracked.put(issues.get(0), replaced0);
+    tracked.put(issues.get(1), replaced1);
+    IssueDelta swap = mockDelta(file, 1, 2, 2, Arrays.asList(replaced0, replaced1));
+    when(swap.tracked()).thenReturn(tracked);
+    treeBuilder.applyDeltas(Collections.singletonList(swap));
+
+    assertThat(fileNode.getChildCount()).isEqualTo(2);
+    assertThat(fileNode.getChildAt(0)).isSameAs(node);
+    assertThat(node.issue()).isSameAs(replaced1);
+  }
+
+  private static IssueDelta mockDelta(VirtualFile file, long previousVersion, long version, long storeVersion, List<IssuePointer> issues) {
+    IssueDelta delta = mock(IssueDelta.class);
+    when(delta.file()).thenReturn(file);
+    when(delta.previousVersion()).thenReturn(previousVersion);
+    when(delta.version()).thenReturn(version);
+    when(delta.storeVersion()).thenReturn(storeVersion);
+    when(delta.issues()).thenReturn(issues);
+    when(delta.added()).thenReturn(Collections.<IssuePointer>emptyList());
+    when(delta.removed()).thenReturn(Collections.<IssuePointer>emptyList());
+    when(delta.tracked()).thenReturn(Collections.<IssuePointer, IssuePointer>emptyMap());
+    when(delta.moved()).thenReturn(Collections.<IssuePointer, IssuePointer>emptyMap());
+    return delta;
+  }
+
   private void assertNode(IssueNode node, String file, int number) {
     assertThat(node).isNotNull();
-    assertThat(node.issue().issue().getInputFile().getPath()).isEqualTo(Paths.get(file));
-    assertThat(node.issue().issue().getRuleName()).isEqualTo("rule" + number);
+    assertThat(node.issue().file().getName()).isEqualTo(file);
+    assertThat(node.issue().getRuleName()).isEqualTo("rule" + number);
   }
 
-  private void addFile(Map<VirtualFile, Collection<IssuePointer>> data, String fileName, int numIssues) {
+  private VirtualFile addFile(Map<VirtualFile, Collection<IssuePointer>> data, String fileName, int numIssues) {
     VirtualFile file = mock(VirtualFile.class);
     when(file.getName()).thenReturn(fileName);
     when(file.isValid()).thenReturn(true);
 
-    PsiFile psiFile = mock(PsiFile.class);
-    when(psiFile.isValid()).thenReturn(true);
     List<IssuePointer> issueList = new LinkedList<>();
 
     for (int i = 0; i < numIssues; i++) {
-      Issue issue = mock(Issue.class);
-      when(issue.getStartLine()).thenReturn(i);
-      ClientInputFile f = mockFile(fileName);
-      when(issue.getInputFile()).thenReturn(f);
-      when(issue.getRuleKey()).thenReturn("rule" + i);
-      when(issue.getRuleName()).thenReturn("rule" + i);
-      when(issue.getSeverity()).thenReturn("MAJOR");
-      IssuePointer ip = new IssuePointer(issue, psiFile);
-      ip.setCreationDate(i);
-      issueList.add(ip);
+      issueList.add(createIssue(file, fileName, i));
     }
 
     data.put(file, issueList);
+    return file;
+  }
+
+  private static IssuePointer createIssue(VirtualFile file, String fileName, int i) {
+    Issue issue = mock(Issue.class);
+    when(issue.getStartLine()).thenReturn(i);
+    ClientInputFile f = mockFile(fileName);
+    when(issue.getInputFile()).thenReturn(f);
+    when(issue.getRuleKey()).thenReturn("rule" + i);
+    when(issue.getRuleName()).thenReturn("rule" + i);
+    when(issue.getSeverity()).thenReturn("MAJOR");
+    IssuePointer ip = new IssuePointer(issue, file);
+    ip.setCreationDate(i);
+    return ip;
   }
 
   private static ClientInputFile mockFile(String path) {